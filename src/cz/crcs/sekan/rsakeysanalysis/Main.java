@@ -3,6 +3,7 @@ package cz.crcs.sekan.rsakeysanalysis;
 import cz.crcs.sekan.rsakeysanalysis.classification.DataSetClassification;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.Classification;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.ClassificationConfiguration;
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.TimeSeriesEstimation;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.*;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset.JsonDataSetFormatter;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.exception.ClassificationException;
@@ -13,6 +14,7 @@ import cz.crcs.sekan.rsakeysanalysis.classification.table.makefile.Makefile;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.transformation.exception.TransformationNotFoundException;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.transformation.exception.WrongTransformationFormatException;
 import cz.crcs.sekan.rsakeysanalysis.classification.tests.*;
+import cz.crcs.sekan.rsakeysanalysis.common.KeyFingerprint;
 import cz.crcs.sekan.rsakeysanalysis.tools.*;
 import org.json.simple.parser.ParseException;
 
@@ -69,11 +71,11 @@ public class Main {
                 case "-cs":
                 case "--classificationSuccess":
                     //ClassificationSuccess.compute(args[++i], args[++i], Long.valueOf(args[++i]));
-                    i = classificationSuccess(Arrays.copyOfRange(args, ++i, args.length));
+                    i += classificationSuccess(Arrays.copyOfRange(args, i + 1, args.length));
                     break;
                 case "-mc":
                 case "--misclassification":
-                    ClassificationConfiguration mcConfig = ClassificationConfiguration.fromCommandLineOptions(args, 1);
+                    ClassificationConfiguration mcConfig = ClassificationConfiguration.fromCommandLineOptions(args, i + 1);
                     i = mcConfig.consumedArguments;
                     Misclassification.compute(mcConfig.classificationTable);
                     break;
@@ -87,7 +89,15 @@ public class Main {
                     break;
                 case "-c":
                 case "--classify":
-                    i = classifyDataSet(Arrays.copyOfRange(args, ++i, args.length));
+                    i += classifyDataSet(Arrays.copyOfRange(args, i + 1, args.length));
+                    break;
+                case "-rh":
+                case "--reduceHistograms":
+                    i += reduceHistograms(Arrays.copyOfRange(args, i + 1, args.length));
+                    break;
+                case "-ts":
+                case "--timeSeries":
+                    i += timeSeries(Arrays.copyOfRange(args, i + 1, args.length));
                     break;
                 case "-d":
                 case "--diff":
@@ -95,33 +105,43 @@ public class Main {
                     break;
                 case "-rd":
                 case "--removeDuplicity":
-                    ClassificationConfiguration configuration = ClassificationConfiguration.fromCommandLineOptions(args, 1);
+                    ClassificationConfiguration configuration = ClassificationConfiguration.fromCommandLineOptions(args, i + 1);
                     DuplicityRemover.removeDuplicitiesBatch(configuration.outputFolderPath, new JsonDataSetFormatter(),
                             configuration.inputPaths.toArray(new String[configuration.inputPaths.size()]));
                     i = configuration.consumedArguments;
                     break;
                 case "-um":
                 case "--uniqueModuli":
-                    configuration = ClassificationConfiguration.fromCommandLineOptions(args, 1);
+                    configuration = ClassificationConfiguration.fromCommandLineOptions(args, i + 1);
                     DuplicityRemover.printFirstModulus(configuration.outputFolderPath, new JsonDataSetFormatter(),
                             configuration.inputPaths);
                     i = configuration.consumedArguments;
                     break;
                 case "-uf":
                 case "--uniqueFingerprints":
-                    configuration = ClassificationConfiguration.fromCommandLineOptions(args, 1);
+                    configuration = ClassificationConfiguration.fromCommandLineOptions(args, i + 1);
                     DuplicityRemover.printFirstHash(configuration.outputFolderPath, new JsonDataSetFormatter(),
                             configuration.inputPaths);
                     i = configuration.consumedArguments;
                     break;
                 case "-ps":
                 case "--presort":
-                    ClassificationConfiguration sortConfig = ClassificationConfiguration.fromCommandLineOptions(args, 1);
+                    ClassificationConfiguration sortConfig = ClassificationConfiguration.fromCommandLineOptions(args, i + 1);
                     int prefixBits = sortConfig.keyCount + 1;
                     DatasetSorter.preSortDataset(prefixBits, sortConfig.outputFolderPath, sortConfig.tempFolderPath,
                             sortConfig.inputPaths);
                     i = sortConfig.consumedArguments;
                     break;
+                case "-ks":
+                case "--keyStore":
+                    configuration = ClassificationConfiguration.fromCommandLineOptions(args, i + 1);
+                    KeyStoreConverter.run(configuration.outputFolderPath, configuration.inputPaths);
+                    i = configuration.consumedArguments;
+                    break;
+                case "-fh":
+                case "--fingerprintHash":
+                    KeyFingerprint.setHashFunction(KeyFingerprint.HashFunction.fromString(args[++i]));
+                    break;
                 case "-nc":
                 case "--nc":
                     classificationTableForNotClassify = RawTable.load(args[++i]).computeClassificationTable();
@@ -150,12 +170,13 @@ public class Main {
                 case "-a":
                 case "--apriori":
                     // aprioriTest(args[++i], args[++i])
-                    ClassificationConfiguration config = ClassificationConfiguration.fromCommandLineOptions(args, 1);
+                    ClassificationConfiguration config = ClassificationConfiguration.fromCommandLineOptions(args, i + 1);
                     i = config.consumedArguments;
                     //AprioriTest.testEstimatePrecision(config);
                     //AprioriTest.testPriorInfluence(config);
                     AprioriTest.testPriorEstimation(config);
                     //SimulationsTest.testSimulators(config);
+                    //AprioriTest.testConcurrentMaskCounter(config);
                     break;
                 default:
                     System.out.println("Undefined parameter '" + args[i] + "'");
@@ -186,7 +207,15 @@ public class Main {
                 + ClassificationConfiguration.BATCH_TYPE_SWITCH + " batch "
                 + ClassificationConfiguration.PRIOR_TYPE_SWITCH + " prior "
                 + ClassificationConfiguration.EXPORT_TYPE_SWITCH + " export "
-                + ClassificationConfiguration.MEMORY_TYPE_SWITCH + " temp \n" +
+                + ClassificationConfiguration.MEMORY_TYPE_SWITCH + " temp ["
+                + ClassificationConfiguration.THREADS_SWITCH + " threads] ["
+                + ClassificationConfiguration.MASK_SIDECAR_SWITCH + " masks] ["
+                + ClassificationConfiguration.TEMP_SWITCH + " spill ["
+                + ClassificationConfiguration.MEMORY_BUDGET_SWITCH + " budget]] ["
+                + ClassificationConfiguration.LOG_SPACE_SWITCH + "] ["
+                + ClassificationConfiguration.LOG_SPACE_TOLERANCE_SWITCH + " tolerance] ["
+                + ClassificationConfiguration.ONLY_PRIOR_SWITCH_SWITCH + " ["
+                + ClassificationConfiguration.HISTOGRAM_BREAKDOWN_SWITCH + " breakdown]]\n" +
                 "                         " + ClassificationConfiguration.CLASSIFICATION_TABLE_SWITCH +
                 " table  = path to classification table file\n" +
                 "                         " + ClassificationConfiguration.INPUTS_SWITCH +
@@ -210,6 +239,53 @@ public class Main {
                 " temp   = " + Classification.MemoryType.NONE +
                 "|" + Classification.MemoryType.DISK + "|" + Classification.MemoryType.MEMORY +
                 " = temporary memory handling - only for export\n" +
+                "                         " + ClassificationConfiguration.THREADS_SWITCH +
+                " threads = optional number of threads parsing and classifying the data set\n" +
+                "                         " + ClassificationConfiguration.MASK_SIDECAR_SWITCH +
+                " masks   = optional folder for mask sidecars, stored masks are used instead of the data set\n" +
+                "                         " + ClassificationConfiguration.TEMP_SWITCH +
+                " spill  = optional folder for temporary files, keys are batched on disk (no export)\n" +
+                "                         " + ClassificationConfiguration.MEMORY_BUDGET_SWITCH +
+                " budget  = optional memory for sorting on disk in MB (default 256), 8 B per key are mapped\n" +
+                "                         " + ClassificationConfiguration.LOG_SPACE_SWITCH +
+                "             = optional, accumulate batches in log space and normalize them once\n" +
+                "                         " + ClassificationConfiguration.LOG_SPACE_TOLERANCE_SWITCH +
+                " tolerance = optional, log space, verified against the exact computation within the tolerance\n" +
+                "                         " + ClassificationConfiguration.ONLY_PRIOR_SWITCH_SWITCH +
+                "             = optional, only estimate prior probability and save the mask histogram\n" +
+                "                         " + ClassificationConfiguration.HISTOGRAM_BREAKDOWN_SWITCH +
+                " breakdown = optional, " + MaskHistogram.Breakdown.SOURCE + " = break the histogram down by key sources\n" +
+                "  -rh  OPTIONS         Merge mask histograms and estimate prior probability from the merged counts.\n" +
+                "                        OPTIONS = "
+                + ClassificationConfiguration.CLASSIFICATION_TABLE_SWITCH + " table "
+                + ClassificationConfiguration.INPUTS_SWITCH + " in... "
+                + ClassificationConfiguration.OUTPUT_SWITCH + " outdir "
+                + ClassificationConfiguration.PRIOR_TYPE_SWITCH + " prior\n" +
+                "                         " + ClassificationConfiguration.INPUTS_SWITCH +
+                " in...  = path(s) to mask histograms (" + MaskHistogram.FILE_NAME + ")\n" +
+                "  -ts  OPTIONS         Estimate prior probability in sliding windows of time.\n" +
+                "                        OPTIONS = "
+                + ClassificationConfiguration.CLASSIFICATION_TABLE_SWITCH + " table "
+                + ClassificationConfiguration.INPUTS_SWITCH + " in... "
+                + ClassificationConfiguration.OUTPUT_SWITCH + " outdir "
+                + ClassificationConfiguration.PRIOR_TYPE_SWITCH + " prior "
+                + ClassificationConfiguration.WINDOW_SWITCH + " window "
+                + ClassificationConfiguration.STEP_SWITCH + " step ["
+                + ClassificationConfiguration.TIMESTAMP_ATTRIBUTE_SWITCH + " attribute] ["
+                + ClassificationConfiguration.THREADS_SWITCH + " threads] ["
+                + ClassificationConfiguration.WARM_START_SWITCH + "]\n" +
+                "                         " + ClassificationConfiguration.INPUTS_SWITCH +
+                " in...  = data sets or folders of data sets named by timestamps (e.g., 1474157398992.json)\n" +
+                "                         " + ClassificationConfiguration.WINDOW_SWITCH +
+                " window = length of windows in units of timestamps, a multiple of step\n" +
+                "                         " + ClassificationConfiguration.STEP_SWITCH +
+                " step  = shift of windows in units of timestamps\n" +
+                "                         " + ClassificationConfiguration.TIMESTAMP_ATTRIBUTE_SWITCH +
+                " attribute = optional numeric attribute of keys with timestamps, instead of names of data sets\n" +
+                "                         " + ClassificationConfiguration.THREADS_SWITCH +
+                " threads = optional number of threads, all processors by default\n" +
+                "                         " + ClassificationConfiguration.WARM_START_SWITCH +
+                "           = optional, start the estimation from the groups of the previous window\n" +
 
                 // table info
                 "  -i   table           Load classification table and show information about it.\n" +
@@ -228,7 +304,8 @@ public class Main {
                 + ClassificationConfiguration.CLASSIFICATION_TABLE_SWITCH + " table "
                 + ClassificationConfiguration.OUTPUT_SWITCH + " outdir "
                 + ClassificationConfiguration.KEY_COUNT_SWITCH + " keys ["
-                + ClassificationConfiguration.RNG_SEED_SWITCH + " seed]\n" +
+                + ClassificationConfiguration.RNG_SEED_SWITCH + " seed] ["
+                + ClassificationConfiguration.THREADS_SWITCH + " threads]\n" +
                 "                         " + ClassificationConfiguration.CLASSIFICATION_TABLE_SWITCH +
                 " table  = path to classification table file\n" +
                 "                         " + ClassificationConfiguration.OUTPUT_SWITCH +
@@ -237,6 +314,8 @@ public class Main {
                 " keys   = number of keys in simulations\n" +
                 "                         " + ClassificationConfiguration.RNG_SEED_SWITCH +
                 " seed   = optional seed for RNG\n" +
+                "                         " + ClassificationConfiguration.THREADS_SWITCH +
+                " threads = optional number of threads, all processors by default\n" +
 
                 // table format conversions
                 "  -er  table out       Export raw table (used to generate dendrogram).\n" +
@@ -277,6 +356,19 @@ public class Main {
                 "                        " + ClassificationConfiguration.KEY_COUNT_SWITCH +
                 "   bits  = number of prefix bits (makes 2^b temporary files)\n" +
 
+                // key store conversion
+                "  -ks " + ClassificationConfiguration.INPUTS_SWITCH + " in... "
+                + ClassificationConfiguration.OUTPUT_SWITCH + " out  Convert key sets to key stores (binary, classified without parsing JSON).\n" +
+                "                        " + ClassificationConfiguration.INPUTS_SWITCH +
+                " in...   = paths to key sets (processed individually)\n" +
+                "                        " + ClassificationConfiguration.OUTPUT_SWITCH +
+                " outdir  = directory for key stores, used as inputs of -c\n" +
+
+                // fingerprints
+                "  -fh  hash            Hash of moduli fingerprints (batches, duplicities), before other options.\n" +
+                "                        hash  = " + KeyFingerprint.HashFunction.SHA_256 + "|"
+                + KeyFingerprint.HashFunction.MURMUR3 + " = 128 bits of SHA-256 (default) or faster Murmur3\n" +
+
                 "  -debug               Show debug and deprecated options.\n" +
                 "");
         //TODO complete all options
@@ -408,6 +500,20 @@ public class Main {
         return configuration.consumedArguments;
     }
 
+    private static int reduceHistograms(String[] args)
+            throws ClassificationException, IOException, ParseException, WrongTransformationFormatException, TransformationNotFoundException {
+        ClassificationConfiguration configuration = ClassificationConfiguration.fromCommandLineOptions(args, 0);
+        Classification.reduceHistograms(configuration);
+        return configuration.consumedArguments;
+    }
+
+    private static int timeSeries(String[] args)
+            throws ClassificationException, IOException, ParseException, WrongTransformationFormatException, TransformationNotFoundException {
+        ClassificationConfiguration configuration = ClassificationConfiguration.fromCommandLineOptions(args, 0);
+        TimeSeriesEstimation.run(configuration);
+        return configuration.consumedArguments;
+    }
+
     private static int classificationSuccess(String[] args)
             throws DataSetException, WrongTransformationFormatException, TransformationNotFoundException, ParseException, IOException, NoSuchAlgorithmException {
 
@@ -2,33 +2,57 @@ package cz.crcs.sekan.rsakeysanalysis.classification.algorithm;
 
 import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
 import cz.crcs.sekan.rsakeysanalysis.classification.key.property.PropertyExtractor;
-import cz.crcs.sekan.rsakeysanalysis.common.BidirectionalMap;
 
 
 import java.util.*;
 
 /**
+ * Batches of keys sharing a property (transitively). Keys are kept in a disjoint-set forest on arrays indexed
+ * by key ids (union by size, path compression), the id of a batch is the id of the root key of its tree.
+ * Keys without a property form batches with a single key.
+ *
  * @author xnemec1
  * @version 11/22/16.
  */
 public class BatchHolder<Property> {
 
-    private Long nextBatchId;
-    private Long nextKeyId;
+    private static final int INITIAL_CAPACITY = 1024;
 
-    private BidirectionalMap<Long, Property> batchIdToProperties;
-    private BidirectionalMap<Long, Long> batchIdToKeyIds;
+    private int keyCount;
+
+    /**
+     * Parent of the key in the forest, roots are their own parents
+     */
+    private int[] parent;
+
+    /**
+     * Number of keys in the tree, valid for roots
+     */
+    private int[] size;
+
+    /**
+     * Some key with the property, the rest of the keys with the property are in its batch
+     */
+    private Map<Property, Integer> propertyToKeyId;
     private PropertyExtractor<Property> propertyExtractor;
 
-    private List<Long> keyIdsWithoutProperty;
+    private int[] keyIdsWithoutProperty;
+    private int keyIdsWithoutPropertyCount;
+
+    /**
+     * Keys grouped by batches (sorted in a batch), batch starts at batchOffsets[root], built on demand
+     */
+    private int[] batchMembers;
+    private int[] batchOffsets;
 
     public BatchHolder(PropertyExtractor<Property> propertyExtractor) {
-        batchIdToProperties = new BidirectionalMap<>();
-        batchIdToKeyIds = new BidirectionalMap<>();
-        nextBatchId = 0L;
-        nextKeyId = 0L;
+        keyCount = 0;
+        parent = new int[INITIAL_CAPACITY];
+        size = new int[INITIAL_CAPACITY];
+        propertyToKeyId = new HashMap<>();
         this.propertyExtractor = propertyExtractor;
-        keyIdsWithoutProperty = new LinkedList<>();
+        keyIdsWithoutProperty = new int[INITIAL_CAPACITY];
+        keyIdsWithoutPropertyCount = 0;
     }
 
     /**
@@ -36,41 +60,115 @@ public class BatchHolder<Property> {
      * @return the unique ID under which the key will be registered
      */
     public Long registerKey(ClassificationKey key) {
-        return registerKeyIdWithProperties(nextKeyId++, propertyExtractor.extractProperty(key));
+        return (long) registerKeyWithProperties(propertyExtractor.extractProperty(key));
     }
 
-    private Long registerKeyIdWithProperties(Long keyId, List<Property> properties) {
-        if (properties == null) properties = new ArrayList<Property>();
-
-        if (properties.isEmpty()) {
-            keyIdsWithoutProperty.add(keyId);
-            batchIdToKeyIds.placeValuesUnderSameKey(Collections.singletonList(keyId), nextBatchId);
-        } else {
-            List<Long> joinedGroups = batchIdToProperties.placeValuesUnderSameKey(properties, nextBatchId);
-            batchIdToKeyIds.placeValuesUnderSameKey(Collections.singletonList(keyId), nextBatchId);
-            if (joinedGroups.size() != 1 || !nextBatchId.equals(joinedGroups.get(0))) {
-                joinedGroups.add(nextBatchId);
-                batchIdToKeyIds.joinBatchesUnderNewKey(joinedGroups, nextBatchId);
+    private int registerKeyWithProperties(List<Property> properties) {
+        if (keyCount == Integer.MAX_VALUE) throw new IllegalStateException("Too many keys in batches");
+        batchMembers = null;
+        batchOffsets = null;
+
+        int keyId = keyCount++;
+        if (keyId == parent.length) {
+            int capacity = (int) Math.min(Integer.MAX_VALUE, 2L * parent.length);
+            parent = Arrays.copyOf(parent, capacity);
+            size = Arrays.copyOf(size, capacity);
+        }
+        parent[keyId] = keyId;
+        size[keyId] = 1;
+
+        if (properties == null || properties.isEmpty()) {
+            if (keyIdsWithoutPropertyCount == keyIdsWithoutProperty.length) {
+                keyIdsWithoutProperty = Arrays.copyOf(keyIdsWithoutProperty, 2 * keyIdsWithoutProperty.length);
             }
+            keyIdsWithoutProperty[keyIdsWithoutPropertyCount++] = keyId;
+            return keyId;
         }
 
-        nextBatchId++;
+        for (Property property : properties) {
+            Integer keyIdWithProperty = propertyToKeyId.putIfAbsent(property, keyId);
+            if (keyIdWithProperty != null) union(keyId, keyIdWithProperty);
+        }
         return keyId;
     }
 
+    private int find(int keyId) {
+        int root = keyId;
+        while (parent[root] != root) root = parent[root];
+        while (parent[keyId] != root) {
+            int next = parent[keyId];
+            parent[keyId] = root;
+            keyId = next;
+        }
+        return root;
+    }
+
+    private void union(int keyId, int otherKeyId) {
+        int root = find(keyId);
+        int otherRoot = find(otherKeyId);
+        if (root == otherRoot) return;
+        if (size[root] < size[otherRoot]) {
+            int swap = root;
+            root = otherRoot;
+            otherRoot = swap;
+        }
+        parent[otherRoot] = root;
+        size[root] += size[otherRoot];
+    }
+
+    private void groupBatches() {
+        if (batchMembers != null) return;
+        batchOffsets = new int[keyCount + 1];
+        int[] roots = new int[keyCount];
+        for (int keyId = 0; keyId < keyCount; keyId++) {
+            roots[keyId] = find(keyId);
+            if (roots[keyId] == keyId) batchOffsets[keyId + 1] = size[keyId];
+        }
+        for (int keyId = 0; keyId < keyCount; keyId++) batchOffsets[keyId + 1] += batchOffsets[keyId];
+
+        batchMembers = new int[keyCount];
+        int[] filled = new int[keyCount];
+        for (int keyId = 0; keyId < keyCount; keyId++) {
+            int root = roots[keyId];
+            batchMembers[batchOffsets[root] + filled[root]++] = keyId;
+        }
+    }
+
+    /**
+     * Keys of the batches are grouped, until another key is registered the holder is only read
+     * and the batches can be queried from multiple threads
+     * @return ids of all batches (including batches of keys without a property), sorted
+     */
     public List<Long> getBatchIdsForKeyWithProperty() {
-        return batchIdToKeyIds.getKeys();
+        groupBatches();
+        List<Long> batchIds = new ArrayList<>();
+        for (int keyId = 0; keyId < keyCount; keyId++) {
+            if (find(keyId) == keyId) batchIds.add((long) keyId);
+        }
+        return batchIds;
     }
 
+    /**
+     * @param batchId id of the batch
+     * @return sorted ids of keys in the batch, null if there is no such batch
+     */
     public List<Long> getKeyIdsByBatchId(Long batchId) {
-        return batchIdToKeyIds.getValuesByKey(batchId);
+        if (batchId == null || batchId < 0 || batchId >= keyCount || find(batchId.intValue()) != batchId) return null;
+        groupBatches();
+        int root = batchId.intValue();
+        List<Long> keyIds = new ArrayList<>(size[root]);
+        for (int i = batchOffsets[root]; i < batchOffsets[root] + size[root]; i++) keyIds.add((long) batchMembers[i]);
+        return keyIds;
     }
 
     public List<Long> getKeyIdsWithoutProperty() {
-        return keyIdsWithoutProperty;
+        List<Long> keyIds = new ArrayList<>(keyIdsWithoutPropertyCount);
+        for (int i = 0; i < keyIdsWithoutPropertyCount; i++) keyIds.add((long) keyIdsWithoutProperty[i]);
+        return keyIds;
     }
 
     public Long getBatchIdForKeyId(Long keyId) {
-        return batchIdToKeyIds.getKeyByValue(keyId);
+        if (keyId == null || keyId < 0 || keyId >= keyCount) return null;
+        return (long) find(keyId.intValue());
     }
 }
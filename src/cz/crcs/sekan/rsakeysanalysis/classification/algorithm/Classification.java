@@ -7,6 +7,7 @@ import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.statistics.Batches
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.statistics.StatisticsAggregator;
 import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
 import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.KeyStubStore;
 import cz.crcs.sekan.rsakeysanalysis.classification.key.property.ModulusHashPropertyExtractor;
 import cz.crcs.sekan.rsakeysanalysis.classification.key.property.PrimePropertyExtractor;
 import cz.crcs.sekan.rsakeysanalysis.classification.key.property.PropertyExtractor;
@@ -15,6 +16,8 @@ import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationContaine
 import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationRow;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
 import cz.crcs.sekan.rsakeysanalysis.common.ExtendedWriter;
+import cz.crcs.sekan.rsakeysanalysis.common.KeyFingerprint;
+import cz.crcs.sekan.rsakeysanalysis.common.RSAKey;
 import cz.crcs.sekan.rsakeysanalysis.common.exception.NotImplementedException;
 
 import java.io.File;
@@ -22,6 +25,9 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
 
 /**
@@ -46,13 +52,52 @@ public class Classification<BatchProperty> {
 
     private boolean onlyPriorEstimation;
 
+    /**
+     * Number of threads classifying the batches
+     */
+    private int parallelism;
 
-    private Map<Long, ClassificationKeyStub> keyIdToKeyStub;
+    private MaskSidecar.Writer maskSidecarWriter;
+
+    /**
+     * Accumulate batches in log space, if the tolerance is set, the results are verified against the exact computation
+     */
+    private boolean logSpace;
+    private Double logSpaceTolerance;
+
+    private MaskHistogram maskHistogram;
+
+    private File maskHistogramFile;
+
+    private KeyStubStore keyStubs;
 
     private BatchHolder<BatchProperty> batchHolder;
 
+    /**
+     * If set, keys are batched on disk in this folder instead of in memory, see SpillingBatchHolder
+     */
+    private File spillFolder;
+    private long memoryBudget;
+
+    /**
+     * Number of parts of the batches classified by each thread, more parts balance batches of different sizes
+     */
+    private static final int PARTS_PER_THREAD = 4;
+
+    /**
+     * Batches with at least this number of keys are classified by parts combined by a tree reduction
+     * (in parallel if the batches are classified by more threads), see BatchReduction
+     */
+    private static final int LARGE_BATCH_SIZE = 1 << 16;
+
+    /**
+     * Maximal number of keys of a part of a large batch classified by a single thread
+     */
+    private static final int BATCH_PART_SIZE = 1 << 14;
+
     private Classification() {
         makeOutputs = false;
+        parallelism = 1;
     }
 
     public enum BatchType {
@@ -162,6 +207,57 @@ public class Classification<BatchProperty> {
             return this;
         }
 
+        public Builder<BatchProperty> setMaskSidecarWriter(MaskSidecar.Writer maskSidecarWriter) {
+            classification.maskSidecarWriter = maskSidecarWriter;
+            return this;
+        }
+
+        /**
+         * @param maskHistogram histogram counting masks of the keys
+         * @param maskHistogramFile file the histogram is saved to after the prior probability is estimated
+         */
+        public Builder<BatchProperty> setMaskHistogram(MaskHistogram maskHistogram, File maskHistogramFile) {
+            classification.maskHistogram = maskHistogram;
+            classification.maskHistogramFile = maskHistogramFile;
+            return this;
+        }
+
+        public Builder<BatchProperty> logSpace() {
+            classification.logSpace = true;
+            return this;
+        }
+
+        /**
+         * Accumulate batches in log space and verify them against the exact computation
+         * @param tolerance maximal absolute difference of probabilities of a group
+         */
+        public Builder<BatchProperty> setLogSpaceTolerance(double tolerance) {
+            classification.logSpace = true;
+            classification.logSpaceTolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * @param parallelism number of threads classifying the batches, the results do not depend on it
+         */
+        public Builder<BatchProperty> setParallelism(int parallelism) {
+            if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive");
+            classification.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Batch keys in temporary files instead of in memory, the annotated data set cannot be saved
+         * @param spillFolder folder for the temporary files
+         * @param memoryBudget maximal size of buffers of the batching in bytes
+         */
+        public Builder<BatchProperty> setSpillFolder(File spillFolder, long memoryBudget) {
+            if (memoryBudget <= 0) throw new IllegalArgumentException("Memory budget must be positive");
+            classification.spillFolder = spillFolder;
+            classification.memoryBudget = memoryBudget;
+            return this;
+        }
+
         public Builder<BatchProperty> makeOutputs() {
             classification.makeOutputs = true;
             return this;
@@ -173,7 +269,7 @@ public class Classification<BatchProperty> {
         }
 
         public Classification<BatchProperty> build() {
-            classification.keyIdToKeyStub = new TreeMap<>();
+            classification.keyStubs = new KeyStubStore(classification.table);
             if (classification.propertyExtractor != null) {
                 classification.batchHolder = new BatchHolder<>(classification.propertyExtractor);
             } else {
@@ -198,7 +294,7 @@ public class Classification<BatchProperty> {
                     builder.setPropertyExtractor(new PrimePropertyExtractor());
                     break;
                 case MODULUS_HASH:
-                    builder = new Classification.Builder<BigInteger>();
+                    builder = new Classification.Builder<KeyFingerprint>();
                     builder.setPropertyExtractor(new ModulusHashPropertyExtractor());
                     break;
                 case NONE:
@@ -209,21 +305,7 @@ public class Classification<BatchProperty> {
                     throw new NotImplementedException();
             }
 
-            PriorProbabilityEstimator estimator;
-
-            switch (config.priorType) {
-                case ESTIMATE:
-                    estimator = new NonNegativeLeastSquaresFitPriorProbabilityEstimator(config.classificationTable);
-                    break;
-                case UNIFORM:
-                    estimator = new UniformPriorProbabilityEstimator(config.classificationTable);
-                    break;
-                case TABLE:
-                    estimator = new UserDefinedPriorProbabilityEstimator(config.classificationTable);
-                    break;
-                default:
-                    throw new NotImplementedException();
-            }
+            PriorProbabilityEstimator estimator = createEstimator(config);
 
             DataSetFormatter formatter = null;
             DataSetSaver dataSetSaver;
@@ -242,10 +324,39 @@ public class Classification<BatchProperty> {
                     throw new NotImplementedException();
             }
 
+            // keys are kept for the export only in memory, otherwise the fields not used in classification are skipped
+            boolean classificationFieldsOnly = formatter == null || config.memoryType != MemoryType.MEMORY;
             DataSetIterator iterator = null;
-            if (datasetFilePath != null) iterator = new FileDataSetIterator(datasetFilePath);
+            if (datasetFilePath != null) {
+                File maskSidecar = config.maskSidecarFolderPath == null ? null : MaskSidecar.getSidecarFile(
+                        config.maskSidecarFolderPath, datasetFilePath, config.classificationTable.getIdentificationDefinitionHash());
+                if (maskSidecar != null && MaskSidecar.exists(maskSidecar, datasetFilePath)) {
+                    iterator = new MaskSidecarDataSetIterator(MaskSidecar.open(maskSidecar, datasetFilePath),
+                            config.classificationTable);
+                    if (formatter != null) {
+                        System.err.println("Warning: keys read from mask sidecar " + maskSidecar + " cannot be exported");
+                        formatter = null;
+                    }
+                } else {
+                    if (config.batchType == BatchType.PRIMES && KeyStore.isKeyStore(new File(datasetFilePath))) {
+                        System.err.println("Warning: key store does not contain primes, keys will not be batched by primes");
+                    }
+                    iterator = openDataSet(config, datasetFilePath, config.threads, classificationFieldsOnly);
+                    if (maskSidecar != null) {
+                        builder.setMaskSidecarWriter(MaskSidecar.create(maskSidecar, datasetFilePath,
+                                iterator.getDataSetName()));
+                    }
+                }
+            }
             builder.setDataSetIterator(iterator);
 
+            boolean spillToDisk = config.tempFolderPath != null && config.batchType != BatchType.NONE
+                    && !config.onlyPriorProbability;
+            if (spillToDisk && formatter != null) {
+                System.err.println("Warning: keys batched in temporary files cannot be exported");
+                formatter = null;
+            }
+
             if (formatter == null) {
                 dataSetSaver = new NoActionDataSetSaver();
             } else {
@@ -253,7 +364,8 @@ public class Classification<BatchProperty> {
                         "dataset_" + getDataSetName(iterator)));
                 switch (config.memoryType) {
                     case DISK:
-                        dataSetSaver = new FromFileDataSetSaver(new FileDataSetIterator(datasetFilePath), formatter, datasetWriter);
+                        dataSetSaver = new FromFileDataSetSaver(openDataSet(config, datasetFilePath, 1, false),
+                                formatter, datasetWriter);
                         break;
                     case MEMORY:
                         dataSetSaver = new InMemoryDataSetSaver(formatter, datasetWriter);
@@ -276,18 +388,78 @@ public class Classification<BatchProperty> {
                     throw new IllegalArgumentException("Output path already exists and is not a directory "
                             + outputDirectory.toString());
             } else {
-                if (!outputDirectory.mkdir())
+                // the directory may be created by a classification running in parallel
+                if (!outputDirectory.mkdir() && !outputDirectory.isDirectory())
                     throw new IllegalArgumentException("Could not create directory " + outputDirectory.toString());
             }
 
             builder.setStatisticsAggregator(new BatchesStatisticsAggregator(new ArrayList<>(
                     config.classificationTable.getGroupsNames()), outputDirectory.getPath()));
             builder.setTable(config.classificationTable);
+            builder.setParallelism(config.threads);
             if (config.makeOutputs) builder.makeOutputs();
-            if (config.onlyPriorProbability) builder.onlyPriorEstimation();
+            if (config.onlyPriorProbability) {
+                builder.onlyPriorEstimation();
+                builder.setMaskHistogram(new MaskHistogram(config.classificationTable, config.histogramBreakdown),
+                        new File(outputDirectory, MaskHistogram.FILE_NAME));
+            }
+            if (config.logSpace) builder.logSpace();
+            if (config.logSpaceTolerance != null) builder.setLogSpaceTolerance(config.logSpaceTolerance);
+            if (spillToDisk) {
+                builder.setSpillFolder(new File(config.tempFolderPath), config.memoryBudget * 1024 * 1024);
+            }
 
             return builder;
         }
+
+        public static PriorProbabilityEstimator createEstimator(ClassificationConfiguration config) {
+            switch (config.priorType) {
+                case ESTIMATE:
+                    NonNegativeLeastSquaresFitPriorProbabilityEstimator estimator =
+                            new NonNegativeLeastSquaresFitPriorProbabilityEstimator(config.classificationTable);
+                    estimator.setWarmStart(config.warmStart);
+                    return estimator;
+                case UNIFORM:
+                    return new UniformPriorProbabilityEstimator(config.classificationTable);
+                case TABLE:
+                    return new UserDefinedPriorProbabilityEstimator(config.classificationTable);
+                default:
+                    throw new NotImplementedException();
+            }
+        }
+
+        /**
+         * @param config configuration with the classification table
+         * @param datasetFilePath path to a JSON data set or to a key store
+         * @param threads number of reading threads
+         * @param classificationFieldsOnly if true, only the fields used for classification are read
+         * @return iterator over the data set
+         * @throws DataSetException the data set cannot be opened
+         */
+        public static DataSetIterator openDataSet(ClassificationConfiguration config, String datasetFilePath, int threads,
+                                                  boolean classificationFieldsOnly) throws DataSetException {
+            File datasetFile = new File(datasetFilePath);
+            if (KeyStore.isKeyStore(datasetFile)) {
+                Set<RSAKey.PART> unstoredParts = config.classificationTable.getTransformedParts();
+                unstoredParts.removeAll(KeyStore.STORED_PARTS);
+                if (!unstoredParts.isEmpty()) {
+                    throw new DataSetException("Key store " + datasetFilePath + " contains only moduli, but the "
+                            + "classification table transforms also " + unstoredParts
+                            + ", classify the original JSON data set instead");
+                }
+                KeyStore store = KeyStore.open(datasetFile);
+                if (threads > 1) {
+                    return new ParallelKeyStoreDataSetIterator(store, config.classificationTable, threads,
+                            !classificationFieldsOnly);
+                }
+                return new KeyStoreDataSetIterator(store, 0, store.getKeyCount(), !classificationFieldsOnly);
+            }
+            if (threads > 1) {
+                return new ParallelFileDataSetIterator(datasetFilePath, config.classificationTable, threads,
+                        classificationFieldsOnly);
+            }
+            return new FileDataSetIterator(datasetFilePath, classificationFieldsOnly);
+        }
     }
 
     private static String getDataSetName(DataSetIterator iterator) {
@@ -298,7 +470,62 @@ public class Classification<BatchProperty> {
         return getDataSetName(dataSetIterator);
     }
 
+    /**
+     * Merge mask histograms (of the input paths) and estimate the prior probability from the merged counts,
+     * the merged histogram and the prior probability are saved to the output folder
+     * @param config configuration with the classification table and the prior type
+     * @return estimator with the merged counts
+     * @throws DataSetException a histogram cannot be read or the results cannot be written
+     */
+    public static PriorProbabilityEstimator reduceHistograms(ClassificationConfiguration config) throws DataSetException {
+        MaskHistogram merged = null;
+        for (String histogramPath : config.inputPaths) {
+            MaskHistogram histogram = MaskHistogram.load(new File(histogramPath), config.classificationTable);
+            if (merged == null) {
+                merged = histogram;
+            } else {
+                merged.merge(histogram);
+            }
+        }
+        if (merged == null) throw new IllegalArgumentException("No mask histograms to reduce");
+
+        PriorProbabilityEstimator estimator = BuildHelper.createEstimator(config);
+        estimator.setMaskToFrequency(merged.getMaskToFrequency());
+        try {
+            merged.save(new File(config.outputFolderPath, MaskHistogram.FILE_NAME), config.classificationTable);
+        } catch (IOException e) {
+            throw new DataSetException("Cannot write mask histogram: " + e.getMessage(), e);
+        }
+        new BatchesStatisticsAggregator(new ArrayList<>(config.classificationTable.getGroupsNames()),
+                config.outputFolderPath).savePriorProbabilitySummary(estimator);
+        if (config.makeOutputs) {
+            System.out.println(String.format("Reduced %d histograms with %d keys", config.inputPaths.size(),
+                    merged.getKeyCount()));
+        }
+        return estimator;
+    }
+
     public PriorProbabilityEstimator classify() throws DataSetException {
+        SpillingBatchHolder<BatchProperty> spillingBatchHolder = null;
+        if (spillFolder != null && !onlyPriorEstimation && batchHolder != null) {
+            try {
+                spillingBatchHolder = new SpillingBatchHolder<>(propertyExtractor, table, spillFolder, memoryBudget);
+            } catch (IOException e) {
+                throw new DataSetException("Cannot create temporary files: " + e.getMessage(), e);
+            }
+        }
+        try {
+            return classify(spillingBatchHolder);
+        } finally {
+            if (spillingBatchHolder != null) spillingBatchHolder.close();
+        }
+    }
+
+    /**
+     * @param spillingBatchHolder holder batching the keys on disk, null if they are batched in memory
+     */
+    private PriorProbabilityEstimator classify(SpillingBatchHolder<BatchProperty> spillingBatchHolder)
+            throws DataSetException {
         long time = System.currentTimeMillis();
 
         Long keyId = 0L;
@@ -307,20 +534,38 @@ public class Classification<BatchProperty> {
             ClassificationKey key = dataSetIterator.next();
             ClassificationKeyStub stub;
             try {
-                stub = ClassificationKeyStub.fromClassificationKey(key, table);
+                if (dataSetIterator instanceof StubDataSetIterator) {
+                    stub = ((StubDataSetIterator) dataSetIterator).getStub();
+                } else {
+                    stub = ClassificationKeyStub.fromClassificationKey(key, table);
+                }
             } catch (Exception e) {
                 System.err.println("Warning: cannot compute key stub: " + e.getMessage());
                 continue;
             }
-            if (!onlyPriorEstimation && batchHolder != null) {
+            if (maskSidecarWriter != null) {
+                try {
+                    maskSidecarWriter.write(key, stub);
+                } catch (IOException e) {
+                    throw new DataSetException("Cannot write mask sidecar: " + e.getMessage(), e);
+                }
+            }
+            if (spillingBatchHolder != null) {
+                try {
+                    keyId = spillingBatchHolder.registerKey(key, stub);
+                } catch (IOException e) {
+                    throw new DataSetException("Cannot write temporary files: " + e.getMessage(), e);
+                }
+            } else if (!onlyPriorEstimation && batchHolder != null) {
                 keyId = batchHolder.registerKey(key);
-                keyIdToKeyStub.put(keyId, stub);
+                keyStubs.put(keyId, stub);
                 dataSetSaver.registerKeyUnderKeyId(key, keyId);
             } else {
                 keyId++;
             }
 
-            priorProbabilityEstimator.addMask(stub.getMask());
+            priorProbabilityEstimator.addMask(stub);
+            if (maskHistogram != null) maskHistogram.add(key, stub);
 
             if (makeOutputs && keyId % 100000 == 100000 - 1) {
                 long currentTime = System.currentTimeMillis();
@@ -331,11 +576,25 @@ public class Classification<BatchProperty> {
 
         }
         dataSetIterator.close();
+        if (maskSidecarWriter != null) {
+            try {
+                maskSidecarWriter.close();
+            } catch (IOException e) {
+                throw new DataSetException("Cannot write mask sidecar: " + e.getMessage(), e);
+            }
+        }
 
         time = System.currentTimeMillis();
         PriorProbability priorProbability = priorProbabilityEstimator.computePriorProbability();
 
         statisticsAggregator.savePriorProbabilitySummary(priorProbabilityEstimator);
+        if (maskHistogram != null) {
+            try {
+                maskHistogram.save(maskHistogramFile, table);
+            } catch (IOException e) {
+                throw new DataSetException("Cannot write mask histogram: " + e.getMessage(), e);
+            }
+        }
         if (onlyPriorEstimation || batchHolder == null) {
             return priorProbabilityEstimator;
         }
@@ -345,25 +604,37 @@ public class Classification<BatchProperty> {
             System.out.println(String.format("Computed prior probability in %d seconds", (System.currentTimeMillis() - time) / 1000));
 
         time = System.currentTimeMillis();
+        if (spillingBatchHolder != null) {
+            BatchClassifier classifier = new BatchClassifier(statisticsAggregator, dataSetSaver);
+            try {
+                spillingBatchHolder.forEachBatch(classifier::classifyBatch);
+            } catch (IOException e) {
+                throw new DataSetException("Cannot read temporary files: " + e.getMessage(), e);
+            }
+            classifier.addSingletonStatistics();
+            classifier.reportLogSpace();
+            if (makeOutputs)
+                System.out.println(String.format("Classified all batches in %d seconds", (System.currentTimeMillis() - time) / 1000));
+
+            time = System.currentTimeMillis();
+            statisticsAggregator.saveStatistics();
+            if (makeOutputs)
+                System.out.println(String.format("Saved statistics in %d seconds", (System.currentTimeMillis() - time) / 1000));
+            return priorProbabilityEstimator;
+        }
+
         // TODO repeat for different prior probabilities
         List<Long> batchIds = batchHolder.getBatchIdsForKeyWithProperty();
+        List<Long> keyIdsWithoutProperty = batchHolder.getKeyIdsWithoutProperty();
 
-        for (Long batchId : batchIds) {
-            List<ClassificationKeyStub> stubs = batchHolder.getKeyIdsByBatchId(batchId).stream().map(
-                    keyInBatchId -> keyIdToKeyStub.get(keyInBatchId)).collect(Collectors.toList());
-            ClassificationContainer container = classifyAsBatch(stubs);
-            if (container == null) continue;
-            statisticsAggregator.addStatistics(container, stubs.toArray(new ClassificationKeyStub[stubs.size()]));
-            dataSetSaver.setBatchClassificationResult(batchId, container);
-        }
-
-        for (Long keyIdNoProperty : batchHolder.getKeyIdsWithoutProperty()) {
-            ClassificationKeyStub stub = keyIdToKeyStub.get(keyIdNoProperty);
-            ClassificationContainer container = classifyIndividually(stub);
-            if (container == null) continue;
-            statisticsAggregator.addStatistics(container, stub);
-            dataSetSaver.setBatchClassificationResult(batchHolder.getBatchIdForKeyId(keyIdNoProperty), container);
+        BatchClassifier classifier = new BatchClassifier(statisticsAggregator, dataSetSaver);
+        if (parallelism > 1) {
+            classifyInParallel(classifier, batchIds, keyIdsWithoutProperty);
+        } else {
+            classifier.classify(batchIds, keyIdsWithoutProperty, 0, batchIds.size() + keyIdsWithoutProperty.size());
         }
+        classifier.addSingletonStatistics();
+        classifier.reportLogSpace();
         if (makeOutputs)
             System.out.println(String.format("Classified all batches in %d seconds", (System.currentTimeMillis() - time) / 1000));
 
@@ -375,7 +646,7 @@ public class Classification<BatchProperty> {
 
         time = System.currentTimeMillis();
         try {
-            dataSetSaver.reconstructDataSet(batchHolder, keyIdToKeyStub);
+            dataSetSaver.reconstructDataSet(batchHolder, keyStubs);
         } catch (IOException e) {
             System.err.println("Couldn't save dataset result to file");
             e.printStackTrace();
@@ -385,30 +656,287 @@ public class Classification<BatchProperty> {
         return priorProbabilityEstimator;
     }
 
-    private ClassificationContainer classifyAsBatch(List<ClassificationKeyStub> stubs) {
-        ClassificationContainer container = null;
-        for (ClassificationKeyStub stub : stubs) {
-            ClassificationRow row = table.classifyIdentification(stub.getMask());
+    /**
+     * Classify batches in parallel, each thread classifies parts of the batches with its own aggregator and saver,
+     * the parts are merged in the order of batches, so the results are the same as of the sequential classification
+     */
+    private void classifyInParallel(BatchClassifier classifier, List<Long> batchIds, List<Long> keyIdsWithoutProperty) {
+        int count = batchIds.size() + keyIdsWithoutProperty.size();
+        int parts = Math.max(1, Math.min(count, parallelism * PARTS_PER_THREAD));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<BatchClassifier>> tasks = new ArrayList<>(parts);
+            for (int part = 0; part < parts; part++) {
+                int from = (int) ((long) count * part / parts);
+                int to = (int) ((long) count * (part + 1) / parts);
+                tasks.add(pool.submit(() -> {
+                    // the saver without any action is shared, results of other savers are collected for the merge
+                    BatchClassifier partial = new BatchClassifier(statisticsAggregator.emptyCopy(),
+                            dataSetSaver instanceof NoActionDataSetSaver ? dataSetSaver : new PartialDataSetSaver());
+                    partial.classify(batchIds, keyIdsWithoutProperty, from, to);
+                    return partial;
+                }));
+            }
+            for (ForkJoinTask<BatchClassifier> task : tasks) {
+                classifier.merge(task.join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Classifies batches, adds their statistics to the aggregator and their results to the saver
+     */
+    private class BatchClassifier {
+        private final StatisticsAggregator aggregator;
+        private final BatchResultSaver saver;
+
+        /**
+         * Batches of single keys are classified once for each mask and duplicity count, see classifySingleton
+         */
+        private final Map<SingletonKey, SingletonClassification> singletons;
+
+        private long logSpaceMismatches;
+        private long logSpaceUnderflows;
+        private long logSpaceOverflows;
+
+        BatchClassifier(StatisticsAggregator aggregator, BatchResultSaver saver) {
+            this.aggregator = aggregator;
+            this.saver = saver;
+            singletons = new HashMap<>();
+        }
+
+        /**
+         * Classify batches with indices from (inclusive) to (exclusive) in the batches followed by keys without property
+         */
+        void classify(List<Long> batchIds, List<Long> keyIdsWithoutProperty, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (i < batchIds.size()) {
+                    classifyBatch(batchIds.get(i));
+                } else {
+                    Long keyIdNoProperty = keyIdsWithoutProperty.get(i - batchIds.size());
+                    classifySingleton(batchHolder.getBatchIdForKeyId(keyIdNoProperty), keyStubs.get(keyIdNoProperty));
+                }
+            }
+        }
+
+        private void classifyBatch(Long batchId) {
+            List<Long> keyIds = batchHolder.getKeyIdsByBatchId(batchId);
+            classifyBatch(batchId, keyIds.stream().map(
+                    keyInBatchId -> keyStubs.get(keyInBatchId)).collect(Collectors.toList()));
+        }
+
+        /**
+         * @param batchId id of the batch
+         * @param stubs stubs of all keys of the batch
+         */
+        void classifyBatch(Long batchId, List<ClassificationKeyStub> stubs) {
+            if (stubs.size() == 1) {
+                classifySingleton(batchId, stubs.get(0));
+                return;
+            }
+            ClassificationContainer container = classifyAsBatch(stubs);
+            if (container == null) return;
+            aggregator.addStatistics(container, stubs.toArray(new ClassificationKeyStub[stubs.size()]));
+            saver.setBatchClassificationResult(batchId, container);
+        }
+
+        /**
+         * Add statistics and results of other batches, the singletons are added by addSingletonStatistics
+         * @param other classifier of other batches
+         */
+        void merge(BatchClassifier other) {
+            aggregator.merge(other.aggregator);
+            if (other.saver instanceof PartialDataSetSaver) ((PartialDataSetSaver) other.saver).mergeInto(saver);
+            for (Map.Entry<SingletonKey, SingletonClassification> entry : other.singletons.entrySet()) {
+                SingletonClassification singleton = singletons.get(entry.getKey());
+                if (singleton == null) {
+                    singletons.put(entry.getKey(), entry.getValue());
+                } else {
+                    singleton.multiplicity += entry.getValue().multiplicity;
+                }
+            }
+            logSpaceMismatches += other.logSpaceMismatches;
+            logSpaceUnderflows += other.logSpaceUnderflows;
+            logSpaceOverflows += other.logSpaceOverflows;
+        }
+
+        void addSingletonStatistics() {
+            for (SingletonClassification singleton : singletons.values()) {
+                if (singleton.container == null) continue;
+                aggregator.addStatistics(singleton.container, singleton.multiplicity, singleton.stub);
+            }
+        }
+
+        private ClassificationContainer classifyAsBatch(List<ClassificationKeyStub> stubs) {
+            BatchPart batch = stubs.size() < LARGE_BATCH_SIZE ? classifyBatchPart(stubs, 0, stubs.size())
+                    : new BatchReduction(stubs, 0, stubs.size()).invoke();
+            ClassificationContainer container = batch.container;
+            if (container != null && container.isLogSpace()) {
+                if (container.getUnderflowCount() > 0) logSpaceUnderflows++;
+                if (container.isOverflow()) logSpaceOverflows++;
+                if (batch.exactContainer != null
+                        && container.getRow().maxDifference(batch.exactContainer.getRow()) > logSpaceTolerance) {
+                    logSpaceMismatches++;
+                }
+            }
+            return container;
+        }
+
+        void reportLogSpace() {
+            if (logSpaceUnderflows > 0) {
+                System.err.println("Warning: probabilities of some groups underflowed to zero in log space in "
+                        + logSpaceUnderflows + " batches");
+            }
+            if (logSpaceOverflows > 0) {
+                System.err.println("Warning: log space likelihoods overflowed in " + logSpaceOverflows + " batches");
+            }
+            if (logSpaceMismatches > 0) {
+                System.err.println("Warning: log space classification differs from the exact classification by more than "
+                        + logSpaceTolerance + " in " + logSpaceMismatches + " batches");
+            }
+        }
+
+        /**
+         * Classify a batch with a single key, keys with the same mask, duplicity count (and real source) share
+         * the container, their statistics are added at once weighted by the number of such keys
+         */
+        private void classifySingleton(Long batchId, ClassificationKeyStub stub) {
+            SingletonKey singletonKey = new SingletonKey(stub);
+            SingletonClassification singleton = singletons.get(singletonKey);
+            if (singleton == null) {
+                singleton = new SingletonClassification(stub, classifyIndividually(stub));
+                singletons.put(singletonKey, singleton);
+            } else if (singleton.container == null) {
+                System.err.println("Warning: could not classify key with mask: " + stub.getMask());
+            }
+            singleton.multiplicity++;
+            if (singleton.container != null) saver.setBatchClassificationResult(batchId, singleton.container);
+        }
+    }
+
+    /**
+     * Classification of a part of a batch, the exact container is used only to verify the log space classification
+     */
+    private static class BatchPart {
+        private ClassificationContainer container;
+        private ClassificationContainer exactContainer;
+
+        /**
+         * @param other classification of the following keys of the batch
+         * @return classification of keys of both parts
+         */
+        BatchPart merge(BatchPart other) {
+            if (container == null) return other;
+            if (other.container == null) return this;
+            container.merge(other.container);
+            if (exactContainer != null) exactContainer.merge(other.exactContainer);
+            return this;
+        }
+    }
+
+    /**
+     * Classifies keys of a large batch from (inclusive) to (exclusive) by halves, the products of the rows
+     * of the halves are combined, the halves are classified in parallel if the batches are classified by more threads
+     */
+    private class BatchReduction extends RecursiveTask<BatchPart> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ClassificationKeyStub> stubs;
+        private final int from;
+        private final int to;
+
+        BatchReduction(List<ClassificationKeyStub> stubs, int from, int to) {
+            this.stubs = stubs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BatchPart compute() {
+            if (to - from <= BATCH_PART_SIZE) return classifyBatchPart(stubs, from, to);
+            int middle = (from + to) >>> 1;
+            BatchReduction left = new BatchReduction(stubs, from, middle);
+            BatchReduction right = new BatchReduction(stubs, middle, to);
+            if (parallelism > 1) {
+                invokeAll(left, right);
+                return left.join().merge(right.join());
+            }
+            return left.compute().merge(right.compute());
+        }
+    }
+
+    private BatchPart classifyBatchPart(List<ClassificationKeyStub> stubs, int from, int to) {
+        BatchPart part = new BatchPart();
+        for (ClassificationKeyStub stub : stubs.subList(from, to)) {
+            ClassificationRow row = classifyStub(stub);
             if (row == null) {
                 System.err.println("Warning: could not classify key with mask: " + stub.getMask());
                 continue;
             }
-            if (container == null) {
-                container = new ClassificationContainer(stub.getDuplicityCount(), row);
+            if (part.container == null) {
+                part.container = logSpace ? ClassificationContainer.logSpace(stub.getDuplicityCount(), row)
+                        : new ClassificationContainer(stub.getDuplicityCount(), row);
+                if (logSpaceTolerance != null) {
+                    part.exactContainer = new ClassificationContainer(stub.getDuplicityCount(), row);
+                }
             } else {
-                container.add(stub.getDuplicityCount(), row);
+                part.container.add(stub.getDuplicityCount(), row);
+                if (part.exactContainer != null) part.exactContainer.add(stub.getDuplicityCount(), row);
             }
         }
-        return container;
+        return part;
+    }
+
+    private static class SingletonKey {
+        private final String mask;
+        private final int duplicityCount;
+        private final String realSource;
+
+        SingletonKey(ClassificationKeyStub stub) {
+            mask = stub.getMask();
+            duplicityCount = stub.getDuplicityCount();
+            realSource = stub.getRealSource();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SingletonKey)) return false;
+            SingletonKey other = (SingletonKey) o;
+            return duplicityCount == other.duplicityCount && Objects.equals(mask, other.mask)
+                    && Objects.equals(realSource, other.realSource);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mask, duplicityCount, realSource);
+        }
+    }
+
+    private static class SingletonClassification {
+        private final ClassificationKeyStub stub;
+        private final ClassificationContainer container;
+        private long multiplicity;
+
+        SingletonClassification(ClassificationKeyStub stub, ClassificationContainer container) {
+            this.stub = stub;
+            this.container = container;
+        }
     }
 
     private ClassificationContainer classifyIndividually(ClassificationKeyStub stub) {
-        ClassificationRow row = table.classifyIdentification(stub.getMask());
+        ClassificationRow row = classifyStub(stub);
         if (row == null) {
             System.err.println("Warning: could not classify key with mask: " + stub.getMask());
             return null;
         }
-        return new ClassificationContainer(stub.getDuplicityCount(), table.classifyIdentification(stub.getMask()));
+        return new ClassificationContainer(stub.getDuplicityCount(), row);
+    }
+
+    private ClassificationRow classifyStub(ClassificationKeyStub stub) {
+        return stub.getMaskId() >= 0 ? table.classifyMaskId(stub.getMaskId()) : table.classifyIdentification(stub.getMask());
     }
 
 }
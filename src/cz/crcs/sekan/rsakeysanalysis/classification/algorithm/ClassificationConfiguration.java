@@ -1,5 +1,6 @@
 package cz.crcs.sekan.rsakeysanalysis.classification.algorithm;
 
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.MaskHistogram;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.PriorProbability;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.exception.DataSetException;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
@@ -32,14 +33,27 @@ public class ClassificationConfiguration {
     public static final String CLASSIFICATION_TABLE_SWITCH = "-t";
     public static final String OUTPUT_SWITCH = "-o";
     public static final String TEMP_SWITCH = "-tmp";
+    public static final String MEMORY_BUDGET_SWITCH = "-mb";
     public static final String INPUTS_SWITCH = "-i";
     public static final String PRINT_PROGRESS_SWITCH = "-pp";
     public static final String SUPPRESS_PROGRESS_SWITCH = "-sp";
     public static final String ONLY_PRIOR_SWITCH_SWITCH = "-op";
+    public static final String THREADS_SWITCH = "-th";
+    public static final String MASK_SIDECAR_SWITCH = "-ms";
+    public static final String LOG_SPACE_SWITCH = "-ls";
+    public static final String LOG_SPACE_TOLERANCE_SWITCH = "-lst";
+    public static final String HISTOGRAM_BREAKDOWN_SWITCH = "-hb";
+    public static final String WINDOW_SWITCH = "-w";
+    public static final String STEP_SWITCH = "-st";
+    public static final String TIMESTAMP_ATTRIBUTE_SWITCH = "-ta";
+    public static final String WARM_START_SWITCH = "-ws";
 
     private static final List<String> allowedSwitches = Arrays.asList(BATCH_TYPE_SWITCH, PRIOR_TYPE_SWITCH,
             EXPORT_TYPE_SWITCH, MEMORY_TYPE_SWITCH, KEY_COUNT_SWITCH, RNG_SEED_SWITCH, PRIOR_PROBABILITY_SWITCH,
-            CLASSIFICATION_TABLE_SWITCH, OUTPUT_SWITCH, TEMP_SWITCH, INPUTS_SWITCH, ONLY_PRIOR_SWITCH_SWITCH);
+            CLASSIFICATION_TABLE_SWITCH, OUTPUT_SWITCH, TEMP_SWITCH, MEMORY_BUDGET_SWITCH, INPUTS_SWITCH, PRINT_PROGRESS_SWITCH,
+            SUPPRESS_PROGRESS_SWITCH, ONLY_PRIOR_SWITCH_SWITCH, THREADS_SWITCH, MASK_SIDECAR_SWITCH, LOG_SPACE_SWITCH,
+            LOG_SPACE_TOLERANCE_SWITCH, HISTOGRAM_BREAKDOWN_SWITCH, WINDOW_SWITCH, STEP_SWITCH, TIMESTAMP_ATTRIBUTE_SWITCH,
+            WARM_START_SWITCH);
 
     public int consumedArguments;
 
@@ -51,9 +65,26 @@ public class ClassificationConfiguration {
     public ClassificationTable classificationTable;
     public String outputFolderPath;
     public String tempFolderPath;
+    /**
+     * Memory for buffers of batching in temporary files in MB
+     */
+    public long memoryBudget = 256;
     public boolean makeOutputs = true;
     public boolean onlyPriorProbability = false;
     public List<String> inputPaths;
+    public int threads = 1;
+    private boolean threadsSet = false;
+    public String maskSidecarFolderPath;
+    public boolean logSpace = false;
+    public Double logSpaceTolerance;
+    public MaskHistogram.Breakdown histogramBreakdown;
+
+    public boolean warmStart = false;
+
+    // time series
+    public Long windowSize;
+    public Long stepSize;
+    public String timestampAttribute;
 
     // success
     public int keyCount;
@@ -70,6 +101,13 @@ public class ClassificationConfiguration {
         return random;
     }
 
+    /**
+     * @return number of threads for independent tasks (windows, simulations), all processors unless set
+     */
+    public int getParallelism() {
+        return threadsSet ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
     public static ClassificationConfiguration fromCommandLineOptions(String[] args, int offset)
             throws IOException, ParseException, WrongTransformationFormatException, TransformationNotFoundException, DataSetException {
 
@@ -137,6 +175,12 @@ public class ClassificationConfiguration {
                 case TEMP_SWITCH:
                     returnObject.tempFolderPath = args[++returnObject.consumedArguments];
                     break;
+                case MEMORY_BUDGET_SWITCH:
+                    returnObject.memoryBudget = Long.valueOf(args[++returnObject.consumedArguments]);
+                    if (returnObject.memoryBudget < 1) {
+                        throw new IllegalArgumentException("Memory budget must be positive.");
+                    }
+                    break;
                 case INPUTS_SWITCH:
                     inputsBeingEnumerated = true;
                     break;
@@ -149,6 +193,47 @@ public class ClassificationConfiguration {
                 case ONLY_PRIOR_SWITCH_SWITCH:
                     returnObject.onlyPriorProbability = true;
                     break;
+                case THREADS_SWITCH:
+                    returnObject.threads = Integer.valueOf(args[++returnObject.consumedArguments]);
+                    returnObject.threadsSet = true;
+                    if (returnObject.threads < 1) {
+                        throw new IllegalArgumentException("Number of threads must be positive.");
+                    }
+                    break;
+                case MASK_SIDECAR_SWITCH:
+                    returnObject.maskSidecarFolderPath = args[++returnObject.consumedArguments];
+                    break;
+                case LOG_SPACE_SWITCH:
+                    returnObject.logSpace = true;
+                    break;
+                case LOG_SPACE_TOLERANCE_SWITCH:
+                    returnObject.logSpace = true;
+                    returnObject.logSpaceTolerance = Double.valueOf(args[++returnObject.consumedArguments]);
+                    if (!(returnObject.logSpaceTolerance >= 0)) {
+                        throw new IllegalArgumentException("Tolerance of log space classification must be non-negative.");
+                    }
+                    break;
+                case HISTOGRAM_BREAKDOWN_SWITCH:
+                    returnObject.histogramBreakdown = MaskHistogram.Breakdown.valueOf(args[++returnObject.consumedArguments].toUpperCase());
+                    break;
+                case WINDOW_SWITCH:
+                    returnObject.windowSize = Long.valueOf(args[++returnObject.consumedArguments]);
+                    if (returnObject.windowSize < 1) {
+                        throw new IllegalArgumentException("Window must be positive.");
+                    }
+                    break;
+                case STEP_SWITCH:
+                    returnObject.stepSize = Long.valueOf(args[++returnObject.consumedArguments]);
+                    if (returnObject.stepSize < 1) {
+                        throw new IllegalArgumentException("Step must be positive.");
+                    }
+                    break;
+                case WARM_START_SWITCH:
+                    returnObject.warmStart = true;
+                    break;
+                case TIMESTAMP_ATTRIBUTE_SWITCH:
+                    returnObject.timestampAttribute = args[++returnObject.consumedArguments];
+                    break;
                 default:
                     throw new IllegalArgumentException("Invalid option for classification: " + nextArgument);
             }
@@ -165,11 +250,25 @@ public class ClassificationConfiguration {
         copy.exportType = exportType;
         copy.memoryType = memoryType;
         copy.outputFolderPath = outputFolderPath;
+        copy.tempFolderPath = tempFolderPath;
+        copy.memoryBudget = memoryBudget;
+        copy.makeOutputs = makeOutputs;
+        copy.onlyPriorProbability = onlyPriorProbability;
         copy.keyCount = keyCount;
         copy.rngSeed = rngSeed;
         copy.classificationTable = classificationTable == null ? null : classificationTable.makeCopy();
         copy.priorProbability = priorProbability == null ? null : priorProbability.makeCopy();
         copy.inputPaths = inputPaths;
+        copy.threads = threads;
+        copy.threadsSet = threadsSet;
+        copy.maskSidecarFolderPath = maskSidecarFolderPath;
+        copy.logSpace = logSpace;
+        copy.logSpaceTolerance = logSpaceTolerance;
+        copy.histogramBreakdown = histogramBreakdown;
+        copy.warmStart = warmStart;
+        copy.windowSize = windowSize;
+        copy.stepSize = stepSize;
+        copy.timestampAttribute = timestampAttribute;
         return copy;
     }
 
@@ -184,9 +283,19 @@ public class ClassificationConfiguration {
                 ", classificationTable=" + classificationTable +
                 ", outputFolderPath='" + outputFolderPath + '\'' +
                 ", tempFolderPath='" + tempFolderPath + '\'' +
+                ", memoryBudget=" + memoryBudget +
                 ", makeOutputs=" + makeOutputs +
                 ", onlyPriorProbability=" + onlyPriorProbability +
                 ", inputPaths=" + inputPaths +
+                ", threads=" + threads +
+                ", maskSidecarFolderPath='" + maskSidecarFolderPath + '\'' +
+                ", logSpace=" + logSpace +
+                ", logSpaceTolerance=" + logSpaceTolerance +
+                ", histogramBreakdown=" + histogramBreakdown +
+                ", warmStart=" + warmStart +
+                ", windowSize=" + windowSize +
+                ", stepSize=" + stepSize +
+                ", timestampAttribute='" + timestampAttribute + '\'' +
                 ", keyCount=" + keyCount +
                 ", rngSeed=" + rngSeed +
                 ", priorProbability=" + priorProbability +
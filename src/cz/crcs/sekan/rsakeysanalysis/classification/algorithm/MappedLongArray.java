@@ -0,0 +1,48 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Array of longs in a memory mapped file, the values are paged by the operating system instead of the heap.
+ * The file is mapped by chunks, so the array can have more elements than the maximal size of a mapping.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+class MappedLongArray {
+    private static final int CHUNK_BITS = 27;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+    private final LongBuffer[] chunks;
+
+    /**
+     * @param file file with the values, its size is set to the length of the array
+     * @param length number of longs
+     */
+    MappedLongArray(File file, long length) throws IOException {
+        int chunkCount = (int) ((length + CHUNK_MASK) >>> CHUNK_BITS);
+        chunks = new LongBuffer[chunkCount];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(length * Long.BYTES);
+            FileChannel channel = randomAccessFile.getChannel();
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                long start = (long) chunk << CHUNK_BITS;
+                long size = Math.min(1L << CHUNK_BITS, length - start);
+                chunks[chunk] = channel.map(FileChannel.MapMode.READ_WRITE, start * Long.BYTES, size * Long.BYTES)
+                        .asLongBuffer();
+            }
+        }
+    }
+
+    long get(long index) {
+        return chunks[(int) (index >>> CHUNK_BITS)].get((int) (index & CHUNK_MASK));
+    }
+
+    void set(long index, long value) {
+        chunks[(int) (index >>> CHUNK_BITS)].put((int) (index & CHUNK_MASK), value);
+    }
+}
@@ -0,0 +1,234 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts records of a fixed number of longs which do not fit into memory. Records are buffered up to the memory
+ * budget, sorted and written as a run to the folder, the runs are merged when the records are read.
+ * The buffers of the run readers also fit into the budget, if there are more runs than readers, groups of runs
+ * are merged to longer runs first. Records are ordered lexicographically by all their longs.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+class SortedRecordRuns implements Closeable {
+    private static final int RUN_BUFFER_SIZE = 1 << 16;
+    private static final int MIN_CAPACITY = 1024;
+    private static final int MIN_MERGED_RUNS = 2;
+
+    private final File folder;
+    private final String name;
+    private final int width;
+
+    /**
+     * Maximal number of records in the buffer, the buffer grows up to it
+     */
+    private final int capacity;
+
+    /**
+     * Maximal number of runs merged at once, their readers (and the writer of an intermediate run) fit into the budget
+     */
+    private final int mergedRuns;
+
+    private long[] buffer;
+    private int bufferedRecords;
+    private List<File> runs;
+    private int nextRunId;
+
+    /**
+     * @param folder folder for the runs
+     * @param name prefix of the names of the runs
+     * @param width number of longs of a record
+     * @param memoryBudget maximal size of the buffer (or of the buffers of run readers) in bytes
+     */
+    SortedRecordRuns(File folder, String name, int width, long memoryBudget) {
+        this.folder = folder;
+        this.name = name;
+        this.width = width;
+        capacity = (int) Math.max(MIN_CAPACITY, Math.min(Integer.MAX_VALUE / width, memoryBudget / (Long.BYTES * width)));
+        mergedRuns = (int) Math.max(MIN_MERGED_RUNS,
+                Math.min(Integer.MAX_VALUE, memoryBudget / RUN_BUFFER_SIZE - 1));
+        buffer = new long[MIN_CAPACITY * width];
+        bufferedRecords = 0;
+        runs = new ArrayList<>();
+        nextRunId = 0;
+    }
+
+    /**
+     * @param record record of width longs, copied
+     */
+    void add(long[] record) throws IOException {
+        if (bufferedRecords * width == buffer.length) {
+            if (bufferedRecords < capacity) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(capacity, 2L * bufferedRecords) * width);
+            } else {
+                spill();
+            }
+        }
+        System.arraycopy(record, 0, buffer, bufferedRecords * width, width);
+        bufferedRecords++;
+    }
+
+    /**
+     * @return iterator over all added records in the order, no more records can be added
+     */
+    RecordIterator sorted() throws IOException {
+        if (runs.isEmpty()) {
+            sort(buffer, width, 0, bufferedRecords - 1);
+            long[] records = buffer;
+            int count = bufferedRecords;
+            buffer = null;
+            return new RecordIterator() {
+                private int next = 0;
+
+                @Override
+                public boolean next(long[] record) {
+                    if (next == count) return false;
+                    System.arraycopy(records, next++ * width, record, 0, width);
+                    return true;
+                }
+            };
+        }
+        if (bufferedRecords > 0) spill();
+        buffer = null;
+
+        long[] record = new long[width];
+        while (runs.size() > mergedRuns) {
+            List<File> group = new ArrayList<>(runs.subList(0, mergedRuns));
+            runs.subList(0, mergedRuns).clear();
+            RecordIterator merged = merge(group);
+            try (DataOutputStream output = createRun()) {
+                while (merged.next(record)) {
+                    for (long value : record) output.writeLong(value);
+                }
+            }
+            for (File run : group) {
+                if (!run.delete()) System.err.println("Warning: could not delete the temporary file " + run.getPath());
+            }
+        }
+        return merge(runs);
+    }
+
+    /**
+     * @param runs runs to merge
+     * @return iterator over records of the runs in the order
+     */
+    private RecordIterator merge(List<File> runs) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(),
+                (first, second) -> compare(first.current, 0, second.current, 0, width));
+        for (File run : runs) {
+            RunReader reader = new RunReader(run);
+            if (reader.advance()) queue.add(reader);
+        }
+        return record -> {
+            RunReader reader = queue.poll();
+            if (reader == null) return false;
+            System.arraycopy(reader.current, 0, record, 0, width);
+            if (reader.advance()) queue.add(reader);
+            return true;
+        };
+    }
+
+    /**
+     * Delete the runs
+     */
+    @Override
+    public void close() {
+        buffer = null;
+        for (File run : runs) {
+            if (run.exists() && !run.delete()) {
+                System.err.println("Warning: could not delete the temporary file " + run.getPath());
+            }
+        }
+        runs.clear();
+    }
+
+    interface RecordIterator {
+        /**
+         * @param record array the next record is copied to
+         * @return false if there are no more records
+         */
+        boolean next(long[] record) throws IOException;
+    }
+
+    private void spill() throws IOException {
+        sort(buffer, width, 0, bufferedRecords - 1);
+        try (DataOutputStream output = createRun()) {
+            for (int i = 0; i < bufferedRecords * width; i++) output.writeLong(buffer[i]);
+        }
+        bufferedRecords = 0;
+    }
+
+    /**
+     * @return output stream of a new run appended to the runs
+     */
+    private DataOutputStream createRun() throws IOException {
+        File run = new File(folder, name + "_" + nextRunId++);
+        runs.add(run);
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), RUN_BUFFER_SIZE));
+    }
+
+    private class RunReader {
+        private final DataInputStream input;
+        private final long[] current;
+
+        RunReader(File run) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(run), RUN_BUFFER_SIZE));
+            current = new long[width];
+        }
+
+        boolean advance() throws IOException {
+            try {
+                current[0] = input.readLong();
+            } catch (EOFException e) {
+                input.close();
+                return false;
+            }
+            for (int i = 1; i < width; i++) current[i] = input.readLong();
+            return true;
+        }
+    }
+
+    private static int compare(long[] records, int first, long[] otherRecords, int second, int width) {
+        for (int i = 0; i < width; i++) {
+            int comparison = Long.compare(records[first + i], otherRecords[second + i]);
+            if (comparison != 0) return comparison;
+        }
+        return 0;
+    }
+
+    /**
+     * Quicksort of records with indices from low to high (inclusive), the smaller part is sorted recursively
+     */
+    private static void sort(long[] records, int width, int low, int high) {
+        long[] pivot = new long[width];
+        long[] swap = new long[width];
+        while (high - low > 0) {
+            System.arraycopy(records, (low + ((high - low) >>> 1)) * width, pivot, 0, width);
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(records, i * width, pivot, 0, width) < 0) i++;
+                while (compare(records, j * width, pivot, 0, width) > 0) j--;
+                if (i <= j) {
+                    System.arraycopy(records, i * width, swap, 0, width);
+                    System.arraycopy(records, j * width, records, i * width, width);
+                    System.arraycopy(swap, 0, records, j * width, width);
+                    i++;
+                    j--;
+                }
+            }
+            if (j - low < high - i) {
+                sort(records, width, low, j);
+                low = i;
+            } else {
+                sort(records, width, i, high);
+                high = j;
+            }
+        }
+    }
+}
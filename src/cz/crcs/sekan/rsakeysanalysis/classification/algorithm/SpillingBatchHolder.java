@@ -0,0 +1,285 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.KeyStubStore;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.property.PropertyExtractor;
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+import cz.crcs.sekan.rsakeysanalysis.common.KeyFingerprint;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Batches keys which do not fit into memory, the same batches as BatchHolder (keys sharing a property,
+ * transitively). Pairs of a fingerprint of a property and a key id are written to sorted runs in the temporary
+ * folder, keys with the same fingerprint are joined by union-find over a memory mapped file. Stubs of keys
+ * with their batches are written to other runs, batches are read back ordered by the smallest key id in the batch.
+ * The budget limits the sort buffers and the buffers of the run readers only, the union-find array (8 bytes
+ * per key) is accessed randomly and paged by the operating system, and the stubs of a single batch are held
+ * in memory to be passed to the classification together.
+ * As in BatchHolder, keys without a property are passed again after all batches.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class SpillingBatchHolder<Property> implements Closeable {
+    private static final int STUB_WIDTH = 2;
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private PropertyExtractor<Property> propertyExtractor;
+    private KeyStubStore stubCodes;
+    private MessageDigest digest;
+    private long memoryBudget;
+
+    private File folder;
+    private File stubsFile;
+    private DataOutputStream stubsOutput;
+    private File withoutPropertyFile;
+    private DataOutputStream withoutPropertyOutput;
+    private SortedRecordRuns propertyRuns;
+    private long keyCount;
+
+    private long[] propertyRecord = new long[3];
+
+    /**
+     * @param propertyExtractor properties of keys joining the keys to batches
+     * @param table table the masks of the stubs belong to
+     * @param tempFolder folder for temporary files, a new subfolder is created (and deleted by close)
+     * @param memoryBudget maximal size of sort buffers in bytes
+     * @throws IOException the temporary files cannot be created
+     */
+    public SpillingBatchHolder(PropertyExtractor<Property> propertyExtractor, ClassificationTable table,
+                               File tempFolder, long memoryBudget) throws IOException {
+        this.propertyExtractor = propertyExtractor;
+        this.memoryBudget = memoryBudget;
+        stubCodes = new KeyStubStore(table);
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        if (!tempFolder.exists() && !tempFolder.mkdirs()) {
+            throw new IOException("Could not create temporary directory " + tempFolder.getPath());
+        }
+        folder = new File(tempFolder, "temp_" + new Random().nextLong());
+        if (folder.exists() || !folder.mkdir()) {
+            throw new IOException("Could not create random temp directory " + folder.getPath());
+        }
+        stubsFile = new File(folder, "stubs");
+        stubsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(stubsFile), IO_BUFFER_SIZE));
+        withoutPropertyFile = new File(folder, "without_property");
+        withoutPropertyOutput = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(withoutPropertyFile), IO_BUFFER_SIZE));
+        propertyRuns = new SortedRecordRuns(folder, "properties", propertyRecord.length, memoryBudget);
+        keyCount = 0;
+    }
+
+    /**
+     * @param key key
+     * @param stub stub of the key
+     * @return the unique ID under which the key will be registered
+     * @throws IOException the key cannot be written to the temporary files
+     */
+    public long registerKey(ClassificationKey key, ClassificationKeyStub stub) throws IOException {
+        long keyId = keyCount++;
+        long maskAndCount = ((long) stubCodes.encodeMask(stub) << 32) | (stub.getDuplicityCount() & 0xffffffffL);
+        long realSource = stubCodes.encodeRealSource(stub.getRealSource());
+        stubsOutput.writeLong(maskAndCount);
+        stubsOutput.writeLong(realSource);
+
+        List<Property> properties = propertyExtractor.extractProperty(key);
+        if (properties == null || properties.isEmpty()) {
+            withoutPropertyOutput.writeLong(keyId);
+            withoutPropertyOutput.writeLong(maskAndCount);
+            withoutPropertyOutput.writeLong(realSource);
+            return keyId;
+        }
+        for (Property property : properties) {
+            fingerprint(property, propertyRecord);
+            propertyRecord[2] = keyId;
+            propertyRuns.add(propertyRecord);
+        }
+        return keyId;
+    }
+
+    public long getKeyCount() {
+        return keyCount;
+    }
+
+    public interface BatchConsumer {
+        /**
+         * @param batchId id of the batch (the smallest key id in the batch)
+         * @param stubs stubs of keys of the batch ordered by key ids
+         */
+        void accept(Long batchId, List<ClassificationKeyStub> stubs);
+    }
+
+    /**
+     * Pass all batches to the consumer, ordered by their ids, followed by batches of single keys without a property
+     * (the same batches as getBatchIdsForKeyWithProperty and getKeyIdsWithoutProperty of BatchHolder),
+     * no more keys can be registered
+     * @param consumer consumer of batches
+     * @throws IOException the temporary files cannot be read or written
+     */
+    public void forEachBatch(BatchConsumer consumer) throws IOException {
+        stubsOutput.close();
+        withoutPropertyOutput.close();
+        if (keyCount == 0) return;
+
+        MappedLongArray parents = joinKeysWithSameProperty();
+        try (SortedRecordRuns batchRuns = new SortedRecordRuns(folder, "batches", 2 + STUB_WIDTH, memoryBudget)) {
+            // batch id, key id and the stub of the key, the stubs are read sequentially in the order of key ids
+            long[] batchRecord = new long[2 + STUB_WIDTH];
+            try (DataInputStream stubs = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(stubsFile), IO_BUFFER_SIZE))) {
+                for (long keyId = 0; keyId < keyCount; keyId++) {
+                    batchRecord[0] = find(parents, keyId);
+                    batchRecord[1] = keyId;
+                    for (int i = 0; i < STUB_WIDTH; i++) batchRecord[2 + i] = stubs.readLong();
+                    batchRuns.add(batchRecord);
+                }
+            }
+
+            SortedRecordRuns.RecordIterator batches = batchRuns.sorted();
+            List<ClassificationKeyStub> batch = new ArrayList<>();
+            long batchId = -1;
+            while (batches.next(batchRecord)) {
+                if (batchRecord[0] != batchId && !batch.isEmpty()) {
+                    consumer.accept(batchId, batch);
+                    batch = new ArrayList<>();
+                }
+                batchId = batchRecord[0];
+                batch.add(getStub(batchRecord, 2));
+            }
+            if (!batch.isEmpty()) consumer.accept(batchId, batch);
+
+            long[] withoutPropertyRecord = new long[1 + STUB_WIDTH];
+            try (DataInputStream withoutProperty = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(withoutPropertyFile), IO_BUFFER_SIZE))) {
+                for (long i = withoutPropertyFile.length() / (Long.BYTES * withoutPropertyRecord.length); i > 0; i--) {
+                    for (int j = 0; j < withoutPropertyRecord.length; j++) {
+                        withoutPropertyRecord[j] = withoutProperty.readLong();
+                    }
+                    consumer.accept(withoutPropertyRecord[0],
+                            Collections.singletonList(getStub(withoutPropertyRecord, 1)));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param record record with an encoded stub
+     * @param offset index of the stub in the record
+     */
+    private ClassificationKeyStub getStub(long[] record, int offset) {
+        long stub = record[offset];
+        return stubCodes.decode((int) (stub >> 32), (int) stub, (int) record[offset + 1]);
+    }
+
+    /**
+     * @return parents of keys in the union-find forest, a root is the smallest key id of its tree
+     */
+    private MappedLongArray joinKeysWithSameProperty() throws IOException {
+        MappedLongArray parents = new MappedLongArray(new File(folder, "parents"), keyCount);
+        for (long keyId = 0; keyId < keyCount; keyId++) parents.set(keyId, keyId);
+
+        SortedRecordRuns.RecordIterator properties = propertyRuns.sorted();
+        long[] previous = new long[propertyRecord.length];
+        boolean hasPrevious = false;
+        while (properties.next(propertyRecord)) {
+            if (hasPrevious && previous[0] == propertyRecord[0] && previous[1] == propertyRecord[1]) {
+                union(parents, previous[2], propertyRecord[2]);
+            } else {
+                System.arraycopy(propertyRecord, 0, previous, 0, propertyRecord.length);
+                hasPrevious = true;
+            }
+        }
+        propertyRuns.close();
+        return parents;
+    }
+
+    /**
+     * Delete the temporary files
+     */
+    @Override
+    public void close() {
+        try {
+            stubsOutput.close();
+            withoutPropertyOutput.close();
+        } catch (IOException e) {
+            System.err.println("Warning: could not close the temporary files in " + folder.getPath());
+        }
+        propertyRuns.close();
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) System.err.println("Warning: could not delete the temporary file " + file.getPath());
+            }
+        }
+        if (!folder.delete()) {
+            System.err.println("Warning: could not delete the temporary directory " + folder.getPath());
+        }
+    }
+
+    private static long find(MappedLongArray parents, long keyId) {
+        long parent = parents.get(keyId);
+        while (parent != keyId) {
+            // path halving
+            long grandparent = parents.get(parent);
+            parents.set(keyId, grandparent);
+            keyId = grandparent;
+            parent = parents.get(keyId);
+        }
+        return keyId;
+    }
+
+    private static void union(MappedLongArray parents, long keyId, long otherKeyId) {
+        long root = find(parents, keyId);
+        long otherRoot = find(parents, otherKeyId);
+        if (root < otherRoot) {
+            parents.set(otherRoot, root);
+        } else if (otherRoot < root) {
+            parents.set(root, otherRoot);
+        }
+    }
+
+    /**
+     * 128 bits of SHA-256 of the property (or the property itself if it is a fingerprint),
+     * sets of sources are hashed in a sorted order
+     */
+    private void fingerprint(Property property, long[] record) {
+        if (property instanceof KeyFingerprint) {
+            record[0] = ((KeyFingerprint) property).getHigh();
+            record[1] = ((KeyFingerprint) property).getLow();
+            return;
+        }
+        digest.reset();
+        if (property instanceof BigInteger) {
+            digest.update((byte) 1);
+            digest.update(((BigInteger) property).toByteArray());
+        } else if (property instanceof Collection) {
+            digest.update((byte) 2);
+            List<String> elements = new ArrayList<>();
+            for (Object element : (Collection<?>) property) elements.add(String.valueOf(element));
+            Collections.sort(elements);
+            for (String element : elements) {
+                byte[] bytes = element.getBytes(StandardCharsets.UTF_8);
+                digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+                digest.update(bytes);
+            }
+        } else {
+            digest.update((byte) 3);
+            digest.update(String.valueOf(property).getBytes(StandardCharsets.UTF_8));
+        }
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+        record[0] = hash.getLong();
+        record[1] = hash.getLong();
+    }
+}
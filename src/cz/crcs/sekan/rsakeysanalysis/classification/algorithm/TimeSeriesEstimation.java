@@ -0,0 +1,394 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.ArrayMaskFrequencyCounter;
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.MaskFrequencyCounter;
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.PriorProbability;
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.PriorProbabilityEstimator;
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset.DataSetIterator;
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset.StubDataSetIterator;
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.exception.DataSetException;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+import cz.crcs.sekan.rsakeysanalysis.common.ExtendedWriter;
+import cz.crcs.sekan.rsakeysanalysis.common.FileIterator;
+import cz.crcs.sekan.rsakeysanalysis.common.JSONFieldScanner;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Prior probability estimated in sliding windows of time. Keys are read in one pass and their masks are counted
+ * in buckets of the step size, the counts of a window are the sums of its buckets. Timestamps of keys are taken
+ * from the names of the data set files (leading digits, e.g., 1474157398992.json-valid) or from a numeric attribute
+ * of keys. Windows are estimated in parallel, the results are saved to time_series.csv and time_series.json.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class TimeSeriesEstimation {
+
+    public static final String CSV_FILE_NAME = "time_series.csv";
+
+    public static final String JSON_FILE_NAME = "time_series.json";
+
+    private static final String SEPARATOR = ",";
+
+    /**
+     * Number of consecutive windows estimated by one estimator with the warm start, each window starts from
+     * the previous one; chains are estimated in parallel, so the results do not depend on the threads
+     */
+    private static final int WARM_START_CHAIN_LENGTH = 16;
+
+    private ClassificationConfiguration config;
+
+    private ClassificationTable table;
+
+    private long window;
+
+    private long step;
+
+    /**
+     * Mask counts of buckets, bucket index is floor(timestamp / step)
+     */
+    private TreeMap<Long, MaskFrequencyCounter> buckets = new TreeMap<>();
+
+    private long skippedKeys = 0;
+
+    /**
+     * Estimated window
+     */
+    public static class Window {
+        private final long start;
+        private final long end;
+        private final long keyCount;
+        private final PriorProbability priorProbability;
+
+        Window(long start, long end, long keyCount, PriorProbability priorProbability) {
+            this.start = start;
+            this.end = end;
+            this.keyCount = keyCount;
+            this.priorProbability = priorProbability;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getKeyCount() {
+            return keyCount;
+        }
+
+        public PriorProbability getPriorProbability() {
+            return priorProbability;
+        }
+    }
+
+    /**
+     * @param config configuration with the table, prior type, window and step
+     */
+    public TimeSeriesEstimation(ClassificationConfiguration config) {
+        if (config.windowSize == null || config.stepSize == null) {
+            throw new IllegalArgumentException("Window and step must be set for time series.");
+        }
+        if (config.windowSize % config.stepSize != 0) {
+            throw new IllegalArgumentException("Window must be a multiple of step.");
+        }
+        this.config = config;
+        this.table = config.classificationTable;
+        this.window = config.windowSize;
+        this.step = config.stepSize;
+    }
+
+    /**
+     * Estimate prior probability in windows of the data sets of the configuration and save the results
+     * @param config configuration
+     * @return estimated windows
+     * @throws DataSetException a data set cannot be read or the results cannot be written
+     */
+    public static List<Window> run(ClassificationConfiguration config) throws DataSetException {
+        long time = System.currentTimeMillis();
+        TimeSeriesEstimation estimation = new TimeSeriesEstimation(config);
+        for (String path : config.inputPaths) {
+            estimation.addPath(path);
+        }
+        if (config.makeOutputs) {
+            System.out.println(String.format("Counted masks in %d buckets in %d seconds", estimation.buckets.size(),
+                    (System.currentTimeMillis() - time) / 1000));
+        }
+        time = System.currentTimeMillis();
+        List<Window> windows = estimation.estimate();
+        if (config.makeOutputs) {
+            System.out.println(String.format("Estimated %d windows in %d seconds", windows.size(),
+                    (System.currentTimeMillis() - time) / 1000));
+        }
+        estimation.save(windows, new File(config.outputFolderPath));
+        return windows;
+    }
+
+    /**
+     * @param path data set, or folder with data sets
+     * @throws DataSetException a data set cannot be read
+     */
+    public void addPath(String path) throws DataSetException {
+        File file = new File(path);
+        if (!file.isDirectory()) {
+            addDataSet(file);
+            return;
+        }
+        File[] files = file.listFiles(File::isFile);
+        if (files == null) throw new DataSetException("Cannot list folder " + path);
+        Arrays.sort(files);
+        for (File dataSet : files) {
+            addDataSet(dataSet);
+        }
+    }
+
+    /**
+     * @param dataSet data set, keys have the timestamp of the name of the file if no timestamp attribute is set
+     * @throws DataSetException the data set cannot be read
+     */
+    public void addDataSet(File dataSet) throws DataSetException {
+        if (config.timestampAttribute != null) {
+            addDataSetWithAttribute(dataSet);
+            return;
+        }
+        Long timestamp = timestampFromName(dataSet.getName());
+        if (timestamp == null) {
+            System.err.println("Warning: name of data set " + dataSet + " does not start with a timestamp, skipped");
+            return;
+        }
+        DataSetIterator iterator = Classification.BuildHelper.openDataSet(config, dataSet.getPath(), config.threads, true);
+        try {
+            while (iterator.hasNext()) {
+                ClassificationKey key = iterator.next();
+                ClassificationKeyStub stub = computeStub(iterator, key);
+                if (stub != null) addMask(timestamp, stub);
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    private void addDataSetWithAttribute(File dataSet) throws DataSetException {
+        JSONFieldScanner scanner = new JSONFieldScanner(config.timestampAttribute);
+        FileIterator fileIterator = new FileIterator(dataSet.getPath());
+        fileIterator.rewind();
+        try {
+            while (fileIterator.hasNext()) {
+                CharSequence line = fileIterator.nextSlice();
+                if (line == null) continue;
+                Number timestamp;
+                ClassificationKey key;
+                try {
+                    scanner.scan(line);
+                    timestamp = scanner.has(0) ? scanner.getNumber(0) : null;
+                    key = ClassificationKey.fromJsonClassificationFields(line);
+                } catch (Exception e) {
+                    System.err.println("Warning: cannot parse dataset line: " + e.getMessage());
+                    continue;
+                }
+                if (timestamp == null) {
+                    skippedKeys++;
+                    continue;
+                }
+                ClassificationKeyStub stub = computeStub(null, key);
+                if (stub != null) addMask(timestamp.longValue(), stub);
+            }
+        } finally {
+            fileIterator.close();
+        }
+    }
+
+    private ClassificationKeyStub computeStub(DataSetIterator iterator, ClassificationKey key) {
+        try {
+            if (iterator instanceof StubDataSetIterator) {
+                return ((StubDataSetIterator) iterator).getStub();
+            }
+            return ClassificationKeyStub.fromClassificationKey(key, table);
+        } catch (Exception e) {
+            System.err.println("Warning: cannot compute key stub: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void addMask(long timestamp, ClassificationKeyStub stub) {
+        long bucket = Math.floorDiv(timestamp, step);
+        MaskFrequencyCounter counter = buckets.get(bucket);
+        if (counter == null) {
+            counter = new ArrayMaskFrequencyCounter(table);
+            buckets.put(bucket, counter);
+        }
+        counter.add(stub);
+    }
+
+    /**
+     * @param name name of a file
+     * @return number the name starts with, null if it does not start with a digit
+     */
+    static Long timestampFromName(String name) {
+        int end = 0;
+        while (end < name.length() && end < 18 && Character.isDigit(name.charAt(end))) end++;
+        return end == 0 ? null : Long.valueOf(name.substring(0, end));
+    }
+
+    /**
+     * @return windows with keys from the first bucket to the last one, moved by step, each window is estimated
+     * by its own estimator of the configured prior type (with the warm start, a chain of consecutive windows
+     * is estimated by one estimator), windows are estimated in parallel
+     */
+    public List<Window> estimate() throws DataSetException {
+        if (skippedKeys > 0) {
+            System.err.println("Warning: " + skippedKeys + " keys without attribute " + config.timestampAttribute + " skipped");
+        }
+        if (buckets.isEmpty()) return new ArrayList<>();
+
+        Map<Long, Map<String, Long>> bucketCounts = new TreeMap<>();
+        for (Map.Entry<Long, MaskFrequencyCounter> entry : buckets.entrySet()) {
+            Map<String, Long> counts = new HashMap<>();
+            entry.getValue().drain((mask, count) -> counts.merge(mask, count, Long::sum));
+            bucketCounts.put(entry.getKey(), counts);
+        }
+
+        long bucketsInWindow = window / step;
+        long firstBucket = buckets.firstKey();
+        long lastWindowBucket = Math.max(firstBucket, buckets.lastKey() - bucketsInWindow + 1);
+
+        int chainLength = config.warmStart ? WARM_START_CHAIN_LENGTH : 1;
+        ExecutorService executor = Executors.newFixedThreadPool(config.getParallelism());
+        List<Future<List<Window>>> futures = new ArrayList<>();
+        try {
+            List<Window> chain = new ArrayList<>(chainLength);
+            List<Map<String, BigDecimal>> chainFrequencies = new ArrayList<>(chainLength);
+            // counts of the current window, updated by adding the entering and subtracting the leaving bucket
+            Map<String, Long> windowCounts = new HashMap<>();
+            long windowKeys = 0;
+            for (long bucket = firstBucket; bucket < firstBucket + bucketsInWindow - 1; bucket++) {
+                windowKeys += addCounts(windowCounts, bucketCounts.get(bucket), 1);
+            }
+            for (long bucket = firstBucket; bucket <= lastWindowBucket; bucket++) {
+                windowKeys += addCounts(windowCounts, bucketCounts.get(bucket + bucketsInWindow - 1), 1);
+                if (bucket > firstBucket) {
+                    windowKeys -= addCounts(windowCounts, bucketCounts.get(bucket - 1), -1);
+                }
+                if (windowKeys == 0) continue;
+                Map<String, BigDecimal> maskToFrequency = new TreeMap<>();
+                for (Map.Entry<String, Long> entry : windowCounts.entrySet()) {
+                    if (entry.getValue() != 0) maskToFrequency.put(entry.getKey(), BigDecimal.valueOf(entry.getValue()));
+                }
+                long start = bucket * step;
+                chain.add(new Window(start, start + window, windowKeys, null));
+                chainFrequencies.add(maskToFrequency);
+                if (chain.size() == chainLength) {
+                    futures.add(executor.submit(estimateChain(chain, chainFrequencies)));
+                    chain = new ArrayList<>(chainLength);
+                    chainFrequencies = new ArrayList<>(chainLength);
+                }
+            }
+            if (!chain.isEmpty()) futures.add(executor.submit(estimateChain(chain, chainFrequencies)));
+
+            List<Window> windows = new ArrayList<>();
+            for (Future<List<Window>> future : futures) {
+                windows.addAll(future.get());
+            }
+            return windows;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new DataSetException("Cannot estimate prior probability of window: " + e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param chain consecutive windows without the prior probability
+     * @param chainFrequencies mask frequencies of the windows
+     * @return task estimating the windows in the order by one estimator
+     */
+    private Callable<List<Window>> estimateChain(List<Window> chain, List<Map<String, BigDecimal>> chainFrequencies) {
+        return () -> {
+            PriorProbabilityEstimator estimator = Classification.BuildHelper.createEstimator(config);
+            List<Window> windows = new ArrayList<>(chain.size());
+            for (int i = 0; i < chain.size(); i++) {
+                Window window = chain.get(i);
+                estimator.setMaskToFrequency(chainFrequencies.get(i));
+                windows.add(new Window(window.start, window.end, window.keyCount, estimator.computePriorProbability()));
+            }
+            return windows;
+        };
+    }
+
+    /**
+     * @return number of added keys
+     */
+    private static long addCounts(Map<String, Long> windowCounts, Map<String, Long> counts, long sign) {
+        if (counts == null) return 0;
+        long keys = 0;
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            windowCounts.merge(entry.getKey(), sign * entry.getValue(), Long::sum);
+            keys += entry.getValue();
+        }
+        return keys;
+    }
+
+    /**
+     * @param windows estimated windows
+     * @param folder folder for time_series.csv and time_series.json
+     * @throws DataSetException the results cannot be written
+     */
+    public void save(List<Window> windows, File folder) throws DataSetException {
+        List<String> groupNames = new ArrayList<>(table.getGroupsNames());
+        DecimalFormatSymbols decimalFormatter = new DecimalFormatSymbols();
+        decimalFormatter.setDecimalSeparator('.');
+        DecimalFormat formatter = new DecimalFormat("#0.00000000", decimalFormatter);
+
+        try (ExtendedWriter writer = new ExtendedWriter(new File(folder, CSV_FILE_NAME))) {
+            writer.writeln("window_start" + SEPARATOR + "window_end" + SEPARATOR + "key_count" + SEPARATOR
+                    + String.join(SEPARATOR, groupNames));
+            for (Window w : windows) {
+                StringBuilder line = new StringBuilder();
+                line.append(w.start).append(SEPARATOR).append(w.end).append(SEPARATOR).append(w.keyCount);
+                for (String groupName : groupNames) {
+                    BigDecimal probability = w.priorProbability.get(groupName);
+                    line.append(SEPARATOR).append(probability == null ? "-" : formatter.format(probability));
+                }
+                writer.writeln(line.toString());
+            }
+        } catch (IOException e) {
+            throw new DataSetException("Cannot write time series: " + e.getMessage(), e);
+        }
+
+        JSONObject object = new JSONObject();
+        object.put("window", window);
+        object.put("step", step);
+        JSONArray windowsArray = new JSONArray();
+        for (Window w : windows) {
+            JSONObject windowObject = new JSONObject();
+            windowObject.put("start", w.start);
+            windowObject.put("end", w.end);
+            windowObject.put("keys", w.keyCount);
+            windowObject.put("probability", w.priorProbability.toJSON());
+            windowsArray.add(windowObject);
+        }
+        object.put("windows", windowsArray);
+        try (ExtendedWriter writer = new ExtendedWriter(new File(folder, JSON_FILE_NAME))) {
+            writer.writeln(object.toJSONString());
+        } catch (IOException e) {
+            throw new DataSetException("Cannot write time series: " + e.getMessage(), e);
+        }
+    }
+}
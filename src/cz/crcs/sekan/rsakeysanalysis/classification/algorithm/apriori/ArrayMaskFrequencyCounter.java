@@ -0,0 +1,65 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Mask counter with an array indexed by mask ids and a map for other masks. Not thread safe,
+ * see ConcurrentMaskFrequencyCounter.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class ArrayMaskFrequencyCounter extends MaskFrequencyCounter {
+
+    private long[] maskIdCounts;
+
+    private Map<String, Long> otherMaskCounts;
+
+    private boolean empty = true;
+
+    /**
+     * @param table table assigning mask ids, may be null
+     */
+    public ArrayMaskFrequencyCounter(ClassificationTable table) {
+        super(table);
+        maskIdCounts = new long[getMaskCount()];
+        otherMaskCounts = new HashMap<>();
+    }
+
+    @Override
+    public void add(String mask, long count) {
+        otherMaskCounts.merge(mask, count, Long::sum);
+        empty = false;
+    }
+
+    @Override
+    protected void addMaskId(int maskId, long count) {
+        maskIdCounts[maskId] += count;
+        empty = false;
+    }
+
+    @Override
+    public void drain(BiConsumer<String, Long> consumer) {
+        if (empty) return;
+        for (int maskId = 0; maskId < maskIdCounts.length; maskId++) {
+            if (maskIdCounts[maskId] == 0) continue;
+            consumer.accept(table.getMask(maskId), maskIdCounts[maskId]);
+        }
+        for (Map.Entry<String, Long> entry : otherMaskCounts.entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue());
+        }
+        clear();
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(maskIdCounts, 0);
+        otherMaskCounts.clear();
+        empty = true;
+    }
+}
@@ -0,0 +1,57 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Mask counter which can be fed by multiple threads without locks, each mask has its own LongAdder
+ * (striped per thread under contention). Draining must not run concurrently with adding.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class ConcurrentMaskFrequencyCounter extends MaskFrequencyCounter {
+
+    private LongAdder[] maskIdCounts;
+
+    private ConcurrentHashMap<String, LongAdder> otherMaskCounts;
+
+    public ConcurrentMaskFrequencyCounter(ClassificationTable table) {
+        super(table);
+        maskIdCounts = new LongAdder[getMaskCount()];
+        for (int maskId = 0; maskId < maskIdCounts.length; maskId++) maskIdCounts[maskId] = new LongAdder();
+        otherMaskCounts = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void add(String mask, long count) {
+        otherMaskCounts.computeIfAbsent(mask, m -> new LongAdder()).add(count);
+    }
+
+    @Override
+    protected void addMaskId(int maskId, long count) {
+        maskIdCounts[maskId].add(count);
+    }
+
+    @Override
+    public void drain(BiConsumer<String, Long> consumer) {
+        for (int maskId = 0; maskId < maskIdCounts.length; maskId++) {
+            long count = maskIdCounts[maskId].sumThenReset();
+            if (count != 0) consumer.accept(table.getMask(maskId), count);
+        }
+        for (Map.Entry<String, LongAdder> entry : otherMaskCounts.entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue().sum());
+        }
+        otherMaskCounts.clear();
+    }
+
+    @Override
+    public void clear() {
+        for (LongAdder count : maskIdCounts) count.reset();
+        otherMaskCounts.clear();
+    }
+}
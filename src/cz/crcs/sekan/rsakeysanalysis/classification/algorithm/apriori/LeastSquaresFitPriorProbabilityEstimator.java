@@ -81,6 +81,7 @@ public class LeastSquaresFitPriorProbabilityEstimator extends PriorProbabilityEs
 
     @Override
     public PriorProbability computePriorProbability() {
+        flushMaskCounts();
         List<String> groupNames = new ArrayList<>(table.getGroupsNames());
         int groupCount = groupNames.size();
 
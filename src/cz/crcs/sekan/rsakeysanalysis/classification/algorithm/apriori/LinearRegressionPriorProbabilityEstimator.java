@@ -33,6 +33,7 @@ public class LinearRegressionPriorProbabilityEstimator extends PriorProbabilityE
 
     @Override
     public PriorProbability computePriorProbability() {
+        flushMaskCounts();
         OLSMultipleLinearRegression multipleLinearRegression = new OLSMultipleLinearRegression();
         multipleLinearRegression.setNoIntercept(true); // no intercept -- constant value
 
@@ -0,0 +1,83 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Counts of masks of keys. Masks of the table are counted by mask ids, masks the table does not know
+ * are counted by their strings. See ArrayMaskFrequencyCounter and ConcurrentMaskFrequencyCounter.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public abstract class MaskFrequencyCounter {
+    /**
+     * Table assigning mask ids, null if masks are counted only by their strings
+     */
+    protected final ClassificationTable table;
+
+    /**
+     * @param table table assigning mask ids, may be null
+     */
+    protected MaskFrequencyCounter(ClassificationTable table) {
+        this.table = table;
+    }
+
+    protected int getMaskCount() {
+        return table == null ? 0 : table.getMaskCount();
+    }
+
+    /**
+     * @param stub stub of the key, the mask id is used if it is the id of the mask in the table
+     * @return id of the mask in the table, -1 if the mask is counted by its string
+     */
+    protected int getMaskId(ClassificationKeyStub stub) {
+        int maskId = stub.getMaskId();
+        if (maskId >= 0 && maskId < getMaskCount() && table.getMask(maskId).equals(stub.getMask())) {
+            return maskId;
+        }
+        return -1;
+    }
+
+    public void add(ClassificationKeyStub stub) {
+        int maskId = getMaskId(stub);
+        if (maskId >= 0) {
+            addMaskId(maskId, 1);
+        } else {
+            add(stub.getMask(), 1);
+        }
+    }
+
+    public void add(String mask) {
+        add(mask, 1);
+    }
+
+    public abstract void add(String mask, long count);
+
+    protected abstract void addMaskId(int maskId, long count);
+
+    /**
+     * Adds the counts to the frequencies and resets the counter
+     * @param maskToFrequency frequencies of masks
+     */
+    public void drainTo(Map<String, BigDecimal> maskToFrequency) {
+        drain((mask, count) -> addFrequency(maskToFrequency, mask, count));
+    }
+
+    /**
+     * Passes non-zero counts of masks to the consumer and resets the counter
+     * @param consumer consumer of masks and their counts
+     */
+    public abstract void drain(BiConsumer<String, Long> consumer);
+
+    public abstract void clear();
+
+    protected static void addFrequency(Map<String, BigDecimal> maskToFrequency, String mask, long count) {
+        BigDecimal maskCount = maskToFrequency.getOrDefault(mask, BigDecimal.ZERO);
+        maskToFrequency.put(mask, maskCount.add(BigDecimal.valueOf(count)));
+    }
+}
@@ -0,0 +1,297 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.exception.DataSetException;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+import cz.crcs.sekan.rsakeysanalysis.common.ExtendedWriter;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Counts of masks of keys of one or more data sets, which can be merged and used for the estimation
+ * of the prior probability without the data sets (see Classification.reduceHistograms).
+ * The histogram is a JSON file with format, version, hash of the identification definitions of the table,
+ * number of keys and the counts: masks with codes are stored by their codes ("codes"), other masks as they are
+ * ("masks"). Counts can be also broken down by an attribute of keys ("breakdowns", attribute -> value -> counts).
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class MaskHistogram {
+
+    public static final String FORMAT = "rsa-mask-histogram";
+
+    public static final int VERSION = 1;
+
+    public static final String FILE_NAME = "mask_histogram.json";
+
+    /**
+     * Attributes of keys the counts can be broken down by
+     */
+    public enum Breakdown {
+        SOURCE("source");
+
+        private final String name;
+
+        Breakdown(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private String definitionHash;
+
+    private long keyCount;
+
+    private Map<String, Long> maskCounts;
+
+    private Map<String, Map<String, Map<String, Long>>> breakdowns;
+
+    /**
+     * Counters used while the keys are added, drained to the counts when the histogram is read
+     */
+    private ClassificationTable table;
+    private MaskFrequencyCounter counter;
+    private Breakdown breakdown;
+    private Map<String, MaskFrequencyCounter> breakdownCounters;
+
+    /**
+     * @param table table computing masks of keys
+     * @param breakdown attribute to break the counts down by, null for no breakdown
+     */
+    public MaskHistogram(ClassificationTable table, Breakdown breakdown) {
+        this.definitionHash = table.getIdentificationDefinitionHash();
+        this.table = table;
+        this.breakdown = breakdown;
+        maskCounts = new TreeMap<>();
+        breakdowns = new TreeMap<>();
+        counter = new ArrayMaskFrequencyCounter(table);
+        breakdownCounters = new TreeMap<>();
+    }
+
+    private MaskHistogram() {
+        maskCounts = new TreeMap<>();
+        breakdowns = new TreeMap<>();
+    }
+
+    /**
+     * @param key key, used for the breakdown
+     * @param stub stub of the key
+     */
+    public void add(ClassificationKey key, ClassificationKeyStub stub) {
+        keyCount++;
+        counter.add(stub);
+        if (breakdown == null) return;
+        String value = breakdownValue(key);
+        MaskFrequencyCounter valueCounter = breakdownCounters.get(value);
+        if (valueCounter == null) {
+            valueCounter = new ArrayMaskFrequencyCounter(table);
+            breakdownCounters.put(value, valueCounter);
+        }
+        valueCounter.add(stub);
+    }
+
+    private String breakdownValue(ClassificationKey key) {
+        switch (breakdown) {
+            case SOURCE:
+                return key.getSource() == null ? "" : String.join(",", new TreeSet<>(key.getSource()));
+            default:
+                throw new IllegalArgumentException("Unknown breakdown " + breakdown);
+        }
+    }
+
+    private void drainCounters() {
+        if (counter == null) return;
+        counter.drain((mask, count) -> maskCounts.merge(mask, count, Long::sum));
+        if (breakdown == null) return;
+        Map<String, Map<String, Long>> values = breakdowns.computeIfAbsent(breakdown.toString(), b -> new TreeMap<>());
+        for (Map.Entry<String, MaskFrequencyCounter> entry : breakdownCounters.entrySet()) {
+            Map<String, Long> counts = values.computeIfAbsent(entry.getKey(), v -> new TreeMap<>());
+            entry.getValue().drain((mask, count) -> counts.merge(mask, count, Long::sum));
+        }
+    }
+
+    public String getDefinitionHash() {
+        return definitionHash;
+    }
+
+    public long getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * @return counts of masks
+     */
+    public Map<String, Long> getMaskCounts() {
+        drainCounters();
+        return maskCounts;
+    }
+
+    /**
+     * @return counts of masks as frequencies for PriorProbabilityEstimator.setMaskToFrequency
+     */
+    public Map<String, BigDecimal> getMaskToFrequency() {
+        Map<String, BigDecimal> maskToFrequency = new TreeMap<>();
+        for (Map.Entry<String, Long> entry : getMaskCounts().entrySet()) {
+            maskToFrequency.put(entry.getKey(), BigDecimal.valueOf(entry.getValue()));
+        }
+        return maskToFrequency;
+    }
+
+    /**
+     * @return counts of masks broken down by attributes, attribute -> value -> mask -> count
+     */
+    public Map<String, Map<String, Map<String, Long>>> getBreakdowns() {
+        drainCounters();
+        return breakdowns;
+    }
+
+    /**
+     * Add counts of the other histogram to this histogram
+     * @param other histogram of the same table definitions
+     */
+    public void merge(MaskHistogram other) {
+        if (!definitionHash.equals(other.definitionHash)) {
+            throw new IllegalArgumentException("Cannot merge histograms of different tables ("
+                    + definitionHash + ", " + other.definitionHash + ")");
+        }
+        keyCount += other.keyCount;
+        mergeCounts(getMaskCounts(), other.getMaskCounts());
+        Map<String, Map<String, Map<String, Long>>> thisBreakdowns = getBreakdowns();
+        for (Map.Entry<String, Map<String, Map<String, Long>>> attribute : other.getBreakdowns().entrySet()) {
+            Map<String, Map<String, Long>> values = thisBreakdowns.computeIfAbsent(attribute.getKey(), a -> new TreeMap<>());
+            for (Map.Entry<String, Map<String, Long>> value : attribute.getValue().entrySet()) {
+                mergeCounts(values.computeIfAbsent(value.getKey(), v -> new TreeMap<>()), value.getValue());
+            }
+        }
+    }
+
+    private static void mergeCounts(Map<String, Long> counts, Map<String, Long> otherCounts) {
+        for (Map.Entry<String, Long> entry : otherCounts.entrySet()) {
+            counts.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+    }
+
+    /**
+     * @param table table with the same identification definitions, used to convert masks to codes
+     * @return the histogram as JSON
+     */
+    public JSONObject toJSON(ClassificationTable table) {
+        checkTable(table);
+        JSONObject object = new JSONObject();
+        object.put("format", FORMAT);
+        object.put("version", VERSION);
+        object.put("table", definitionHash);
+        object.put("keys", keyCount);
+        object.put("counts", countsToJSON(getMaskCounts(), table));
+        JSONObject breakdownsObject = new JSONObject();
+        for (Map.Entry<String, Map<String, Map<String, Long>>> attribute : getBreakdowns().entrySet()) {
+            JSONObject values = new JSONObject();
+            for (Map.Entry<String, Map<String, Long>> value : attribute.getValue().entrySet()) {
+                values.put(value.getKey(), countsToJSON(value.getValue(), table));
+            }
+            breakdownsObject.put(attribute.getKey(), values);
+        }
+        object.put("breakdowns", breakdownsObject);
+        return object;
+    }
+
+    private static JSONObject countsToJSON(Map<String, Long> counts, ClassificationTable table) {
+        JSONObject codes = new JSONObject();
+        JSONObject masks = new JSONObject();
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            long code = table.identificationToMaskCode(entry.getKey());
+            if (code >= 0) {
+                codes.put(Long.toString(code), entry.getValue());
+            } else {
+                masks.put(entry.getKey(), entry.getValue());
+            }
+        }
+        JSONObject object = new JSONObject();
+        object.put("codes", codes);
+        object.put("masks", masks);
+        return object;
+    }
+
+    private static Map<String, Long> countsFromJSON(JSONObject object, ClassificationTable table) {
+        Map<String, Long> counts = new TreeMap<>();
+        JSONObject codes = (JSONObject) object.get("codes");
+        for (Object code : codes.keySet()) {
+            String mask = table.maskCodeToIdentification(Long.parseLong((String) code));
+            counts.merge(mask, ((Number) codes.get(code)).longValue(), Long::sum);
+        }
+        JSONObject masks = (JSONObject) object.get("masks");
+        for (Object mask : masks.keySet()) {
+            counts.merge((String) mask, ((Number) masks.get(mask)).longValue(), Long::sum);
+        }
+        return counts;
+    }
+
+    private void checkTable(ClassificationTable table) {
+        if (!definitionHash.equals(table.getIdentificationDefinitionHash())) {
+            throw new IllegalArgumentException("Histogram was computed by a table with different identifications");
+        }
+    }
+
+    /**
+     * @param file file of the histogram
+     * @param table table with the same identification definitions, used to convert codes to masks
+     * @throws IOException the histogram cannot be written
+     */
+    public void save(File file, ClassificationTable table) throws IOException {
+        try (ExtendedWriter writer = new ExtendedWriter(file)) {
+            writer.writeln(toJSON(table).toJSONString());
+        }
+    }
+
+    /**
+     * @param file file of the histogram
+     * @param table table with the same identification definitions, used to convert codes to masks
+     * @return histogram
+     * @throws DataSetException the histogram cannot be read or it was computed by a different table
+     */
+    public static MaskHistogram load(File file, ClassificationTable table) throws DataSetException {
+        MaskHistogram histogram = new MaskHistogram();
+        try {
+            String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            JSONObject object = (JSONObject) new JSONParser().parse(json);
+            if (!FORMAT.equals(object.get("format"))) throw new DataSetException("Not a mask histogram: " + file);
+            if (((Number) object.get("version")).intValue() != VERSION) {
+                throw new DataSetException("Unsupported version of mask histogram: " + object.get("version"));
+            }
+            histogram.definitionHash = (String) object.get("table");
+            if (!histogram.definitionHash.equals(table.getIdentificationDefinitionHash())) {
+                throw new DataSetException("Mask histogram " + file + " was computed by a table with different identifications");
+            }
+            histogram.keyCount = ((Number) object.get("keys")).longValue();
+            histogram.maskCounts = countsFromJSON((JSONObject) object.get("counts"), table);
+            JSONObject breakdownsObject = (JSONObject) object.get("breakdowns");
+            for (Object attribute : breakdownsObject.keySet()) {
+                JSONObject values = (JSONObject) breakdownsObject.get(attribute);
+                Map<String, Map<String, Long>> valueCounts = new TreeMap<>();
+                for (Object value : values.keySet()) {
+                    valueCounts.put((String) value, countsFromJSON((JSONObject) values.get(value), table));
+                }
+                histogram.breakdowns.put((String) attribute, valueCounts);
+            }
+        } catch (IOException | ParseException | ClassCastException | NullPointerException | NumberFormatException e) {
+            throw new DataSetException("Cannot read mask histogram " + file + ": " + e.getMessage(), e);
+        }
+        return histogram;
+    }
+}
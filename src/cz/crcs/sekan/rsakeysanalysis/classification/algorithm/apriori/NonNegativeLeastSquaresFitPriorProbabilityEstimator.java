@@ -1,114 +1,55 @@
 package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori;
 
-import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationRow;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
-import cz.crcs.sekan.rsakeysanalysis.classification.tests.util.DistributionsComparator;
-import edu.rit.numeric.NonNegativeLeastSquares;
+import cz.crcs.sekan.rsakeysanalysis.classification.table.CompiledClassificationTable;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * @author xnemec1
  * @version 2/22/17.
  */
 public class NonNegativeLeastSquaresFitPriorProbabilityEstimator extends PriorProbabilityEstimator {
+    private boolean warmStart = false;
+
+    /**
+     * Groups with positive values in the last solution of this estimator, null before the first one
+     */
+    private int[] lastPositiveGroups;
+
     public NonNegativeLeastSquaresFitPriorProbabilityEstimator(ClassificationTable table) {
         super(table);
     }
 
+    /**
+     * @param warmStart start from the groups of the previous solution of this estimator
+     *                  (see NonNegativeLeastSquaresSolver)
+     */
+    public void setWarmStart(boolean warmStart) {
+        this.warmStart = warmStart;
+    }
+
     @Override
     public PriorProbability computePriorProbability() {
-        List<String> groupNames = new ArrayList<>(table.getGroupsNames());
-        int groupCount = groupNames.size();
-        List<String> allMaskValues = new ArrayList<>(table.getTable().keySet());
-        int maskCount = allMaskValues.size();
+        flushMaskCounts();
+        // the compiled table and the solver are shared by all copies of the table
+        CompiledClassificationTable compiledTable = table.getCompiledTable();
+        int maskCount = compiledTable.getMaskCount();
 
         double[] observedFrequencies = new double[maskCount];
-        double[][] libraryFrequencies = new double[maskCount][groupCount];
-        double sampleSize = 0d;
-
-        for (int i = 0; i < allMaskValues.size(); i++) {
-            BigDecimal maskFrequency = maskToFrequency.getOrDefault(allMaskValues.get(i), BigDecimal.ZERO);
+        for (int i = 0; i < maskCount; i++) {
+            BigDecimal maskFrequency = maskToFrequency.getOrDefault(compiledTable.getMask(i), BigDecimal.ZERO);
             observedFrequencies[i] = maskFrequency.doubleValue();
-            sampleSize += maskFrequency.doubleValue();
-        }
-        observedFrequencies = normalize(observedFrequencies);
-
-        for (int i = 0; i < allMaskValues.size(); i++) {
-            ClassificationRow row = table.getTable().get(allMaskValues.get(i));
-            // remember, NO row.normalize();
-
-            for (int j = 0; j < groupNames.size(); j++) {
-                BigDecimal maskGroupProbability = row.getValues().get(groupNames.get(j));
-                if (maskGroupProbability == null) {
-                    // impossible mask
-                    maskGroupProbability = BigDecimal.ZERO;
-                }
-                libraryFrequencies[i][j] = maskGroupProbability.doubleValue();
-            }
-        }
-
-        // normalize column-wise (group-wise)
-        for (int groupIndex = 0; groupIndex < groupCount; groupIndex++) {
-            double sum = 0d;
-            for (int i = 0; i < maskCount; i++) {
-                sum += libraryFrequencies[i][groupIndex];
-            }
-            for (int i = 0; i < maskCount; i++) {
-                libraryFrequencies[i][groupIndex] /= sum;
-            }
         }
 
-        NonNegativeLeastSquares nnls = new NonNegativeLeastSquares(maskCount, groupCount);
-
-        for (int groupIndex = 0; groupIndex < groupCount; groupIndex++) {
-            for (int i = 0; i < maskCount; i++) {
-                nnls.a[i][groupIndex] = libraryFrequencies[i][groupIndex];
-            }
-        }
-        System.arraycopy(observedFrequencies, 0, nnls.b, 0, maskCount);
+        NonNegativeLeastSquaresSolver.Solution solution = NonNegativeLeastSquaresSolver.forTable(compiledTable)
+                .solve(observedFrequencies, warmStart ? lastPositiveGroups : null);
+        lastPositiveGroups = solution.getPositiveGroups();
 
-        nnls.solve();
-
-        double[] parameters = new double[groupCount];
-        System.arraycopy(nnls.x, 0, parameters, 0, groupCount);
-
-        parameters = normalize(parameters);
-
-        PriorProbability priorProbability = new PriorProbability();
-        for (int i = 0; i < groupCount; i++) {
-            priorProbability.put(groupNames.get(i), BigDecimal.valueOf(parameters[i]));
-        }
-        priorProbability.setErrorMeasure(nnls.normsqr);
-
-        long[] simulatedFrequencies = new long[maskCount];
-        for (int i = 0; i < allMaskValues.size(); i++) {
-            double maskProbability = 0d;
-            for (int j = 0; j < groupNames.size(); j++) {
-                double groupProbability = parameters[j];
-                maskProbability += groupProbability * libraryFrequencies[i][j];
-            }
-            simulatedFrequencies[i] = new Double(maskProbability * sampleSize).longValue();
-        }
-
-        double pValue = DistributionsComparator.compareDistributions(observedFrequencies, simulatedFrequencies);
-        priorProbability.setDistributionFitPValue(pValue);
+        PriorProbability priorProbability = compiledTable.toPriorProbability(solution.getParameters());
+        priorProbability.setErrorMeasure(solution.getNormsqr());
+        priorProbability.setDistributionFitPValue(solution.getPValue());
 
         return priorProbability;
     }
-
-    private static double[] normalize(double[] array) {
-        double sum = 0d;
-        for (double a : array) {
-            sum += a;
-        }
-        if (sum == 0) return array;
-        double[] result = new double[array.length];
-        for (int i = 0; i < array.length; i++) {
-            result[i] = array[i] / sum;
-        }
-        return result;
-    }
 }
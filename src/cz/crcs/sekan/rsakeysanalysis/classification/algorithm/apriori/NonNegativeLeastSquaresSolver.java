@@ -0,0 +1,347 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.table.CompiledClassificationTable;
+import cz.crcs.sekan.rsakeysanalysis.classification.tests.util.DistributionsComparator;
+import edu.rit.numeric.NonNegativeLeastSquares;
+
+import java.util.*;
+
+/**
+ * Fit of observed mask frequencies by a non-negative combination of the columns (groups) of a compiled table.
+ * The column-normalized design matrix is computed once per compiled table and shared by all estimators of the table
+ * (see forTable), solutions are memoized by the observed frequencies and the start groups.
+ * With a warm start, active set iterations start from the given groups (e.g., the positive groups of a previous
+ * solution of the caller), a solution is accepted only if it satisfies the optimality conditions of NNLS,
+ * otherwise the problem is solved from scratch. The solution depends only on the arguments of solve.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class NonNegativeLeastSquaresSolver {
+
+    /**
+     * Number of memoized solutions
+     */
+    private static final int MEMO_SIZE = 1024;
+
+    /**
+     * Tolerance of the optimality conditions of a warm started solution
+     */
+    private static final double WARM_START_TOLERANCE = 1e-12;
+
+    /**
+     * Maximal number of least squares solved by a warm start before the problem is solved from scratch
+     */
+    private static final int WARM_START_ITERATIONS = 8;
+
+    private static final Map<CompiledClassificationTable, NonNegativeLeastSquaresSolver> solvers = new WeakHashMap<>();
+
+    private final int maskCount;
+
+    private final int groupCount;
+
+    /**
+     * matrix[maskId][groupId], columns sum to one, must not be modified
+     */
+    private final double[][] matrix;
+
+    private final Map<FrequencyKey, Solution> memo = new LinkedHashMap<FrequencyKey, Solution>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FrequencyKey, Solution> eldest) {
+            return size() > MEMO_SIZE;
+        }
+    };
+
+    private long solveCount;
+    private long memoHitCount;
+    private long warmStartCount;
+
+    /**
+     * Solution of the fit
+     */
+    public static class Solution {
+        private final double[] parameters;
+        private final double normsqr;
+        private final double pValue;
+        private final int[] positiveGroups;
+
+        Solution(double[] parameters, double normsqr, double pValue, int[] positiveGroups) {
+            this.parameters = parameters;
+            this.normsqr = normsqr;
+            this.pValue = pValue;
+            this.positiveGroups = positiveGroups;
+        }
+
+        /**
+         * @return normalized parameters indexed by group ids
+         */
+        public double[] getParameters() {
+            return parameters.clone();
+        }
+
+        /**
+         * @return squared norm of the residual
+         */
+        public double getNormsqr() {
+            return normsqr;
+        }
+
+        /**
+         * @return p-value of the comparison of the observed and fitted frequencies
+         */
+        public double getPValue() {
+            return pValue;
+        }
+
+        /**
+         * @return ids of groups with positive parameters, start groups of a warm start of a similar problem
+         */
+        public int[] getPositiveGroups() {
+            return positiveGroups.clone();
+        }
+    }
+
+    private static class FrequencyKey {
+        private final double[] frequencies;
+        private final int[] startGroups;
+        private final int hash;
+
+        FrequencyKey(double[] frequencies, int[] startGroups) {
+            this.frequencies = frequencies;
+            this.startGroups = startGroups;
+            this.hash = 31 * Arrays.hashCode(frequencies) + Arrays.hashCode(startGroups);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FrequencyKey)) return false;
+            FrequencyKey other = (FrequencyKey) o;
+            return Arrays.equals(frequencies, other.frequencies) && Arrays.equals(startGroups, other.startGroups);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private NonNegativeLeastSquaresSolver(CompiledClassificationTable compiledTable) {
+        maskCount = compiledTable.getMaskCount();
+        groupCount = compiledTable.getGroupCount();
+        // remember, NO row normalization, impossible masks have zero probability
+        matrix = compiledTable.getColumnNormalizedMatrix();
+    }
+
+    /**
+     * @param compiledTable compiled table which is not modified (see ClassificationTable.getCompiledTable)
+     * @return solver of the table, shared while the table is referenced
+     */
+    public static NonNegativeLeastSquaresSolver forTable(CompiledClassificationTable compiledTable) {
+        synchronized (solvers) {
+            return solvers.computeIfAbsent(compiledTable, NonNegativeLeastSquaresSolver::new);
+        }
+    }
+
+    /**
+     * @param frequencies observed counts of masks indexed by mask ids
+     * @param startGroups groups the active set iterations start from (see Solution.getPositiveGroups),
+     *                    null to solve the problem from scratch
+     * @return solution, the same for the same frequencies and start groups
+     */
+    public Solution solve(double[] frequencies, int[] startGroups) {
+        if (frequencies.length != maskCount) {
+            throw new IllegalArgumentException("Frequencies have " + frequencies.length + " masks, table has "
+                    + maskCount + " masks");
+        }
+        FrequencyKey key = new FrequencyKey(frequencies.clone(), startGroups == null ? null : startGroups.clone());
+        synchronized (memo) {
+            solveCount++;
+            Solution solution = memo.get(key);
+            if (solution != null) {
+                memoHitCount++;
+                return solution;
+            }
+        }
+
+        double sampleSize = 0d;
+        for (double frequency : frequencies) sampleSize += frequency;
+        double[] observedFrequencies = normalize(frequencies);
+
+        double[] x = null;
+        double normsqr = 0d;
+        if (startGroups != null) {
+            x = solveFromGroups(observedFrequencies, startGroups);
+            if (x != null) {
+                normsqr = residualNormsqr(observedFrequencies, x);
+                synchronized (memo) {
+                    warmStartCount++;
+                }
+            }
+        }
+        if (x == null) {
+            NonNegativeLeastSquares nnls = new NonNegativeLeastSquares(maskCount, groupCount);
+            for (int i = 0; i < maskCount; i++) {
+                System.arraycopy(matrix[i], 0, nnls.a[i], 0, groupCount);
+            }
+            System.arraycopy(observedFrequencies, 0, nnls.b, 0, maskCount);
+            nnls.solve();
+            x = new double[groupCount];
+            System.arraycopy(nnls.x, 0, x, 0, groupCount);
+            normsqr = nnls.normsqr;
+        }
+        double[] parameters = normalize(x);
+
+        long[] simulatedFrequencies = new long[maskCount];
+        for (int i = 0; i < maskCount; i++) {
+            double maskProbability = 0d;
+            for (int j = 0; j < groupCount; j++) {
+                maskProbability += parameters[j] * matrix[i][j];
+            }
+            simulatedFrequencies[i] = (long) (maskProbability * sampleSize);
+        }
+        double pValue = DistributionsComparator.compareDistributions(observedFrequencies, simulatedFrequencies);
+
+        Solution solution = new Solution(parameters, normsqr, pValue, positiveGroups(x));
+        synchronized (memo) {
+            memo.put(key, solution);
+        }
+        return solution;
+    }
+
+    /**
+     * Active set iterations starting from the given groups: groups with non-positive values are removed,
+     * the group with the largest positive gradient is added, until the optimality conditions hold
+     * @return the NNLS solution, or null if it was not found in a few iterations
+     */
+    private double[] solveFromGroups(double[] b, int[] startGroups) {
+        boolean[] positive = new boolean[groupCount];
+        for (int group : startGroups) positive[group] = true;
+        for (int iteration = 0; iteration < WARM_START_ITERATIONS; iteration++) {
+            double[] x = solveWithGroups(b, positive);
+            if (x == null) return null;
+            boolean removed = false;
+            for (int j = 0; j < groupCount; j++) {
+                if (positive[j] && x[j] <= 0d) {
+                    positive[j] = false;
+                    removed = true;
+                }
+            }
+            if (removed) continue;
+
+            // gradient of the other groups must not be positive
+            double[] residual = residual(b, x);
+            int maxGroup = -1;
+            double maxGradient = WARM_START_TOLERANCE;
+            for (int j = 0; j < groupCount; j++) {
+                if (positive[j]) continue;
+                double gradient = 0d;
+                for (int i = 0; i < maskCount; i++) gradient += matrix[i][j] * residual[i];
+                if (gradient > maxGradient) {
+                    maxGradient = gradient;
+                    maxGroup = j;
+                }
+            }
+            if (maxGroup < 0) return x;
+            positive[maxGroup] = true;
+        }
+        return null;
+    }
+
+    /**
+     * Least squares with only the given groups, by the normal equations
+     * @return values of groups, zero for the other groups, null if the groups are empty or linearly dependent
+     */
+    private double[] solveWithGroups(double[] b, boolean[] positive) {
+        int n = 0;
+        for (boolean p : positive) if (p) n++;
+        if (n == 0) return null;
+        int[] groups = new int[n];
+        n = 0;
+        for (int j = 0; j < groupCount; j++) if (positive[j]) groups[n++] = j;
+
+        double[][] gram = new double[n][n];
+        double[] rhs = new double[n];
+        for (int i = 0; i < maskCount; i++) {
+            double[] row = matrix[i];
+            for (int p = 0; p < n; p++) {
+                double value = row[groups[p]];
+                if (value == 0d) continue;
+                rhs[p] += value * b[i];
+                for (int q = 0; q <= p; q++) gram[p][q] += value * row[groups[q]];
+            }
+        }
+        // Cholesky decomposition, gram = L * L^T stored in the lower triangle
+        for (int p = 0; p < n; p++) {
+            for (int q = 0; q <= p; q++) {
+                double sum = gram[p][q];
+                for (int k = 0; k < q; k++) sum -= gram[p][k] * gram[q][k];
+                if (p == q) {
+                    if (sum <= 0d) return null;
+                    gram[p][p] = Math.sqrt(sum);
+                } else {
+                    gram[p][q] = sum / gram[q][q];
+                }
+            }
+        }
+        double[] y = new double[n];
+        for (int p = 0; p < n; p++) {
+            double sum = rhs[p];
+            for (int k = 0; k < p; k++) sum -= gram[p][k] * y[k];
+            y[p] = sum / gram[p][p];
+        }
+        double[] x = new double[groupCount];
+        for (int p = n - 1; p >= 0; p--) {
+            double sum = y[p];
+            for (int k = p + 1; k < n; k++) sum -= gram[k][p] * x[groups[k]];
+            x[groups[p]] = sum / gram[p][p];
+        }
+        return x;
+    }
+
+    private double[] residual(double[] b, double[] x) {
+        double[] residual = new double[maskCount];
+        for (int i = 0; i < maskCount; i++) {
+            double value = b[i];
+            for (int j = 0; j < groupCount; j++) value -= matrix[i][j] * x[j];
+            residual[i] = value;
+        }
+        return residual;
+    }
+
+    private double residualNormsqr(double[] b, double[] x) {
+        double sum = 0d;
+        for (double value : residual(b, x)) sum += value * value;
+        return sum;
+    }
+
+    private static int[] positiveGroups(double[] x) {
+        int count = 0;
+        for (double value : x) if (value > 0d) count++;
+        int[] groups = new int[count];
+        count = 0;
+        for (int j = 0; j < x.length; j++) if (x[j] > 0d) groups[count++] = j;
+        return groups;
+    }
+
+    /**
+     * @return number of solved problems, memoized solutions and solutions found by the warm start
+     */
+    public String getStatistics() {
+        synchronized (memo) {
+            return String.format("%d solves, %d memoized, %d warm started", solveCount, memoHitCount, warmStartCount);
+        }
+    }
+
+    private static double[] normalize(double[] array) {
+        double sum = 0d;
+        for (double a : array) {
+            sum += a;
+        }
+        if (sum == 0) return array;
+        double[] result = new double[array.length];
+        for (int i = 0; i < array.length; i++) {
+            result[i] = array[i] / sum;
+        }
+        return result;
+    }
+}
@@ -1,5 +1,6 @@
 package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori;
 
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -16,24 +17,57 @@ public abstract class PriorProbabilityEstimator {
 
     protected Map<String, BigDecimal> maskToFrequency;
 
+    /**
+     * Counts of masks not yet added to maskToFrequency
+     */
+    private MaskFrequencyCounter maskCounter;
+
     public PriorProbabilityEstimator(ClassificationTable table) {
         this.table = table.makeCopy();
         maskToFrequency = new TreeMap<>();
+        maskCounter = new ArrayMaskFrequencyCounter(this.table);
     }
 
     protected PriorProbabilityEstimator() {
         maskToFrequency = new TreeMap<>();
         table = null;
+        maskCounter = new ArrayMaskFrequencyCounter(null);
+    }
+
+    /**
+     * Count masks in a counter which can be fed by multiple threads, addMask may be then called concurrently
+     * (but not concurrently with computing the prior probability). Not used by the classification, which adds
+     * masks on the thread consuming the keys (parallel iterators compute only the stubs).
+     */
+    public void useConcurrentMaskCounter() {
+        if (maskCounter instanceof ConcurrentMaskFrequencyCounter) return;
+        maskCounter.drainTo(maskToFrequency);
+        maskCounter = new ConcurrentMaskFrequencyCounter(table);
     }
 
     public void addMask(String mask) {
-        BigDecimal maskCount = maskToFrequency.getOrDefault(mask, BigDecimal.ZERO);
-        maskToFrequency.put(mask, maskCount.add(BigDecimal.ONE));
+        maskCounter.add(mask);
+    }
+
+    /**
+     * Adds mask of the key, masks from the table are counted by their ids.
+     * @param stub stub of the key
+     */
+    public void addMask(ClassificationKeyStub stub) {
+        maskCounter.add(stub);
+    }
+
+    /**
+     * Adds counted masks to maskToFrequency, must be called before maskToFrequency is read.
+     */
+    protected void flushMaskCounts() {
+        maskCounter.drainTo(maskToFrequency);
     }
 
     public abstract PriorProbability computePriorProbability();
 
     public JSONObject summaryToJSON() {
+        flushMaskCounts();
         JSONObject object = new JSONObject();
         object.put("probability", computePriorProbability().toJSON());
         JSONObject maskFrequencies = new JSONObject();
@@ -56,6 +90,7 @@ public abstract class PriorProbabilityEstimator {
     }
 
     public void setMaskToFrequency(Map<String, BigDecimal> maskToFrequency) {
+        maskCounter.clear();
         this.maskToFrequency = maskToFrequency;
     }
 }
@@ -1,5 +1,6 @@
 package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori;
 
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
 
 import java.math.BigDecimal;
@@ -21,6 +22,11 @@ public class UniformPriorProbabilityEstimator extends PriorProbabilityEstimator
         // no need to compute anything
     }
 
+    @Override
+    public void addMask(ClassificationKeyStub stub) {
+        // no need to compute anything
+    }
+
     @Override
     public PriorProbability computePriorProbability() {
         Set<String> groupNames = table.getGroupsNames();
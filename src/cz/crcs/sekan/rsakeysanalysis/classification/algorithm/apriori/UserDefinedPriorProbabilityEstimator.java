@@ -1,5 +1,6 @@
 package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori;
 
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
 
 /**
@@ -24,6 +25,11 @@ public class UserDefinedPriorProbabilityEstimator extends PriorProbabilityEstima
         // no need to compute anything
     }
 
+    @Override
+    public void addMask(ClassificationKeyStub stub) {
+        // no need to compute anything
+    }
+
     @Override
     public PriorProbability computePriorProbability() {
         return priorProbability;
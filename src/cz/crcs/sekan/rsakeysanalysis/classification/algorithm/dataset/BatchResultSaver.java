@@ -0,0 +1,13 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationContainer;
+
+/**
+ * Receives results of classified batches.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public interface BatchResultSaver {
+    public void setBatchClassificationResult(Long batchId, ClassificationContainer classificationContainer);
+}
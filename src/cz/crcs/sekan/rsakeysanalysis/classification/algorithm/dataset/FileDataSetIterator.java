@@ -18,10 +18,22 @@ public class FileDataSetIterator implements DataSetIterator {
 
     private String datasetName;
 
+    private boolean classificationFieldsOnly;
+
     public FileDataSetIterator(String pathToDataset) throws DataSetException {
+        this(pathToDataset, false);
+    }
+
+    /**
+     * @param pathToDataset path to the data set
+     * @param classificationFieldsOnly if true, info and factors of keys are not parsed (keys cannot be exported)
+     * @throws DataSetException the data set cannot be opened
+     */
+    public FileDataSetIterator(String pathToDataset, boolean classificationFieldsOnly) throws DataSetException {
         this.fileIterator = new FileIterator(pathToDataset);
         this.fileIterator.rewind();
         this.datasetName = new File(pathToDataset).getName();
+        this.classificationFieldsOnly = classificationFieldsOnly;
     }
 
     @Override
@@ -31,18 +43,19 @@ public class FileDataSetIterator implements DataSetIterator {
 
     @Override
     public ClassificationKey next() {
-        String line = fileIterator.next();
+        CharSequence line = fileIterator.nextSlice();
 
         if (line == null) return null;
         if (line.length() > 16*1024*1024) {
-            System.err.println(String.format("WARNING: skipping a long line (%d characters): %s ...", line.length(), line.substring(0, 128)));
+            System.err.println(String.format("WARNING: skipping a long line (%d characters): %s ...", line.length(), line.subSequence(0, 128)));
             return next();
         }
 
         ClassificationKey nextKey;
 
         try {
-            nextKey = ClassificationKey.fromJson(line);
+            nextKey = classificationFieldsOnly ? ClassificationKey.fromJsonClassificationFields(line)
+                    : ClassificationKey.fromJson(line.toString());
         } catch (ParseException | WrongKeyException e) {
             System.err.println("Warning: cannot parse dataset line: " + e.getMessage());
             System.err.println(line);
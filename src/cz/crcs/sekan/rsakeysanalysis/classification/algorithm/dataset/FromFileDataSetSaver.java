@@ -3,13 +3,14 @@ package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.BatchHolder;
 import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
 import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.KeyStubStore;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationContainer;
 import cz.crcs.sekan.rsakeysanalysis.common.ExtendedWriter;
+import cz.crcs.sekan.rsakeysanalysis.common.KeyFingerprint;
 
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.math.BigInteger;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -24,7 +25,7 @@ public class FromFileDataSetSaver implements DataSetSaver {
     private DataSetIterator dataSetIterator;
 
     private Map<Long, ClassificationContainer> batchIdToContainer;
-    private Map<BigInteger, Long> keyModulusToKeyId;
+    private Map<KeyFingerprint, Long> keyModulusToKeyId;
     private DataSetFormatter dataSetFormatter;
     private ExtendedWriter resultWriter;
 
@@ -38,7 +39,7 @@ public class FromFileDataSetSaver implements DataSetSaver {
 
     @Override
     public void registerKeyUnderKeyId(ClassificationKey key, Long keyId) {
-        keyModulusToKeyId.put(key.getShortenedModulus(), keyId);
+        keyModulusToKeyId.put(key.getModulusFingerprint(), keyId);
     }
 
     @Override
@@ -47,14 +48,14 @@ public class FromFileDataSetSaver implements DataSetSaver {
     }
 
     @Override
-    public void reconstructDataSet(BatchHolder batchHolder, Map<Long, ClassificationKeyStub> keyIdToKeyStub) throws IOException {
+    public void reconstructDataSet(BatchHolder<?> batchHolder, KeyStubStore keyStubs) throws IOException {
         while (dataSetIterator.hasNext()) {
             ClassificationKey key = dataSetIterator.next();
-            Long keyId = keyModulusToKeyId.get(key.getShortenedModulus());
+            Long keyId = keyModulusToKeyId.get(key.getModulusFingerprint());
             Long batchId = batchHolder.getBatchIdForKeyId(keyId);
             if (batchId == null) continue; // key was not parsed previously, e.g. mask could not be extracted
             ClassificationContainer container = batchIdToContainer.get(batchId);
-            ClassificationKeyStub stub = keyIdToKeyStub.get(keyId);
+            ClassificationKeyStub stub = keyStubs.get(keyId);
             if (stub != null) key.setIdentification(stub.getMask());
             try {
                 resultWriter.writeln(dataSetFormatter.classifiedKeyToLine(key, container));
@@ -3,6 +3,7 @@ package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.BatchHolder;
 import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
 import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.KeyStubStore;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationContainer;
 import cz.crcs.sekan.rsakeysanalysis.common.ExtendedWriter;
 
@@ -39,11 +40,11 @@ public class InMemoryDataSetSaver implements DataSetSaver {
     }
 
     @Override
-    public void reconstructDataSet(BatchHolder batchHolder, Map<Long, ClassificationKeyStub> keyIdToKeyStub) throws IOException {
+    public void reconstructDataSet(BatchHolder<?> batchHolder, KeyStubStore keyStubs) throws IOException {
         for (Long keyId : keyIdToClassificationKey.keySet()) {
             ClassificationKey key = keyIdToClassificationKey.get(keyId);
             ClassificationContainer container = batchIdToClassificationContainer.get(batchHolder.getBatchIdForKeyId(keyId));
-            ClassificationKeyStub stub = keyIdToKeyStub.get(keyId);
+            ClassificationKeyStub stub = keyStubs.get(keyId);
             if (stub != null) key.setIdentification(stub.getMask());
             try {
                 resultWriter.writeln(dataSetFormatter.classifiedKeyToLine(key, container));
@@ -12,7 +12,7 @@ public class JsonDataSetFormatter implements DataSetFormatter {
     @Override
     public String classifiedKeyToLine(ClassificationKey key, ClassificationContainer container) {
         JSONObject jsonKey = key.toJSON();
-        if (container != null) jsonKey.put("classification", container.toJSON());
+        if (container != null) jsonKey.put("classification", container.toCachedJSON());
         return jsonKey.toString();
     }
 
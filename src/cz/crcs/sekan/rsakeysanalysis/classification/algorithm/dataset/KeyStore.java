@@ -0,0 +1,330 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.exception.DataSetException;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
+import cz.crcs.sekan.rsakeysanalysis.common.RSAKey;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Binary columnar storage of a data set, which can be classified without parsing JSON.
+ * The store is a directory with one file per column, all numbers are big-endian:
+ * <ul>
+ *     <li>header.json -- format, version, name of the original data set, number of keys, block size</li>
+ *     <li>moduli.bin -- for each key the length (int) and the big-endian magnitude of the modulus</li>
+ *     <li>moduli.idx -- offset (long) of every block of keys in moduli.bin, makes the store splittable</li>
+ *     <li>counts.bin -- duplicity count (int) of each key</li>
+ *     <li>sources.bin -- id (int) of the source set of each key, -1 for keys without source</li>
+ *     <li>sources.json -- array of the source sets, indexed by the ids</li>
+ *     <li>offsets.bin -- optional offset (long) of the line of the key in the original data set</li>
+ * </ul>
+ * Only the modulus, the duplicity count and the source of keys are stored, so the store can be classified only
+ * by tables whose transformations use the modulus alone (see STORED_PARTS), not e.g. the exponent or the primes.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class KeyStore {
+
+    public static final String FORMAT = "rsa-key-store";
+
+    public static final int VERSION = 1;
+
+    public static final int DEFAULT_BLOCK_SIZE = 65536;
+
+    public static final String HEADER_FILE = "header.json";
+    public static final String MODULI_FILE = "moduli.bin";
+    public static final String MODULI_INDEX_FILE = "moduli.idx";
+    public static final String COUNTS_FILE = "counts.bin";
+    public static final String SOURCES_FILE = "sources.bin";
+    public static final String SOURCE_SETS_FILE = "sources.json";
+    public static final String OFFSETS_FILE = "offsets.bin";
+
+    /**
+     * Parts of rsa keys which can be computed from the stored fields
+     */
+    public static final Set<RSAKey.PART> STORED_PARTS =
+            Collections.unmodifiableSet(EnumSet.of(RSAKey.PART.N, RSAKey.PART.NBLEN));
+
+    private static final int IO_BUFFER_SIZE = 1024 * 1024;
+
+    private File directory;
+
+    private String name;
+
+    private String originalPath;
+
+    private long keyCount;
+
+    private int blockSize;
+
+    private boolean hasOffsets;
+
+    private long[] blockOffsets;
+
+    private List<Set<String>> sourceSets;
+
+    private KeyStore() {
+    }
+
+    /**
+     * @param path path to check
+     * @return true if the path is a directory containing a key store header
+     */
+    public static boolean isKeyStore(File path) {
+        return path.isDirectory() && new File(path, HEADER_FILE).isFile();
+    }
+
+    /**
+     * @param directory directory of the key store
+     * @return opened key store
+     * @throws DataSetException the store cannot be read or it has unsupported format
+     */
+    public static KeyStore open(File directory) throws DataSetException {
+        KeyStore store = new KeyStore();
+        store.directory = directory;
+        try {
+            JSONParser parser = new JSONParser();
+            JSONObject header = (JSONObject) parser.parse(readString(new File(directory, HEADER_FILE)));
+            if (!FORMAT.equals(header.get("format"))) throw new DataSetException("Not a key store: " + directory);
+            if (((Number) header.get("version")).intValue() != VERSION) {
+                throw new DataSetException("Unsupported version of key store: " + header.get("version"));
+            }
+            store.name = (String) header.get("name");
+            store.originalPath = (String) header.get("original");
+            store.keyCount = ((Number) header.get("keys")).longValue();
+            store.blockSize = ((Number) header.get("block_size")).intValue();
+            store.hasOffsets = (Boolean) header.get("offsets");
+
+            store.sourceSets = new ArrayList<>();
+            JSONArray sourceSets = (JSONArray) parser.parse(readString(new File(directory, SOURCE_SETS_FILE)));
+            for (Object sourceSet : sourceSets) {
+                List<String> sources = new ArrayList<>();
+                for (Object source : (JSONArray) sourceSet) sources.add((String) source);
+                store.sourceSets.add(Collections.unmodifiableSet(new LinkedHashSet<>(sources)));
+            }
+
+            int blocks = (int) ((store.keyCount + store.blockSize - 1) / store.blockSize);
+            store.blockOffsets = new long[blocks];
+            try (DataInputStream index = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(new File(directory, MODULI_INDEX_FILE))))) {
+                for (int i = 0; i < blocks; i++) store.blockOffsets[i] = index.readLong();
+            }
+        } catch (IOException | ParseException | ClassCastException | NullPointerException e) {
+            throw new DataSetException("Cannot open key store " + directory + ": " + e.getMessage(), e);
+        }
+        return store;
+    }
+
+    /**
+     * @param directory directory of the new key store, is created if it does not exist
+     * @param name name of the original data set
+     * @param originalPath path to the original data set (used to read other fields of keys), can be null
+     * @param withOffsets whether offsets of the original lines are stored
+     * @return writer of the store, the store is finished by closing the writer
+     * @throws IOException the store cannot be created
+     */
+    public static Writer create(File directory, String name, String originalPath, boolean withOffsets) throws IOException {
+        return new Writer(directory, name, originalPath, withOffsets, DEFAULT_BLOCK_SIZE);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getKeyCount() {
+        return keyCount;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getBlockCount() {
+        return blockOffsets.length;
+    }
+
+    public boolean hasOffsets() {
+        return hasOffsets;
+    }
+
+    /**
+     * @return the original data set, if the store contains offsets of its lines and the file still exists, otherwise null
+     */
+    public File getOriginalDataSet() {
+        if (!hasOffsets || originalPath == null) return null;
+        File original = new File(originalPath);
+        return original.isFile() ? original : null;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    Set<String> getSourceSet(int id) {
+        return id < 0 ? null : new CopyOnWriteArraySet<>(sourceSets.get(id));
+    }
+
+    /**
+     * @param key index of the key
+     * @return offset of the modulus of the key in moduli.bin, if the key is the first one in a block
+     */
+    long getModulusOffset(long key) {
+        if (key % blockSize != 0) throw new IllegalArgumentException("Key " + key + " does not start a block");
+        int block = (int) (key / blockSize);
+        return block < blockOffsets.length ? blockOffsets[block] : 0;
+    }
+
+    /**
+     * @param file column file
+     * @param offset offset in the file
+     * @return buffered stream reading the file from the offset
+     * @throws IOException the file cannot be read
+     */
+    DataInputStream openColumn(String file, long offset) throws IOException {
+        FileChannel channel = FileChannel.open(new File(directory, file).toPath(), StandardOpenOption.READ);
+        channel.position(offset);
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), IO_BUFFER_SIZE));
+    }
+
+    private static String readString(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes keys to a new key store, the store can be opened after the writer is closed.
+     */
+    public static class Writer implements Closeable {
+        private File directory;
+        private String name;
+        private String originalPath;
+        private boolean withOffsets;
+        private int blockSize;
+
+        private DataOutputStream moduli;
+        private DataOutputStream moduliIndex;
+        private DataOutputStream counts;
+        private DataOutputStream sources;
+        private DataOutputStream offsets;
+
+        private Map<List<String>, Integer> sourceSetIds = new HashMap<>();
+        private List<List<String>> sourceSets = new ArrayList<>();
+        private long keyCount = 0;
+        private long moduliLength = 0;
+
+        private Writer(File directory, String name, String originalPath, boolean withOffsets, int blockSize) throws IOException {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create key store directory " + directory);
+            }
+            // stale header of a previous store would make an unfinished store look complete
+            Files.deleteIfExists(new File(directory, HEADER_FILE).toPath());
+            if (!withOffsets) Files.deleteIfExists(new File(directory, OFFSETS_FILE).toPath());
+            this.directory = directory;
+            this.name = name;
+            this.originalPath = originalPath;
+            this.withOffsets = withOffsets;
+            this.blockSize = blockSize;
+            this.moduli = openOutput(MODULI_FILE);
+            this.moduliIndex = openOutput(MODULI_INDEX_FILE);
+            this.counts = openOutput(COUNTS_FILE);
+            this.sources = openOutput(SOURCES_FILE);
+            if (withOffsets) this.offsets = openOutput(OFFSETS_FILE);
+        }
+
+        private DataOutputStream openOutput(String file) throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, file)), IO_BUFFER_SIZE));
+        }
+
+        /**
+         * @param key key to store, must have a modulus
+         * @param offset offset of the line of the key in the original data set, ignored if offsets are not stored
+         * @throws IOException the key cannot be written
+         */
+        public void write(ClassificationKey key, long offset) throws IOException {
+            BigInteger modulus = key.getRsaKey().getModulus();
+            if (modulus == null) throw new IllegalArgumentException("Key does not have a modulus");
+
+            if (keyCount % blockSize == 0) moduliIndex.writeLong(moduliLength);
+            byte[] magnitude = toMagnitude(modulus);
+            moduli.writeInt(magnitude.length);
+            moduli.write(magnitude);
+            moduliLength += 4 + magnitude.length;
+
+            counts.writeInt(key.getCount());
+            sources.writeInt(sourceSetId(key.getSource()));
+            if (withOffsets) offsets.writeLong(offset);
+            keyCount++;
+        }
+
+        private int sourceSetId(Set<String> source) {
+            if (source == null) return -1;
+            List<String> sourceSet = new ArrayList<>(source);
+            Integer id = sourceSetIds.get(sourceSet);
+            if (id == null) {
+                id = sourceSets.size();
+                sourceSetIds.put(sourceSet, id);
+                sourceSets.add(sourceSet);
+            }
+            return id;
+        }
+
+        public long getKeyCount() {
+            return keyCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            moduli.close();
+            moduliIndex.close();
+            counts.close();
+            sources.close();
+            if (withOffsets) offsets.close();
+
+            JSONArray sourceSetsJson = new JSONArray();
+            for (List<String> sourceSet : sourceSets) {
+                JSONArray sourceSetJson = new JSONArray();
+                sourceSetJson.addAll(sourceSet);
+                sourceSetsJson.add(sourceSetJson);
+            }
+            Files.write(new File(directory, SOURCE_SETS_FILE).toPath(),
+                    sourceSetsJson.toJSONString().getBytes(StandardCharsets.UTF_8));
+
+            // header is written last, incomplete stores are not recognized
+            JSONObject header = new JSONObject();
+            header.put("format", FORMAT);
+            header.put("version", VERSION);
+            header.put("name", name);
+            if (originalPath != null) header.put("original", originalPath);
+            header.put("keys", keyCount);
+            header.put("block_size", blockSize);
+            header.put("offsets", withOffsets);
+            Files.write(new File(directory, HEADER_FILE).toPath(), header.toJSONString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] toMagnitude(BigInteger modulus) {
+        byte[] bytes = modulus.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) return Arrays.copyOfRange(bytes, 1, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * @param magnitude big-endian magnitude
+     * @return non-negative number
+     */
+    static BigInteger fromMagnitude(byte[] magnitude) {
+        return new BigInteger(1, magnitude);
+    }
+}
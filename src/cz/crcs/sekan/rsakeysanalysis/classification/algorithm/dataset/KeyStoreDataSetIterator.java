@@ -0,0 +1,125 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.exception.DataSetException;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
+import cz.crcs.sekan.rsakeysanalysis.common.ByteSlice;
+import cz.crcs.sekan.rsakeysanalysis.common.MappedLineReader;
+import cz.crcs.sekan.rsakeysanalysis.common.RSAKey;
+import cz.crcs.sekan.rsakeysanalysis.common.exception.WrongKeyException;
+import org.json.simple.parser.ParseException;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads keys from a key store sequentially. A range of keys starting at a block boundary can be read,
+ * which allows reading parts of the store in parallel.
+ * If the original data set is available, keys can be read from it with all fields (for the export).
+ * @author agent
+ * @version 10/17/26.
+ */
+public class KeyStoreDataSetIterator implements DataSetIterator {
+
+    private KeyStore store;
+
+    private long nextKey;
+
+    private long toKey;
+
+    private DataInputStream moduli;
+
+    private DataInputStream counts;
+
+    private DataInputStream sources;
+
+    private DataInputStream offsets;
+
+    private MappedLineReader originalReader;
+
+    public KeyStoreDataSetIterator(KeyStore store) throws DataSetException {
+        this(store, 0, store.getKeyCount(), false);
+    }
+
+    /**
+     * @param store opened key store
+     * @param fromKey index of the first key, must be a multiple of the block size
+     * @param toKey index after the last key
+     * @param originalRecords if true and the original data set is available, keys are parsed from it with all fields
+     * @throws DataSetException the store cannot be read
+     */
+    public KeyStoreDataSetIterator(KeyStore store, long fromKey, long toKey, boolean originalRecords) throws DataSetException {
+        this.store = store;
+        this.nextKey = fromKey;
+        this.toKey = Math.min(toKey, store.getKeyCount());
+        try {
+            if (originalRecords && store.getOriginalDataSet() != null) {
+                this.originalReader = new MappedLineReader(store.getOriginalDataSet());
+                this.offsets = store.openColumn(KeyStore.OFFSETS_FILE, 8 * fromKey);
+            } else {
+                if (originalRecords) {
+                    System.err.println("Warning: original data set of key store " + store.getName()
+                            + " is not available, only moduli, counts and sources of keys are read");
+                }
+                this.moduli = store.openColumn(KeyStore.MODULI_FILE, store.getModulusOffset(fromKey));
+                this.counts = store.openColumn(KeyStore.COUNTS_FILE, 4 * fromKey);
+                this.sources = store.openColumn(KeyStore.SOURCES_FILE, 4 * fromKey);
+            }
+        } catch (IOException e) {
+            close();
+            throw new DataSetException(e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextKey < toKey;
+    }
+
+    @Override
+    public ClassificationKey next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        nextKey++;
+        try {
+            if (originalReader != null) return readOriginalKey();
+
+            byte[] magnitude = new byte[moduli.readInt()];
+            moduli.readFully(magnitude);
+            RSAKey rsaKey = new RSAKey(KeyStore.fromMagnitude(magnitude), null);
+            return new ClassificationKey(rsaKey, store.getSourceSet(sources.readInt()), counts.readInt(), null, null);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error while reading key store: " + e.getMessage(), e);
+        }
+    }
+
+    private ClassificationKey readOriginalKey() throws IOException {
+        originalReader.seek(offsets.readLong());
+        ByteSlice line = originalReader.readLine();
+        if (line == null) throw new IOException("Offset of key is out of the original data set");
+        try {
+            return ClassificationKey.fromJson(line.toString());
+        } catch (ParseException | WrongKeyException e) {
+            System.err.println("Warning: cannot parse dataset line: " + e.getMessage());
+            System.err.println(line);
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (moduli != null) moduli.close();
+            if (counts != null) counts.close();
+            if (sources != null) sources.close();
+            if (offsets != null) offsets.close();
+            if (originalReader != null) originalReader.close();
+        } catch (IOException e) {
+            System.err.println("Could not close key store reader " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String getDataSetName() {
+        return store.getName();
+    }
+}
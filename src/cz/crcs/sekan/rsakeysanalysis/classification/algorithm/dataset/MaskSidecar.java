@@ -0,0 +1,284 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.exception.DataSetException;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
+import cz.crcs.sekan.rsakeysanalysis.common.KeyFingerprint;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Masks of keys of a data set computed by a classification table, stored for later classifications with the same
+ * table (the same definition of identifications), which do not need to read the data set.
+ * The sidecar consists of two files:
+ * <ul>
+ *     <li>name.hash.masks -- fixed size records: flags (byte), mask id (int), duplicity count (int),
+ *     fingerprints (long) of the source set, the modulus, p and q; flags tell which fingerprints are present</li>
+ *     <li>name.hash.masks.json -- header with format, version, data set name, canonical path, length
+ *     and modification time of the data set file, number of keys and the masks (indexed by the mask ids),
+ *     written last</li>
+ * </ul>
+ * A sidecar is used only for the data set file it was computed from, a sidecar of a modified data set or of another
+ * data set with the same name is rewritten.
+ * Fingerprints are 64-bit prefixes of SHA-256 hashes, they are sufficient to batch keys by any property.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class MaskSidecar {
+
+    public static final String FORMAT = "rsa-mask-sidecar";
+
+    public static final int VERSION = 2;
+
+    public static final String RECORDS_SUFFIX = ".masks";
+
+    public static final String HEADER_SUFFIX = ".masks.json";
+
+    static final int HAS_SOURCE = 1;
+    static final int HAS_MODULUS = 2;
+    static final int HAS_P = 4;
+    static final int HAS_Q = 8;
+
+    private static final int IO_BUFFER_SIZE = 1024 * 1024;
+
+    private File records;
+
+    private String name;
+
+    private long keyCount;
+
+    private String[] masks;
+
+    private MaskSidecar() {
+    }
+
+    /**
+     * @param folder folder with sidecars
+     * @param datasetPath path to the data set
+     * @param definitionHash hash of the identification definitions of the table
+     * @return file with records of the sidecar of the data set
+     */
+    public static File getSidecarFile(String folder, String datasetPath, String definitionHash) {
+        return new File(folder, new File(datasetPath).getName() + "." + definitionHash + RECORDS_SUFFIX);
+    }
+
+    /**
+     * @param records file with records of the sidecar
+     * @param datasetPath path to the data set
+     * @return true if the sidecar was completely written from the current data set file
+     */
+    public static boolean exists(File records, String datasetPath) {
+        if (!records.isFile() || !headerFile(records).isFile()) return false;
+        try {
+            open(records, datasetPath);
+            return true;
+        } catch (DataSetException e) {
+            System.err.println("Warning: mask sidecar " + records + " will be rewritten: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static File headerFile(File records) {
+        String name = records.getName();
+        return new File(records.getParentFile(), name.substring(0, name.length() - RECORDS_SUFFIX.length()) + HEADER_SUFFIX);
+    }
+
+    /**
+     * @param records file with records of the sidecar
+     * @param datasetPath path to the data set
+     * @return opened sidecar
+     * @throws DataSetException the sidecar cannot be read or was not computed from the current data set file
+     */
+    public static MaskSidecar open(File records, String datasetPath) throws DataSetException {
+        MaskSidecar sidecar = new MaskSidecar();
+        sidecar.records = records;
+        try {
+            String headerString = new String(Files.readAllBytes(headerFile(records).toPath()), StandardCharsets.UTF_8);
+            JSONObject header = (JSONObject) new JSONParser().parse(headerString);
+            if (!FORMAT.equals(header.get("format"))) throw new DataSetException("Not a mask sidecar: " + records);
+            if (((Number) header.get("version")).intValue() != VERSION) {
+                throw new DataSetException("Unsupported version of mask sidecar: " + header.get("version"));
+            }
+            DataSetFile datasetFile = new DataSetFile(new File(datasetPath));
+            if (!datasetFile.path.equals(header.get("path"))) {
+                throw new DataSetException("mask sidecar was computed from another data set " + header.get("path"));
+            }
+            if (datasetFile.length != ((Number) header.get("length")).longValue()
+                    || datasetFile.modified != ((Number) header.get("modified")).longValue()) {
+                throw new DataSetException("data set " + datasetFile.path + " was modified");
+            }
+            sidecar.name = (String) header.get("name");
+            sidecar.keyCount = ((Number) header.get("keys")).longValue();
+            JSONArray masks = (JSONArray) header.get("masks");
+            sidecar.masks = new String[masks.size()];
+            for (int i = 0; i < masks.size(); i++) sidecar.masks[i] = (String) masks.get(i);
+        } catch (IOException | ParseException | ClassCastException | NullPointerException e) {
+            throw new DataSetException("Cannot open mask sidecar " + records + ": " + e.getMessage(), e);
+        }
+        return sidecar;
+    }
+
+    /**
+     * @param records file with records of the sidecar, an existing sidecar is replaced
+     * @param datasetPath path to the data set
+     * @param name name of the data set
+     * @return writer of the sidecar, the sidecar is finished by closing the writer
+     * @throws IOException the sidecar cannot be created
+     */
+    public static Writer create(File records, String datasetPath, String name) throws IOException {
+        return new Writer(records, new DataSetFile(new File(datasetPath)), name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getKeyCount() {
+        return keyCount;
+    }
+
+    int getMaskCount() {
+        return masks.length;
+    }
+
+    String getMask(int id) {
+        return masks[id];
+    }
+
+    DataInputStream openRecords() throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(records), IO_BUFFER_SIZE));
+    }
+
+    /**
+     * @param number number to fingerprint
+     * @return 64 bits of SHA-256 of the number
+     */
+    static long fingerprint(BigInteger number) {
+        return fingerprint(number.toByteArray());
+    }
+
+    /**
+     * @param sources set of sources
+     * @return 64 bits of SHA-256 of the sorted sources, independent of the order of the set
+     */
+    static long fingerprint(Set<String> sources) {
+        StringBuilder joined = new StringBuilder();
+        for (String source : new TreeSet<>(sources)) joined.append(source).append('\0');
+        return fingerprint(joined.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long fingerprint(byte[] bytes) {
+        // always SHA-256, the stored fingerprints must not depend on the hash function of key fingerprints
+        return KeyFingerprint.sha256(bytes).getHigh();
+    }
+
+    /**
+     * Identification of the data set file a sidecar is computed from
+     */
+    private static class DataSetFile {
+        private final String path;
+        private final long length;
+        private final long modified;
+
+        private DataSetFile(File file) throws IOException {
+            this.path = file.getCanonicalPath();
+            this.length = file.length();
+            this.modified = file.lastModified();
+        }
+    }
+
+    /**
+     * Writes masks of keys, the sidecar can be opened after the writer is closed.
+     */
+    public static class Writer implements Closeable {
+        private File records;
+        private DataSetFile datasetFile;
+        private String name;
+        private DataOutputStream output;
+        private Map<String, Integer> maskIds = new HashMap<>();
+        private List<String> masks = new ArrayList<>();
+        private long keyCount = 0;
+
+        private Writer(File records, DataSetFile datasetFile, String name) throws IOException {
+            File parent = records.getAbsoluteFile().getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create mask sidecar folder " + parent);
+            }
+            // header of a previous sidecar would make an unfinished sidecar look complete
+            Files.deleteIfExists(headerFile(records).toPath());
+            this.records = records;
+            this.datasetFile = datasetFile;
+            this.name = name;
+            this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(records), IO_BUFFER_SIZE));
+        }
+
+        /**
+         * @param key classified key
+         * @param stub stub of the key
+         * @throws IOException the record cannot be written
+         */
+        public void write(ClassificationKey key, ClassificationKeyStub stub) throws IOException {
+            Integer maskId = maskIds.get(stub.getMask());
+            if (maskId == null) {
+                maskId = masks.size();
+                maskIds.put(stub.getMask(), maskId);
+                masks.add(stub.getMask());
+            }
+
+            int flags = 0;
+            long source = 0, modulus = 0, p = 0, q = 0;
+            if (key.getSource() != null && !key.getSource().isEmpty()) {
+                flags |= HAS_SOURCE;
+                source = fingerprint(key.getSource());
+            }
+            if (key.getRsaKey().getModulus() != null) {
+                flags |= HAS_MODULUS;
+                modulus = fingerprint(key.getRsaKey().getModulus());
+            }
+            if (key.getRsaKey().getP() != null) {
+                flags |= HAS_P;
+                p = fingerprint(key.getRsaKey().getP());
+            }
+            if (key.getRsaKey().getQ() != null) {
+                flags |= HAS_Q;
+                q = fingerprint(key.getRsaKey().getQ());
+            }
+
+            output.writeByte(flags);
+            output.writeInt(maskId);
+            output.writeInt(stub.getDuplicityCount());
+            output.writeLong(source);
+            output.writeLong(modulus);
+            output.writeLong(p);
+            output.writeLong(q);
+            keyCount++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+            JSONObject header = new JSONObject();
+            header.put("format", FORMAT);
+            header.put("version", VERSION);
+            header.put("name", name);
+            // taken when the writer was created, a data set modified while it was read does not match the sidecar
+            header.put("path", datasetFile.path);
+            header.put("length", datasetFile.length);
+            header.put("modified", datasetFile.modified);
+            header.put("keys", keyCount);
+            JSONArray masksJson = new JSONArray();
+            masksJson.addAll(masks);
+            header.put("masks", masksJson);
+            Files.write(headerFile(records).toPath(), header.toJSONString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.exception.DataSetException;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+import cz.crcs.sekan.rsakeysanalysis.common.RSAKey;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Reads keys from a mask sidecar. The keys do not contain the original values, the source, the modulus and
+ * the primes are replaced by their fingerprints. Keys are equal in a property iff their fingerprints are equal,
+ * so they are batched the same way as the original keys, but they cannot be exported.
+ * @author agent
+ * @version 10/17/26.
+ */
+public class MaskSidecarDataSetIterator implements StubDataSetIterator {
+
+    private MaskSidecar sidecar;
+
+    private DataInputStream records;
+
+    private long nextKey;
+
+    private ClassificationKeyStub lastStub;
+
+    private String[] masks;
+
+    private int[] maskIds;
+
+    /**
+     * @param sidecar opened mask sidecar
+     * @param table table used to classify the keys, the same as used to compute the masks
+     * @throws DataSetException the sidecar cannot be read
+     */
+    public MaskSidecarDataSetIterator(MaskSidecar sidecar, ClassificationTable table) throws DataSetException {
+        this.sidecar = sidecar;
+        this.masks = new String[sidecar.getMaskCount()];
+        this.maskIds = new int[masks.length];
+        for (int i = 0; i < masks.length; i++) {
+            maskIds[i] = table.getMaskId(sidecar.getMask(i));
+            masks[i] = maskIds[i] >= 0 ? table.getMask(maskIds[i]) : sidecar.getMask(i);
+        }
+        this.nextKey = 0;
+        try {
+            this.records = sidecar.openRecords();
+        } catch (IOException e) {
+            throw new DataSetException(e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextKey < sidecar.getKeyCount();
+    }
+
+    @Override
+    public ClassificationKey next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        nextKey++;
+        try {
+            int flags = records.readByte();
+            int maskId = records.readInt();
+            int count = records.readInt();
+            long source = records.readLong();
+            long modulus = records.readLong();
+            long p = records.readLong();
+            long q = records.readLong();
+
+            RSAKey rsaKey = new RSAKey((flags & MaskSidecar.HAS_MODULUS) != 0 ? BigInteger.valueOf(modulus) : null, null);
+            if ((flags & MaskSidecar.HAS_P) != 0) rsaKey.setP(BigInteger.valueOf(p));
+            if ((flags & MaskSidecar.HAS_Q) != 0) rsaKey.setQ(BigInteger.valueOf(q));
+            Set<String> sourceSet = (flags & MaskSidecar.HAS_SOURCE) != 0
+                    ? new CopyOnWriteArraySet<>(Collections.singleton(Long.toHexString(source))) : null;
+
+            lastStub = ClassificationKeyStub.fromMask(masks[maskId], maskIds[maskId], count);
+            return new ClassificationKey(rsaKey, sourceSet, count, null, null);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error while reading mask sidecar: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public ClassificationKeyStub getStub() {
+        return lastStub;
+    }
+
+    @Override
+    public void close() {
+        try {
+            records.close();
+        } catch (IOException e) {
+            System.err.println("Could not close mask sidecar reader " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String getDataSetName() {
+        return sidecar.getName();
+    }
+}
@@ -0,0 +1,202 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.exception.DataSetException;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+import cz.crcs.sekan.rsakeysanalysis.common.ByteSlice;
+import cz.crcs.sekan.rsakeysanalysis.common.FileIterator;
+import cz.crcs.sekan.rsakeysanalysis.common.ParallelGzipInputStream;
+import cz.crcs.sekan.rsakeysanalysis.common.exception.WrongKeyException;
+import org.json.simple.parser.ParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Reads the data set split to newline aligned byte ranges (shards), which are parsed on multiple threads.
+ * Keys are returned in the same order as by FileDataSetIterator, together with their stubs.
+ * Compressed data sets cannot be split by bytes, their lines are read sequentially and parsed in parallel.
+ * @author agent
+ * @version 10/17/26.
+ */
+public class ParallelFileDataSetIterator extends ShardedDataSetIterator {
+
+    public static final int SHARD_SIZE = 8 * 1024 * 1024;
+
+    private static final int MAX_LINE_LENGTH = 16 * 1024 * 1024;
+
+    private static final int ALIGNMENT_BUFFER_SIZE = 64 * 1024;
+
+    private FileChannel channel;
+
+    private FileIterator compressedLines;
+
+    private long fileLength;
+
+    private long nextShardStart;
+
+    private String datasetName;
+
+    private boolean classificationFieldsOnly;
+
+    /**
+     * @param pathToDataset path to the data set
+     * @param table table used to compute the key stubs
+     * @param threads number of parsing threads
+     * @param classificationFieldsOnly if true, info and factors of keys are not parsed (keys cannot be exported)
+     * @throws DataSetException the data set cannot be opened
+     */
+    public ParallelFileDataSetIterator(String pathToDataset, ClassificationTable table, int threads,
+                                       boolean classificationFieldsOnly) throws DataSetException {
+        super(table, threads);
+        File file = new File(pathToDataset);
+        if (ParallelGzipInputStream.isGzipFile(file)) {
+            this.compressedLines = new FileIterator(file);
+        } else try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.fileLength = channel.size();
+        } catch (IOException e) {
+            throw new DataSetException(e);
+        }
+        this.classificationFieldsOnly = classificationFieldsOnly;
+        this.datasetName = file.getName();
+        this.nextShardStart = 0;
+        scheduleShards();
+    }
+
+    @Override
+    public String getDataSetName() {
+        return datasetName;
+    }
+
+    @Override
+    protected Callable<Shard> nextShard() {
+        if (compressedLines != null) {
+            if (!compressedLines.hasNext()) return null;
+            List<CharSequence> lines = new ArrayList<>();
+            long length = 0;
+            while (length < SHARD_SIZE && compressedLines.hasNext()) {
+                CharSequence line = compressedLines.nextSlice();
+                lines.add(line);
+                length += line.length() + 1;
+            }
+            return () -> parseLines(lines);
+        }
+        if (nextShardStart >= fileLength) return null;
+        long start = nextShardStart;
+        long shardEnd = Math.min(start + SHARD_SIZE, fileLength);
+        long end;
+        boolean truncated;
+        try {
+            // the last line of the shard is looked for only up to the maximal line length,
+            // a longer line is cut at the shard end and the rest of it is skipped
+            end = findLineEnd(shardEnd, Math.min(shardEnd + MAX_LINE_LENGTH, fileLength));
+            truncated = end < 0;
+            if (truncated) {
+                end = shardEnd;
+                nextShardStart = findLineEnd(shardEnd + MAX_LINE_LENGTH, fileLength);
+            } else {
+                nextShardStart = end;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Error while reading dataset file: " + e.getMessage(), e);
+        }
+        long lastShardEnd = end;
+        return () -> parseShard(start, lastShardEnd, truncated);
+    }
+
+    @Override
+    protected void closeDataSet() {
+        if (compressedLines != null) {
+            compressedLines.close();
+        } else try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Could not close dataset reader " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param position position in file
+     * @param limit position where the search stops
+     * @return position just after the first newline at or after the position and before the limit,
+     *         the end of the file if it is the limit, -1 if there is no newline before the limit
+     */
+    private long findLineEnd(long position, long limit) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGNMENT_BUFFER_SIZE);
+        while (position < limit) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), limit - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return limit == fileLength ? fileLength : -1;
+    }
+
+    /**
+     * @param truncated if true, the shard ends in a line longer than the maximal line length, which is skipped
+     */
+    private Shard parseShard(long start, long end, boolean truncated) throws IOException {
+        byte[] bytes = new byte[(int) (end - start)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) throw new IOException("Unexpected end of dataset file");
+        }
+
+        Shard shard = new Shard(table);
+        ByteBuffer shardBuffer = ByteBuffer.wrap(bytes);
+        int lineStart = 0;
+        while (lineStart < bytes.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') lineEnd++;
+            if (truncated && lineEnd == bytes.length) {
+                System.err.println(String.format("WARNING: skipping a line longer than %d characters at byte %d",
+                        MAX_LINE_LENGTH, start + lineStart));
+                break;
+            }
+            int nextLineStart = lineEnd + 1;
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') lineEnd--;
+            if (lineEnd > lineStart) {
+                parseLine(shard, new ByteSlice(shardBuffer, lineStart, lineEnd - lineStart));
+            }
+            lineStart = nextLineStart;
+        }
+        return shard;
+    }
+
+    private Shard parseLines(List<CharSequence> lines) {
+        Shard shard = new Shard(table);
+        for (CharSequence line : lines) {
+            parseLine(shard, line);
+        }
+        return shard;
+    }
+
+    private void parseLine(Shard shard, CharSequence line) {
+        if (line.length() > MAX_LINE_LENGTH) {
+            System.err.println(String.format("WARNING: skipping a long line (%d characters): %s ...", line.length(), line.subSequence(0, 128)));
+            return;
+        }
+
+        ClassificationKey key;
+        try {
+            key = classificationFieldsOnly ? ClassificationKey.fromJsonClassificationFields(line)
+                    : ClassificationKey.fromJson(line.toString());
+        } catch (ParseException | WrongKeyException e) {
+            System.err.println("Warning: cannot parse dataset line: " + e.getMessage());
+            System.err.println(line);
+            key = null;
+        }
+        shard.addKey(key);
+    }
+}
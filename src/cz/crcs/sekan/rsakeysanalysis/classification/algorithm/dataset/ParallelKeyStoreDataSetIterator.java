@@ -0,0 +1,68 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Reads blocks of a key store on multiple threads, keys are returned in the order of the store together with their stubs.
+ * @author agent
+ * @version 10/17/26.
+ */
+public class ParallelKeyStoreDataSetIterator extends ShardedDataSetIterator {
+
+    private KeyStore store;
+
+    private boolean originalRecords;
+
+    private int nextBlock;
+
+    /**
+     * @param store opened key store
+     * @param table table used to compute the key stubs
+     * @param threads number of reading threads
+     * @param originalRecords if true and the original data set is available, keys are parsed from it with all fields
+     */
+    public ParallelKeyStoreDataSetIterator(KeyStore store, ClassificationTable table, int threads, boolean originalRecords) {
+        super(table, threads);
+        this.store = store;
+        this.originalRecords = originalRecords && store.getOriginalDataSet() != null;
+        if (originalRecords && !this.originalRecords) {
+            System.err.println("Warning: original data set of key store " + store.getName()
+                    + " is not available, only moduli, counts and sources of keys are read");
+        }
+        this.nextBlock = 0;
+        scheduleShards();
+    }
+
+    @Override
+    protected Callable<Shard> nextShard() {
+        if (nextBlock >= store.getBlockCount()) return null;
+        long fromKey = (long) nextBlock * store.getBlockSize();
+        long toKey = fromKey + store.getBlockSize();
+        nextBlock++;
+        return () -> readBlock(fromKey, toKey);
+    }
+
+    private Shard readBlock(long fromKey, long toKey) throws Exception {
+        Shard shard = new Shard(table);
+        KeyStoreDataSetIterator iterator = new KeyStoreDataSetIterator(store, fromKey, toKey, originalRecords);
+        try {
+            while (iterator.hasNext()) {
+                shard.addKey(iterator.next());
+            }
+        } finally {
+            iterator.close();
+        }
+        return shard;
+    }
+
+    @Override
+    protected void closeDataSet() {
+    }
+
+    @Override
+    public String getDataSetName() {
+        return store.getName();
+    }
+}
@@ -0,0 +1,35 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationContainer;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects results of a part of the batches (e.g., classified in another thread),
+ * they are passed to the saver of the whole data set by mergeInto.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class PartialDataSetSaver implements BatchResultSaver {
+    private Map<Long, ClassificationContainer> batchIdToContainer;
+
+    public PartialDataSetSaver() {
+        batchIdToContainer = new TreeMap<>();
+    }
+
+    @Override
+    public void setBatchClassificationResult(Long batchId, ClassificationContainer classificationContainer) {
+        batchIdToContainer.put(batchId, classificationContainer);
+    }
+
+    /**
+     * @param saver saver of the whole data set, receives the results in the order of batch ids
+     */
+    public void mergeInto(BatchResultSaver saver) {
+        for (Map.Entry<Long, ClassificationContainer> entry : batchIdToContainer.entrySet()) {
+            saver.setBatchClassificationResult(entry.getKey(), entry.getValue());
+        }
+    }
+}
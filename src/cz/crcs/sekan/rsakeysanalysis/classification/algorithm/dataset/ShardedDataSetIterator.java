@@ -0,0 +1,146 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+/**
+ * Base of data set iterators which read the data set in shards on multiple threads.
+ * Shards are loaded ahead (at most two per thread) and their keys are returned in the order of the shards.
+ * @author agent
+ * @version 10/17/26.
+ */
+public abstract class ShardedDataSetIterator implements StubDataSetIterator {
+
+    /**
+     * Created by the first scheduleShards, after the subclass opened the data set
+     */
+    private ExecutorService executor;
+
+    private int threads;
+
+    private int maxPendingShards;
+
+    private Deque<Future<Shard>> pendingShards;
+
+    private Shard currentShard;
+
+    private int positionInShard;
+
+    protected ClassificationTable table;
+
+    protected ShardedDataSetIterator(ClassificationTable table, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Number of threads must be positive");
+        this.table = table;
+        this.threads = threads;
+        this.maxPendingShards = 2 * threads;
+        this.pendingShards = new ArrayDeque<>();
+        this.positionInShard = 0;
+        this.currentShard = null;
+    }
+
+    /**
+     * Prepare the task loading the next shard, called on the thread consuming the keys.
+     * @return the task or null, if there are no more shards
+     */
+    protected abstract Callable<Shard> nextShard();
+
+    /**
+     * Close the underlying data set.
+     */
+    protected abstract void closeDataSet();
+
+    /**
+     * Load shards ahead, has to be called at the end of the constructor of the subclass.
+     */
+    protected void scheduleShards() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "dataset-reader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        while (pendingShards.size() < maxPendingShards) {
+            Callable<Shard> task = nextShard();
+            if (task == null) break;
+            pendingShards.add(executor.submit(task));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (currentShard == null || positionInShard >= currentShard.keys.size()) {
+            currentShard = null;
+            positionInShard = 0;
+            if (pendingShards.isEmpty()) return false;
+            try {
+                currentShard = pendingShards.poll().get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("Error while reading dataset: " + e.getMessage(), e);
+            }
+            scheduleShards();
+        }
+        return true;
+    }
+
+    @Override
+    public ClassificationKey next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return currentShard.keys.get(positionInShard++);
+    }
+
+    @Override
+    public ClassificationKeyStub getStub() {
+        int last = positionInShard - 1;
+        RuntimeException exception = currentShard.stubExceptions.get(last);
+        if (exception != null) throw exception;
+        return currentShard.stubs.get(last);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) executor.shutdownNow();
+        pendingShards.clear();
+        currentShard = null;
+        closeDataSet();
+    }
+
+    /**
+     * Keys of one shard with their stubs, computed on the loading thread.
+     */
+    protected static class Shard {
+        private ClassificationTable table;
+        private List<ClassificationKey> keys = new ArrayList<>();
+        private List<ClassificationKeyStub> stubs = new ArrayList<>();
+        private List<RuntimeException> stubExceptions = new ArrayList<>();
+
+        protected Shard(ClassificationTable table) {
+            this.table = table;
+        }
+
+        /**
+         * Add key and compute its stub.
+         * @param key key, can be null if it was not parsed (the stub computation fails)
+         */
+        protected void addKey(ClassificationKey key) {
+            ClassificationKeyStub stub = null;
+            RuntimeException stubException = null;
+            try {
+                stub = ClassificationKeyStub.fromClassificationKey(key, table);
+            } catch (RuntimeException e) {
+                stubException = e;
+            }
+            keys.add(key);
+            stubs.add(stub);
+            stubExceptions.add(stubException);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
+
+/**
+ * Data set iterator which computes the key stubs by itself (e.g., in parallel while reading the keys).
+ * @author agent
+ * @version 10/17/26.
+ */
+public interface StubDataSetIterator extends DataSetIterator {
+    /**
+     * @return stub of the key returned by the last call of next()
+     * @throws RuntimeException the exception thrown while computing the stub of the key
+     */
+    public ClassificationKeyStub getStub();
+}
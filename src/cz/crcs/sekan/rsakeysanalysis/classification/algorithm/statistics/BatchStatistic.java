@@ -61,6 +61,14 @@ public class BatchStatistic {
     }
 
     public void addBatchStatistics(ClassificationContainer container) {
+        addBatchStatistics(container, 1L);
+    }
+
+    /**
+     * @param container classification of batches
+     * @param multiplicity number of batches with the classification
+     */
+    public void addBatchStatistics(ClassificationContainer container, long multiplicity) {
         if (!batchSize.isPoint()) {
             throw new UnsupportedOperationException("Cannot add batch of specific size to a ranged BatchStatistic");
         }
@@ -72,12 +80,33 @@ public class BatchStatistic {
         }
 
         if (ClassificationType.POSITIVE.equals(classificationType)) {
-            commonClassification = commonClassification.sumRowsNoNormalize(container.getRow());
-        } else {
+            ClassificationRow row = container.getRow();
+            if (multiplicity != 1L) row = row.multipleByConstant(multiplicity);
+            commonClassification = commonClassification.sumRowsNoNormalize(row);
+        } else if (multiplicity == 1L) {
             commonClassification = commonClassification.sumRowsNegativeResults(container.getRow(), sourceNames);
+        } else {
+            commonClassification = commonClassification.sumRowsNoNormalize(
+                    container.getRow().switchToNegative(sourceNames).multipleByConstant(multiplicity));
         }
 
-        keyCount += batchSize.getLow();
+        keyCount += batchSize.getLow() * multiplicity;
+    }
+
+    /**
+     * Add statistics of the other batches of the same size and type, the result is the same as if they were added
+     * by addBatchStatistics
+     * @param other statistics of other batches
+     */
+    public void merge(BatchStatistic other) {
+        if (!batchSize.isPoint() || !batchSize.getLow().equals(other.batchSize.getLow()) || !other.batchSize.isPoint()) {
+            throw new IllegalArgumentException("Only statistics of batches of the same size can be merged");
+        }
+        if (!classificationType.equals(other.classificationType) || !duplicityType.equals(other.duplicityType)) {
+            throw new IllegalArgumentException("Cannot merge statistics of different ClassificationType or DuplicityType");
+        }
+        commonClassification = commonClassification.sumRowsNoNormalize(other.commonClassification);
+        keyCount += other.keyCount;
     }
 
     public static BatchStatistic combineBatches(List<BatchStatistic> statistics, List<String> sourceNames) {
@@ -48,31 +48,64 @@ public class BatchesStatisticsAggregator implements StatisticsAggregator {
 
     @Override
     public void addStatistics(ClassificationContainer container, ClassificationKeyStub... keyStubs) {
+        addStatistics(container, 1L, keyStubs);
+    }
+
+    @Override
+    public void addStatistics(ClassificationContainer container, long multiplicity, ClassificationKeyStub... keyStubs) {
         long batchSize = container.getNumOfUniqueKeys();
 
         BatchStatistic modified = positiveUniqueBatches.getOrDefault(batchSize, new BatchStatistic(batchSize,
                 BatchStatistic.ClassificationType.POSITIVE, BatchStatistic.DuplicityType.UNIQUE, groupNames));
-        modified.addBatchStatistics(container);
+        modified.addBatchStatistics(container, multiplicity);
         positiveUniqueBatches.put(batchSize, modified);
 
         modified = negativeUniqueBatches.getOrDefault(batchSize, new BatchStatistic(batchSize,
                 BatchStatistic.ClassificationType.NEGATIVE, BatchStatistic.DuplicityType.UNIQUE, groupNames));
-        modified.addBatchStatistics(container);
+        modified.addBatchStatistics(container, multiplicity);
         negativeUniqueBatches.put(batchSize, modified);
 
         batchSize = container.getNumOfAllKeys();
 
         modified = positiveDuplicateBatches.getOrDefault(batchSize, new BatchStatistic(batchSize,
                 BatchStatistic.ClassificationType.POSITIVE, BatchStatistic.DuplicityType.DUPLICATE, groupNames));
-        modified.addBatchStatistics(container);
+        modified.addBatchStatistics(container, multiplicity);
         positiveDuplicateBatches.put(batchSize, modified);
 
         modified = negativeDuplicateBatches.getOrDefault(batchSize, new BatchStatistic(batchSize,
                 BatchStatistic.ClassificationType.NEGATIVE, BatchStatistic.DuplicityType.DUPLICATE, groupNames));
-        modified.addBatchStatistics(container);
+        modified.addBatchStatistics(container, multiplicity);
         negativeDuplicateBatches.put(batchSize, modified);
     }
 
+    @Override
+    public StatisticsAggregator emptyCopy() {
+        return new BatchesStatisticsAggregator(groupNames, pathToFolderWithResults);
+    }
+
+    @Override
+    public void merge(StatisticsAggregator other) {
+        if (!(other instanceof BatchesStatisticsAggregator)) {
+            throw new IllegalArgumentException("Cannot merge statistics of " + other.getClass().getSimpleName());
+        }
+        BatchesStatisticsAggregator otherAggregator = (BatchesStatisticsAggregator) other;
+        merge(positiveUniqueBatches, otherAggregator.positiveUniqueBatches);
+        merge(negativeUniqueBatches, otherAggregator.negativeUniqueBatches);
+        merge(positiveDuplicateBatches, otherAggregator.positiveDuplicateBatches);
+        merge(negativeDuplicateBatches, otherAggregator.negativeDuplicateBatches);
+    }
+
+    private static void merge(Map<Long, BatchStatistic> batches, Map<Long, BatchStatistic> otherBatches) {
+        for (Map.Entry<Long, BatchStatistic> entry : otherBatches.entrySet()) {
+            BatchStatistic statistic = batches.get(entry.getKey());
+            if (statistic == null) {
+                batches.put(entry.getKey(), entry.getValue());
+            } else {
+                statistic.merge(entry.getValue());
+            }
+        }
+    }
+
     @Override
     public void saveStatistics() {
         List<Map<Long, BatchStatistic>> allBatchMaps = new ArrayList<>(4);
@@ -81,8 +81,13 @@ public class HistoricalBatchesStatisticsAggregator implements StatisticsAggregat
 
     @Override
     public void addStatistics(ClassificationContainer container, ClassificationKeyStub... keyStubs) {
-        long allKeys = container.getNumOfAllKeys();
-        long uniqueKeys = container.getNumOfUniqueKeys();
+        addStatistics(container, 1L, keyStubs);
+    }
+
+    @Override
+    public void addStatistics(ClassificationContainer container, long multiplicity, ClassificationKeyStub... keyStubs) {
+        long allKeys = container.getNumOfAllKeys() * multiplicity;
+        long uniqueKeys = container.getNumOfUniqueKeys() * multiplicity;
 
         for (Pair<Long, Long> minMaxKey : minMaxKeys) {
             Long minKey = minMaxKey.getKey(), maxKey = minMaxKey.getValue();
@@ -92,8 +97,8 @@ public class HistoricalBatchesStatisticsAggregator implements StatisticsAggregat
                 if (container.getNumOfUniqueKeys() >= maxKey) continue;
             }
 
-            groupsCount.put(minKey, groupsCount.get(minKey) + container.getNumOfAllKeys());
-            groupsCountUnique.put(minKey, groupsCountUnique.get(minKey) + container.getNumOfUniqueKeys());
+            groupsCount.put(minKey, groupsCount.get(minKey) + allKeys);
+            groupsCountUnique.put(minKey, groupsCountUnique.get(minKey) + uniqueKeys);
 
             Map<String, BigDecimal> groupsPositiveCount = groupsPositiveCountAll.get(minKey);
             Map<String, BigDecimal> groupsPositiveCountUnique = groupsPositiveCountUniqueAll.get(minKey);
@@ -113,6 +118,34 @@ public class HistoricalBatchesStatisticsAggregator implements StatisticsAggregat
         }
     }
 
+    @Override
+    public StatisticsAggregator emptyCopy() {
+        return new HistoricalBatchesStatisticsAggregator(groupNames, pathToFolderWithResults);
+    }
+
+    @Override
+    public void merge(StatisticsAggregator other) {
+        if (!(other instanceof HistoricalBatchesStatisticsAggregator)) {
+            throw new IllegalArgumentException("Cannot merge statistics of " + other.getClass().getSimpleName());
+        }
+        HistoricalBatchesStatisticsAggregator otherAggregator = (HistoricalBatchesStatisticsAggregator) other;
+        for (Pair<Long, Long> minMaxKey : minMaxKeys) {
+            Long minKey = minMaxKey.getKey();
+            groupsCount.merge(minKey, otherAggregator.groupsCount.get(minKey), Long::sum);
+            groupsCountUnique.merge(minKey, otherAggregator.groupsCountUnique.get(minKey), Long::sum);
+            for (String groupName : groupNames) {
+                groupsPositiveCountAll.get(minKey).merge(groupName,
+                        otherAggregator.groupsPositiveCountAll.get(minKey).get(groupName), BigDecimal::add);
+                groupsPositiveCountUniqueAll.get(minKey).merge(groupName,
+                        otherAggregator.groupsPositiveCountUniqueAll.get(minKey).get(groupName), BigDecimal::add);
+                groupsNegativeCountAll.get(minKey).merge(groupName,
+                        otherAggregator.groupsNegativeCountAll.get(minKey).get(groupName), Long::sum);
+                groupsNegativeCountUniqueAll.get(minKey).merge(groupName,
+                        otherAggregator.groupsNegativeCountUniqueAll.get(minKey).get(groupName), Long::sum);
+            }
+        }
+    }
+
     @Override
     public void savePriorProbabilitySummary(PriorProbabilityEstimator estimator) {
         ExtendedWriter writer = null;
@@ -11,6 +11,26 @@ import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationContaine
 public interface StatisticsAggregator {
     public void addStatistics(ClassificationContainer container, ClassificationKeyStub... keyStubs);
 
+    /**
+     * The same as calling addStatistics multiplicity times, for batches with the same classification
+     * @param container classification of each of the batches
+     * @param multiplicity number of batches
+     * @param keyStubs keys of one of the batches
+     */
+    public void addStatistics(ClassificationContainer container, long multiplicity, ClassificationKeyStub... keyStubs);
+
+    /**
+     * @return aggregator of the same kind without any statistics, for aggregating a part of the batches
+     * (e.g., in another thread), its statistics are added by merge
+     */
+    public StatisticsAggregator emptyCopy();
+
+    /**
+     * Add statistics of the other aggregator, the result is the same as if its batches were added to this one
+     * @param other aggregator created by emptyCopy
+     */
+    public void merge(StatisticsAggregator other);
+
     public void saveStatistics();
 
     public void savePriorProbabilitySummary(PriorProbabilityEstimator estimator);
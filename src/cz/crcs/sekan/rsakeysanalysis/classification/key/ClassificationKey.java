@@ -1,5 +1,9 @@
 package cz.crcs.sekan.rsakeysanalysis.classification.key;
 
+import cz.crcs.sekan.rsakeysanalysis.common.ByteSlice;
+import cz.crcs.sekan.rsakeysanalysis.common.JSONFieldScanner;
+import cz.crcs.sekan.rsakeysanalysis.common.JSONPropertyExtractor;
+import cz.crcs.sekan.rsakeysanalysis.common.KeyFingerprint;
 import cz.crcs.sekan.rsakeysanalysis.common.RSAKey;
 import cz.crcs.sekan.rsakeysanalysis.common.exception.WrongKeyException;
 import cz.crcs.sekan.rsakeysanalysis.template.Template;
@@ -9,12 +13,8 @@ import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * @author Peter Sekan, peter.sekan@mail.muni.cz
@@ -51,6 +51,12 @@ public class ClassificationKey {
 
     private String identification;
 
+    /**
+     * Fingerprint of the modulus, computed once, valid while the modulus is the fingerprinted one
+     */
+    private KeyFingerprint modulusFingerprint = null;
+    private BigInteger fingerprintedModulus = null;
+
     public String getIdentification() {
         return identification;
     }
@@ -101,51 +107,43 @@ public class ClassificationKey {
         }
     }
 
-    private static boolean isNewJsonFormat(String json) throws ParseException {
-        return !json.contains("\"modulus\"");
-    }
-
-    public static BigInteger shortenModulus(BigInteger modulus) {
-        if (modulus == null) return null;
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte hash[] = digest.digest(modulus.toByteArray());
-            return new BigInteger(hash);
-        } catch (NoSuchAlgorithmException e) {
-            System.err.println("SHA-256 not available");
-            throw new RuntimeException(e);
-        }
+    private static boolean isNewJsonFormat(CharSequence json) {
+        return ByteSlice.indexOf(json, "\"modulus\"") < 0;
     }
 
-    private static final Pattern patternModulus = Pattern.compile("\"(n|modulus)\" *: *\"(0x|0X)?([a-zA-Z0-9]+)\"");
+    private static final ThreadLocal<JSONFieldScanner> modulusScanner =
+            ThreadLocal.withInitial(() -> new JSONFieldScanner("n", "modulus"));
 
-    public static BigInteger getModulusFromJSON(String json) {
+    public static BigInteger getModulusFromJSON(CharSequence json) {
         if (json == null) return null;
-        Matcher m = patternModulus.matcher(json);
-        if (m.find()) {
-            String matched = m.group(0);
-            String[] split = matched.split("\"");
-            if (split.length >= 4) {
-                matched = split[3];
-                if (matched.startsWith("0x") || matched.startsWith("0X")) matched = matched.substring(2);
-            } else {
-                System.err.println("No modulus present in json");
-                return null;
-            }
-            return new BigInteger(matched, 16);
+        String modulus = modulusScanner.get().findString(json);
+        if (modulus == null) return null;
+        if (modulus.startsWith("0x") || modulus.startsWith("0X")) modulus = modulus.substring(2);
+        if (!JSONPropertyExtractor.isAlphanumeric(modulus)) {
+            System.err.println("No modulus present in json");
+            return null;
         }
-        return null;
+        return new BigInteger(modulus, 16);
     }
 
-    public static BigInteger getShortenedModulusFromJSON(String json) {
-        return shortenModulus(getModulusFromJSON(json));
+    public static KeyFingerprint getModulusFingerprintFromJSON(String json) {
+        return KeyFingerprint.of(getModulusFromJSON(json));
     }
 
-    public BigInteger getShortenedModulus() {
-        if (rsaKey == null || rsaKey.getModulus() == null) {
+    /**
+     * @return fingerprint of the modulus, null if the key has no modulus
+     */
+    public KeyFingerprint getModulusFingerprint() {
+        BigInteger modulus = rsaKey == null ? null : rsaKey.getModulus();
+        if (modulus == null) {
             return null;
         }
-        return shortenModulus(rsaKey.getModulus());
+        // the modulus computed from the primes is a new object each time
+        if (modulusFingerprint == null || (fingerprintedModulus != modulus && !fingerprintedModulus.equals(modulus))) {
+            fingerprintedModulus = modulus;
+            modulusFingerprint = KeyFingerprint.of(modulus);
+        }
+        return modulusFingerprint;
     }
 
     private static String firstStringInValue(Object object) {
@@ -192,6 +190,67 @@ public class ClassificationKey {
         return key;
     }
 
+    private static final String[] CLASSIFICATION_FIELDS = {"n", "e", "p", "q", "ordered", DUPLICITY_COUNT_FIELD, "source"};
+
+    private static final ThreadLocal<JSONFieldScanner> classificationFieldsScanner =
+            ThreadLocal.withInitial(() -> new JSONFieldScanner(CLASSIFICATION_FIELDS));
+
+    /**
+     * Construct key from json object, reading only the fields used during classification (no info, no factors)
+     * @param json string contains json object of key
+     * @throws ParseException Cannot parse json string
+     * @throws WrongKeyException Key does not contain n or p and q
+     */
+    public static ClassificationKey fromJsonClassificationFields(CharSequence json) throws ParseException, WrongKeyException {
+        if (!isNewJsonFormat(json)) {
+            return fromOldJsonFormat(json.toString());
+        }
+        JSONFieldScanner scanner = classificationFieldsScanner.get();
+        scanner.scan(json);
+
+        ClassificationKey key = new ClassificationKey();
+        if (scanner.has(0)) setModulusField(key.rsaKey, scanner);
+        if (scanner.has(1)) key.rsaKey.setExponent(bigIntegerField(scanner, 1));
+        if (scanner.has(2)) key.rsaKey.setP(bigIntegerField(scanner, 2));
+        if (scanner.has(3)) key.rsaKey.setQ(bigIntegerField(scanner, 3));
+        if (scanner.has(4)) {
+            Boolean ordered = scanner.getBoolean(4);
+            if (ordered == null) throw new WrongKeyException("Field ordered is not a boolean.");
+            key.ordered = ordered;
+        }
+        if (scanner.has(5)) {
+            Number count = scanner.getNumber(5);
+            if (count == null) throw new WrongKeyException("Field " + DUPLICITY_COUNT_FIELD + " is not a number.");
+            key.count = count.intValue();
+        }
+        if (scanner.has(6)) {
+            List<String> sources = scanner.getStrings(6);
+            if (sources == null) throw new WrongKeyException("Field source is not an array.");
+            key.source = new CopyOnWriteArraySet<>(sources);
+        }
+        return key;
+    }
+
+    /**
+     * Hexadecimal modulus is not parsed, tables may compute masks from its digits (see RSAKey.setModulusHex)
+     */
+    private static void setModulusField(RSAKey rsaKey, JSONFieldScanner scanner) throws WrongKeyException {
+        String value = scanner.getString(0);
+        if (value == null) throw new WrongKeyException("Field " + CLASSIFICATION_FIELDS[0] + " is not a string.");
+        String hex = value.startsWith("0x") ? value.substring(2) : value;
+        if (value.startsWith("0b") || hex.isEmpty() || hex.charAt(0) == '-' || hex.charAt(0) == '+') {
+            rsaKey.setModulus(BigIntegerConversion.fromString(value));
+        } else {
+            rsaKey.setModulusHex(hex);
+        }
+    }
+
+    private static BigInteger bigIntegerField(JSONFieldScanner scanner, int field) throws WrongKeyException {
+        String value = scanner.getString(field);
+        if (value == null) throw new WrongKeyException("Field " + CLASSIFICATION_FIELDS[field] + " is not a string.");
+        return BigIntegerConversion.fromString(value);
+    }
+
     public static ClassificationKey fromOldJsonFormat(String json) throws ParseException, WrongKeyException {
         ClassificationKey key = new ClassificationKey();
 
@@ -13,6 +13,11 @@ public class ClassificationKeyStub {
      */
     private String mask;
 
+    /**
+     * Id of the mask in the classification table, -1 if the mask is not in the table
+     */
+    private int maskId = -1;
+
     /**
      * The count of keys with the same id
      */
@@ -29,17 +34,54 @@ public class ClassificationKeyStub {
         if (key.getRealSource() != null && key.getIdentification() != null) {
             // this is a test key for the purpose of classification success
             stub.mask = key.getIdentification();
+            stub.maskId = table.getMaskId(stub.mask);
+        } else if (table.hasMaskCodes()) {
+            // the mask string is shared with the table, it is built only for masks missing in the table
+            long code = table.generateMaskCode(key);
+            stub.maskId = table.getMaskId(code);
+            stub.mask = stub.maskId >= 0 ? table.getMask(stub.maskId) : table.maskCodeToIdentification(code);
         } else {
             stub.mask = table.generationIdentification(key);
+            stub.maskId = table.getMaskId(stub.mask);
         }
         stub.realSource = key.getRealSource();
         return stub;
     }
 
+    /**
+     * @param mask classification identification/mask computed before (e.g., stored in a mask sidecar)
+     * @param maskId id of the mask in the classification table, -1 if the mask is not in the table
+     * @param duplicityCount count of keys with the same id
+     * @return stub of the key
+     */
+    public static ClassificationKeyStub fromMask(String mask, int maskId, int duplicityCount) {
+        return fromMask(mask, maskId, duplicityCount, null);
+    }
+
+    /**
+     * @param mask classification identification/mask computed before
+     * @param maskId id of the mask in the classification table, -1 if the mask is not in the table
+     * @param duplicityCount count of keys with the same id
+     * @param realSource the real group which generated the key, null if it is not known
+     * @return stub of the key
+     */
+    public static ClassificationKeyStub fromMask(String mask, int maskId, int duplicityCount, String realSource) {
+        ClassificationKeyStub stub = new ClassificationKeyStub();
+        stub.mask = mask;
+        stub.maskId = maskId;
+        stub.duplicityCount = duplicityCount;
+        stub.realSource = realSource;
+        return stub;
+    }
+
     public String getMask() {
         return mask;
     }
 
+    public int getMaskId() {
+        return maskId;
+    }
+
     public int getDuplicityCount() {
         return duplicityCount;
     }
@@ -0,0 +1,179 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.key;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stubs of keys stored by columns indexed by dense key ids (see BatchHolder): a mask code and a duplicity count
+ * for each key (8 bytes), the real source only if some key has it. Masks in the table are coded by their id,
+ * other masks (and real sources) are interned. The columns are split into chunks, so they grow without copying
+ * all the stubs and the number of keys is not limited by the maximal size of an array.
+ * The stubs are created by get, they are equal to the stored ones but not the same objects.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class KeyStubStore {
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MIN_CHUNK_SIZE = 1024;
+
+    private static final int NO_SOURCE = -1;
+
+    private ClassificationTable table;
+
+    private long size;
+
+    /**
+     * Id of the mask in the table plus one, -1 - i for the i-th mask missing in the table, zero for ids without a stub
+     */
+    private int[][] maskCodes;
+    private int[][] duplicityCounts;
+
+    /**
+     * Interned real sources, null until a stub with a real source is stored
+     */
+    private int[][] realSources;
+
+    private List<String> masksNotInTable;
+    private Map<String, Integer> maskNotInTableToIndex;
+    private List<String> sources;
+    private Map<String, Integer> sourceToIndex;
+
+    /**
+     * @param table table the ids of masks of the stubs belong to
+     */
+    public KeyStubStore(ClassificationTable table) {
+        this.table = table;
+        size = 0;
+        maskCodes = new int[0][];
+        duplicityCounts = new int[0][];
+        realSources = null;
+        masksNotInTable = new ArrayList<>();
+        maskNotInTableToIndex = new HashMap<>();
+        sources = new ArrayList<>();
+        sourceToIndex = new HashMap<>();
+    }
+
+    /**
+     * @param keyId id of the key, ids are expected to be dense (the columns are allocated up to the id)
+     * @param stub stub of the key
+     */
+    public void put(long keyId, ClassificationKeyStub stub) {
+        if (keyId < 0) throw new IllegalArgumentException("Key id must not be negative");
+        ensureCapacity(keyId);
+        int chunk = (int) (keyId >>> CHUNK_BITS);
+        int index = (int) (keyId & CHUNK_MASK);
+
+        maskCodes[chunk][index] = encodeMask(stub);
+        duplicityCounts[chunk][index] = stub.getDuplicityCount();
+
+        if (stub.getRealSource() != null && realSources == null) {
+            realSources = new int[maskCodes.length][];
+            for (int i = 0; i < realSources.length; i++) {
+                realSources[i] = new int[maskCodes[i].length];
+                Arrays.fill(realSources[i], NO_SOURCE);
+            }
+        }
+        if (realSources != null) {
+            realSources[chunk][index] = encodeRealSource(stub.getRealSource());
+        }
+        size = Math.max(size, keyId + 1);
+    }
+
+    /**
+     * @param keyId id of the key
+     * @return stub of the key, null if no stub was stored under the id
+     */
+    public ClassificationKeyStub get(long keyId) {
+        if (keyId < 0 || keyId >= size) return null;
+        int chunk = (int) (keyId >>> CHUNK_BITS);
+        int index = (int) (keyId & CHUNK_MASK);
+        if (maskCodes[chunk][index] == 0) return null;
+        return decode(maskCodes[chunk][index], duplicityCounts[chunk][index],
+                realSources == null ? NO_SOURCE : realSources[chunk][index]);
+    }
+
+    /**
+     * @param stub stub of a key
+     * @return code of the mask of the stub (never zero), masks missing in the table are interned
+     */
+    public int encodeMask(ClassificationKeyStub stub) {
+        if (stub.getMaskId() >= 0) return stub.getMaskId() + 1;
+        Integer maskIndex = maskNotInTableToIndex.get(stub.getMask());
+        if (maskIndex == null) {
+            maskIndex = masksNotInTable.size();
+            masksNotInTable.add(stub.getMask());
+            maskNotInTableToIndex.put(stub.getMask(), maskIndex);
+        }
+        return -1 - maskIndex;
+    }
+
+    /**
+     * @param realSource real source of a key, may be null
+     * @return code of the interned real source
+     */
+    public int encodeRealSource(String realSource) {
+        if (realSource == null) return NO_SOURCE;
+        Integer sourceIndex = sourceToIndex.get(realSource);
+        if (sourceIndex == null) {
+            sourceIndex = sources.size();
+            sources.add(realSource);
+            sourceToIndex.put(realSource, sourceIndex);
+        }
+        return sourceIndex;
+    }
+
+    /**
+     * Stub of codes created by encodeMask and encodeRealSource of this store (e.g., for stubs kept outside of it)
+     */
+    public ClassificationKeyStub decode(int maskCode, int duplicityCount, int realSourceCode) {
+        String mask = maskCode > 0 ? table.getMask(maskCode - 1) : masksNotInTable.get(-1 - maskCode);
+        return ClassificationKeyStub.fromMask(mask, maskCode > 0 ? maskCode - 1 : -1, duplicityCount,
+                realSourceCode == NO_SOURCE ? null : sources.get(realSourceCode));
+    }
+
+    /**
+     * @return one more than the largest id of a stored stub
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Chunks before the last one are full, the last chunk grows by doubling up to the size of a chunk
+     */
+    private void ensureCapacity(long keyId) {
+        int lastChunk = (int) (keyId >>> CHUNK_BITS);
+        int index = (int) (keyId & CHUNK_MASK);
+        int oldChunks = maskCodes.length;
+        if (lastChunk >= oldChunks) {
+            maskCodes = Arrays.copyOf(maskCodes, lastChunk + 1);
+            duplicityCounts = Arrays.copyOf(duplicityCounts, lastChunk + 1);
+            if (realSources != null) realSources = Arrays.copyOf(realSources, lastChunk + 1);
+            for (int chunk = Math.max(0, oldChunks - 1); chunk < lastChunk; chunk++) growChunk(chunk, CHUNK_SIZE);
+        }
+        if (maskCodes[lastChunk] == null || maskCodes[lastChunk].length <= index) {
+            int length = maskCodes[lastChunk] == null ? 0 : maskCodes[lastChunk].length;
+            growChunk(lastChunk, Math.min(CHUNK_SIZE, Math.max(Math.max(MIN_CHUNK_SIZE, 2 * length), index + 1)));
+        }
+    }
+
+    private void growChunk(int chunk, int length) {
+        int oldLength = maskCodes[chunk] == null ? 0 : maskCodes[chunk].length;
+        if (oldLength >= length) return;
+        maskCodes[chunk] = maskCodes[chunk] == null ? new int[length] : Arrays.copyOf(maskCodes[chunk], length);
+        duplicityCounts[chunk] = duplicityCounts[chunk] == null ? new int[length]
+                : Arrays.copyOf(duplicityCounts[chunk], length);
+        if (realSources != null) {
+            realSources[chunk] = realSources[chunk] == null ? new int[length] : Arrays.copyOf(realSources[chunk], length);
+            Arrays.fill(realSources[chunk], oldLength, length, NO_SOURCE);
+        }
+    }
+}
@@ -1,12 +1,10 @@
 package cz.crcs.sekan.rsakeysanalysis.classification.key.property;
 
 import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
+import cz.crcs.sekan.rsakeysanalysis.common.KeyFingerprint;
 
-import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 /**
  * A property extractor where we do not care about batching but still need to hold information about keys
@@ -14,9 +12,9 @@ import java.util.Set;
  * @author xnemec1
  * @version 5/5/17.
  */
-public class ModulusHashPropertyExtractor implements PropertyExtractor<BigInteger> {
+public class ModulusHashPropertyExtractor implements PropertyExtractor<KeyFingerprint> {
     @Override
-    public List<BigInteger> extractProperty(ClassificationKey key) {
-        return Collections.singletonList(key.getShortenedModulus());
+    public List<KeyFingerprint> extractProperty(ClassificationKey key) {
+        return Collections.singletonList(key.getModulusFingerprint());
     }
 }
@@ -1,26 +1,136 @@
 package cz.crcs.sekan.rsakeysanalysis.classification.table;
 
+import org.json.simple.JSONAware;
 import org.json.simple.JSONObject;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
+ * Classification of a batch of keys. Rows of keys are multiplied and normalized after each key (BigDecimal),
+ * or, in the log space mode (see logSpace), logarithms of values are summed in an array of doubles
+ * and the row is normalized only once, when it is requested.
+ *
  * @author Peter Sekan, peter.sekan@mail.muni.cz
  * @version 15.02.2016
  */
 public class ClassificationContainer {
+    /**
+     * Scale of normalized values, the same as in ClassificationRow.normalize
+     */
+    private static final int NORMALIZED_SCALE = 20;
+
+    private static final double LOG_TEN = Math.log(10);
+
     private long numOfUniqueKeys = 0;
     private long numOfAllKeys = 0;
     private ClassificationRow row;
 
+    /**
+     * Log space mode: names of groups of the first row, sums of logarithms of their values,
+     * groups missing in some row are not present (as in ClassificationRow.computeWithSameSource)
+     */
+    private String[] groups;
+    private double[] logSums;
+    private boolean[] present;
+
+    /**
+     * Log space mode: number of groups with a non-zero likelihood which became zero after the normalization
+     */
+    private int underflowCount;
+
+    /**
+     * Log space mode: true if a sum of logarithms is NaN or positive infinity (values out of the range of probabilities)
+     */
+    private boolean overflow;
+
+    /**
+     * Serialized toJSON, shared by all keys of the batch (and by keys classified by the same container)
+     */
+    private String jsonString;
+
     public ClassificationContainer(long numOfDuplicityKeys, ClassificationRow row) {
         numOfUniqueKeys = 1;
         numOfAllKeys = numOfDuplicityKeys;
         this.row = row;
     }
 
+    /**
+     * Create container which accumulates rows in the log space
+     * @param numOfDuplicityKeys number of occurrences of the key
+     * @param row classification row of the key
+     * @return container
+     */
+    public static ClassificationContainer logSpace(long numOfDuplicityKeys, ClassificationRow row) {
+        ClassificationContainer container = new ClassificationContainer(numOfDuplicityKeys, row);
+        Map<String, BigDecimal> values = row.getValues();
+        container.groups = values.keySet().toArray(new String[values.size()]);
+        container.logSums = new double[container.groups.length];
+        container.present = new boolean[container.groups.length];
+        for (int i = 0; i < container.groups.length; i++) {
+            container.logSums[i] = log(values.get(container.groups[i]));
+            container.present[i] = true;
+        }
+        return container;
+    }
+
+    public boolean isLogSpace() {
+        return logSums != null;
+    }
+
     public void add(long numOfDuplicityKeys, ClassificationRow row) {
         numOfUniqueKeys++;
         numOfAllKeys += numOfDuplicityKeys;
-        this.row = this.row.computeWithSameSource(row);
+        jsonString = null;
+        if (!isLogSpace()) {
+            this.row = this.row.computeWithSameSource(row);
+            return;
+        }
+        for (int i = 0; i < groups.length; i++) {
+            if (!present[i]) continue;
+            BigDecimal value = row.getSource(groups[i]);
+            if (value == null) {
+                present[i] = false;
+            } else {
+                logSums[i] += log(value);
+            }
+        }
+        this.row = null;
+    }
+
+    /**
+     * Add keys classified by another container of the same mode, the result is the same as if the keys were added
+     * to this container (up to the rounding of the normalization), the other container must not be used afterwards
+     * @param other classification of other keys of the batch
+     */
+    public void merge(ClassificationContainer other) {
+        if (isLogSpace() != other.isLogSpace()) {
+            throw new IllegalArgumentException("Cannot merge containers of different modes");
+        }
+        numOfUniqueKeys += other.numOfUniqueKeys;
+        numOfAllKeys += other.numOfAllKeys;
+        jsonString = null;
+        if (!isLogSpace()) {
+            this.row = this.row.computeWithSameSource(other.row);
+            return;
+        }
+        Map<String, Integer> otherIndices = new TreeMap<>();
+        for (int i = 0; i < other.groups.length; i++) {
+            if (other.present[i]) otherIndices.put(other.groups[i], i);
+        }
+        for (int i = 0; i < groups.length; i++) {
+            if (!present[i]) continue;
+            Integer otherIndex = otherIndices.get(groups[i]);
+            if (otherIndex == null) {
+                present[i] = false;
+            } else {
+                logSums[i] += other.logSums[otherIndex];
+            }
+        }
+        this.row = null;
     }
 
     public long getNumOfUniqueKeys() {
@@ -32,14 +142,87 @@ public class ClassificationContainer {
     }
 
     public ClassificationRow getRow() {
+        if (row == null) row = normalizeLogSums();
         return row;
     }
 
+    /**
+     * @return number of groups which underflowed to zero, after the row was computed (log space mode only)
+     */
+    public int getUnderflowCount() {
+        getRow();
+        return underflowCount;
+    }
+
+    /**
+     * @return true if the accumulated logarithms are not finite numbers (log space mode only)
+     */
+    public boolean isOverflow() {
+        getRow();
+        return overflow;
+    }
+
+    private ClassificationRow normalizeLogSums() {
+        underflowCount = 0;
+        overflow = false;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < groups.length; i++) {
+            if (!present[i]) continue;
+            if (Double.isNaN(logSums[i]) || logSums[i] == Double.POSITIVE_INFINITY) overflow = true;
+            else max = Math.max(max, logSums[i]);
+        }
+
+        double[] likelihoods = new double[groups.length];
+        double sum = 0d;
+        if (max != Double.NEGATIVE_INFINITY) {
+            for (int i = 0; i < groups.length; i++) {
+                if (!present[i] || Double.isNaN(logSums[i]) || logSums[i] == Double.POSITIVE_INFINITY) continue;
+                likelihoods[i] = Math.exp(logSums[i] - max);
+                if (likelihoods[i] == 0d && logSums[i] != Double.NEGATIVE_INFINITY) underflowCount++;
+                sum += likelihoods[i];
+            }
+        }
+
+        Map<String, BigDecimal> values = new TreeMap<>();
+        for (int i = 0; i < groups.length; i++) {
+            if (!present[i]) continue;
+            BigDecimal value = sum == 0d ? BigDecimal.ZERO : BigDecimal.valueOf(likelihoods[i] / sum);
+            values.put(groups[i], value.setScale(NORMALIZED_SCALE, RoundingMode.CEILING));
+        }
+        return new ClassificationRow(values);
+    }
+
+    /**
+     * @param value non-negative number
+     * @return natural logarithm of the number, negative infinity for zero
+     */
+    static double log(BigDecimal value) {
+        if (value.signum() <= 0) return Double.NEGATIVE_INFINITY;
+        double doubleValue = value.doubleValue();
+        if (doubleValue >= Double.MIN_NORMAL && doubleValue < Double.POSITIVE_INFINITY) {
+            return Math.log(doubleValue);
+        }
+        // value = unscaled * 10^-scale, the unscaled value is shifted to fit into a double
+        BigInteger unscaled = value.unscaledValue();
+        int shift = Math.max(0, unscaled.bitLength() - 62);
+        return Math.log(unscaled.shiftRight(shift).doubleValue()) + shift * Math.log(2)
+                - value.scale() * LOG_TEN;
+    }
+
     public JSONObject toJSON() {
         JSONObject jsonObject = new JSONObject();
         jsonObject.put("keyCount", getNumOfAllKeys());
         jsonObject.put("uniqueKeyCount", getNumOfUniqueKeys());
-        jsonObject.put("classification", row.toJSON());
+        jsonObject.put("classification", getRow().toJSON());
         return jsonObject;
     }
+
+    /**
+     * @return the same JSON as toJSON, serialized only once for all keys classified by the container
+     */
+    public JSONAware toCachedJSON() {
+        if (jsonString == null) jsonString = toJSON().toJSONString();
+        String cached = jsonString;
+        return () -> cached;
+    }
 }
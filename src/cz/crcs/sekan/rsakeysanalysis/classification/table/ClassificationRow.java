@@ -237,6 +237,20 @@ public class ClassificationRow {
         return tmp;
     }
 
+    /**
+     * @param otherRow other classification row
+     * @return maximal absolute difference of values of groups, positive infinity if the rows have different groups
+     */
+    public double maxDifference(ClassificationRow otherRow) {
+        if (!sources.keySet().equals(otherRow.sources.keySet())) return Double.POSITIVE_INFINITY;
+        double max = 0d;
+        for (Map.Entry<String, BigDecimal> entry : sources.entrySet()) {
+            BigDecimal difference = entry.getValue().subtract(otherRow.sources.get(entry.getKey())).abs();
+            max = Math.max(max, difference.doubleValue());
+        }
+        return max;
+    }
+
     public JSONObject toJSON() {
         JSONObject row = new JSONObject();
         for (Map.Entry<String, BigDecimal> entry : sources.entrySet()) {
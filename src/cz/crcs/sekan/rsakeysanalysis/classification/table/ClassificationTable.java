@@ -4,6 +4,7 @@ import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.PriorProba
 import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.identification.IdentificationGenerator;
 import cz.crcs.sekan.rsakeysanalysis.common.ExtendedWriter;
+import cz.crcs.sekan.rsakeysanalysis.common.RSAKey;
 
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -21,6 +22,23 @@ public class ClassificationTable {
 
     private IdentificationGenerator identificationGenerator;
 
+    /**
+     * Masks of the table sorted, mask id is the index, and their rows
+     */
+    private String[] masksById;
+    private ClassificationRow[] rowsById;
+    private Map<String, Integer> maskToId;
+
+    /**
+     * Index of mask ids by mask codes, null if the identifications do not have codes
+     */
+    private MaskCodeIndex maskCodeIndex;
+
+    /**
+     * Compiled table shared by the copies of the table, null if not compiled yet or the rows changed
+     */
+    private CompiledClassificationTable compiledTable;
+
     public ClassificationTable(Map<Set<String>, Map<String, Long>> tableGrouped, IdentificationGenerator identificationGenerator, Map<Set<String>, BigDecimal> groupWeights) {
         this.identificationGenerator = identificationGenerator;
         Map<String, Map<String, Double>> normalized = new TreeMap<>();
@@ -57,6 +75,34 @@ public class ClassificationTable {
             ClassificationRow classificationRow = new ClassificationRow(row);
             table.put(identification, classificationRow);
         }
+        indexMasks();
+    }
+
+    /**
+     * Assign ids to masks of the table and index them by mask codes, must be called when the set of masks changes.
+     */
+    private void indexMasks() {
+        List<String> masks = new ArrayList<>(new TreeSet<>(table.keySet()));
+        masksById = masks.toArray(new String[masks.size()]);
+        rowsById = new ClassificationRow[masksById.length];
+        maskToId = new HashMap<>();
+        for (int id = 0; id < masksById.length; id++) {
+            rowsById[id] = table.get(masksById[id]);
+            maskToId.put(masksById[id], id);
+        }
+
+        maskCodeIndex = null;
+        if (identificationGenerator == null || !identificationGenerator.hasCodes()) return;
+        long[] codes = new long[masksById.length];
+        Set<Long> distinctCodes = new HashSet<>();
+        for (int id = 0; id < masksById.length; id++) {
+            codes[id] = identificationGenerator.identificationToCode(masksById[id]);
+            if (codes[id] < 0 || !distinctCodes.add(codes[id])) {
+                System.err.println("Warning: mask " + masksById[id] + " does not have a code, masks are compared as strings");
+                return;
+            }
+        }
+        maskCodeIndex = new MaskCodeIndex(codes, identificationGenerator.getCodeBits());
     }
 
     public void applyPriorProbability(PriorProbability priorProbability) {
@@ -64,6 +110,7 @@ public class ClassificationTable {
     }
 
     public void applyPriorProbability(PriorProbability priorProbability, boolean normalize) {
+        compiledTable = null;
         if (priorProbability != null) {
             // use the default user defined prior probabilities from the table, otherwise replace
             this.priorProbability = priorProbability;
@@ -87,6 +134,98 @@ public class ClassificationTable {
         return identificationGenerator.generationIdentification(key.getRsaKey());
     }
 
+    /**
+     * @return hash of the definition of identifications, tables with the same hash assign the same masks to keys
+     */
+    public String getIdentificationDefinitionHash() {
+        return identificationGenerator.getDefinitionHash();
+    }
+
+    /**
+     * @return parts of rsa key which are transformed to masks of keys
+     */
+    public Set<RSAKey.PART> getTransformedParts() {
+        if (identificationGenerator == null) return EnumSet.noneOf(RSAKey.PART.class);
+        return identificationGenerator.getTransformedParts();
+    }
+
+    /**
+     * @return true if keys can be classified by mask codes (see generateMaskCode)
+     */
+    public boolean hasMaskCodes() {
+        return maskCodeIndex != null;
+    }
+
+    /**
+     * @param key key
+     * @return mask code of the key, computed from the text of the modulus if the key was not parsed yet
+     */
+    public long generateMaskCode(ClassificationKey key) {
+        String modulusHex = key.getRsaKey().getModulusHex();
+        if (modulusHex != null && identificationGenerator.hasModulusHexCodes()) {
+            return identificationGenerator.generateCodeFromModulusHex(modulusHex);
+        }
+        return identificationGenerator.generateCode(key.getRsaKey());
+    }
+
+    public String maskCodeToIdentification(long code) {
+        return identificationGenerator.codeToIdentification(code);
+    }
+
+    /**
+     * @param identification mask
+     * @return mask code of the mask (the same as generateMaskCode for keys with the mask), -1 if it has no code
+     */
+    public long identificationToMaskCode(String identification) {
+        if (identificationGenerator == null || !identificationGenerator.hasCodes()) return -1;
+        return identificationGenerator.identificationToCode(identification);
+    }
+
+    /**
+     * @param code mask code
+     * @return id of the mask with the code, -1 if the mask is not in the table
+     */
+    public int getMaskId(long code) {
+        return maskCodeIndex.get(code);
+    }
+
+    /**
+     * @param mask mask
+     * @return id of the mask, -1 if the mask is not in the table
+     */
+    public int getMaskId(String mask) {
+        Integer id = maskToId.get(mask);
+        return id == null ? -1 : id;
+    }
+
+    public String getMask(int maskId) {
+        return masksById[maskId];
+    }
+
+    public int getMaskCount() {
+        return masksById.length;
+    }
+
+    public ClassificationRow classifyMaskId(int maskId) {
+        return rowsById[maskId];
+    }
+
+    /**
+     * @return the table as a dense matrix with group ids, the matrix does not change with the table
+     */
+    public CompiledClassificationTable compile() {
+        return new CompiledClassificationTable(this);
+    }
+
+    /**
+     * @return the table as a dense matrix compiled once and shared with the copies of the table (see makeCopy),
+     * must not be modified, use compile for a modifiable matrix
+     */
+    public synchronized CompiledClassificationTable getCompiledTable() {
+        if (compiledTable == null) compiledTable = compile();
+        return compiledTable;
+    }
+
     public ClassificationRow classifyIdentification(String identification) {
         return table.get(identification);
     }
@@ -166,6 +305,9 @@ public class ClassificationTable {
         copyTable.groups.putAll(groups);
         copyTable.identificationGenerator = identificationGenerator;
         copyTable.priorProbability = priorProbability.makeCopy();
+        copyTable.indexMasks();
+        // rows of the copy are the same, until the copy is changed
+        copyTable.compiledTable = getCompiledTable();
         return copyTable;
     }
 
@@ -179,6 +321,7 @@ public class ClassificationTable {
      * @param maskProbabilities
      */
     public void addSource(String sourceName, Map<String, BigDecimal> maskProbabilities) {
+        compiledTable = null;
         Set<String> newGroup = new TreeSet<>();
         newGroup.add(sourceName);
         groups.put(sourceName, newGroup);
@@ -210,6 +353,7 @@ public class ClassificationTable {
     }
 
     public Map<String, BigDecimal> removeGroup(String groupName) {
+        compiledTable = null;
         priorProbability.remove(groupName);
         groups.remove(groupName);
         Map<String, BigDecimal> maskToCount = new TreeMap<>();
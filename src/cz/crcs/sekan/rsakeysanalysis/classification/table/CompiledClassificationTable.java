@@ -0,0 +1,273 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.table;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.PriorProbability;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Classification table compiled to a dense matrix of doubles indexed by mask ids and group ids.
+ * Mask ids are the same as in the ClassificationTable, group ids are indices of sorted group names.
+ * Names of groups and masks are used only to convert from and to the ClassificationTable and PriorProbability.
+ * Values of groups missing in a row (impossible masks) are zero and not defined.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class CompiledClassificationTable {
+
+    private String[] groupNames;
+
+    private Map<String, Integer> groupIds;
+
+    private String[] masks;
+
+    private Map<String, Integer> maskIds;
+
+    /**
+     * values[maskId][groupId]
+     */
+    private double[][] values;
+
+    /**
+     * defined[maskId][groupId], false if the group is missing in the row of the mask
+     */
+    private boolean[][] defined;
+
+    private CompiledClassificationTable() {
+    }
+
+    /**
+     * @param table classification table, rows are read as they are (with prior probability applied, if it was)
+     */
+    public CompiledClassificationTable(ClassificationTable table) {
+        groupNames = table.getGroupsNames().toArray(new String[0]);
+        Arrays.sort(groupNames);
+        groupIds = new HashMap<>();
+        for (int groupId = 0; groupId < groupNames.length; groupId++) groupIds.put(groupNames[groupId], groupId);
+
+        masks = new String[table.getMaskCount()];
+        maskIds = new HashMap<>();
+        values = new double[masks.length][groupNames.length];
+        defined = new boolean[masks.length][groupNames.length];
+        for (int maskId = 0; maskId < masks.length; maskId++) {
+            masks[maskId] = table.getMask(maskId);
+            maskIds.put(masks[maskId], maskId);
+            Map<String, BigDecimal> row = table.classifyMaskId(maskId).getValues();
+            for (int groupId = 0; groupId < groupNames.length; groupId++) {
+                BigDecimal value = row.get(groupNames[groupId]);
+                if (value == null) continue;
+                values[maskId][groupId] = value.doubleValue();
+                defined[maskId][groupId] = true;
+            }
+        }
+    }
+
+    public int getMaskCount() {
+        return masks.length;
+    }
+
+    public int getGroupCount() {
+        return groupNames.length;
+    }
+
+    public String getMask(int maskId) {
+        return masks[maskId];
+    }
+
+    /**
+     * @param mask mask
+     * @return id of the mask, -1 if the mask is not in the table
+     */
+    public int getMaskId(String mask) {
+        Integer maskId = maskIds.get(mask);
+        return maskId == null ? -1 : maskId;
+    }
+
+    public String getGroupName(int groupId) {
+        return groupNames[groupId];
+    }
+
+    /**
+     * @return names of groups ordered by group ids
+     */
+    public List<String> getGroupNames() {
+        return Collections.unmodifiableList(Arrays.asList(groupNames));
+    }
+
+    /**
+     * @param groupName name of group
+     * @return id of the group, -1 if the group is not in the table
+     */
+    public int getGroupId(String groupName) {
+        Integer groupId = groupIds.get(groupName);
+        return groupId == null ? -1 : groupId;
+    }
+
+    public double getValue(int maskId, int groupId) {
+        return values[maskId][groupId];
+    }
+
+    public boolean isDefined(int maskId, int groupId) {
+        return defined[maskId][groupId];
+    }
+
+    /**
+     * @param maskId id of mask
+     * @return values of the row indexed by group ids, must not be modified
+     */
+    public double[] getRow(int maskId) {
+        return values[maskId];
+    }
+
+    /**
+     * @param maskId id of mask
+     * @param number number of groups, or ClassificationRow.ALL_GROUPS for all defined groups
+     * @return ids of defined groups with the highest values, ordered by decreasing values (ties by group ids)
+     */
+    public int[] getTopGroups(int maskId, int number) {
+        double[] row = values[maskId];
+        Integer[] order = new Integer[groupNames.length];
+        int count = 0;
+        for (int groupId = 0; groupId < groupNames.length; groupId++) {
+            if (defined[maskId][groupId]) order[count++] = groupId;
+        }
+        Arrays.sort(order, 0, count, (g1, g2) -> Double.compare(row[g2], row[g1]));
+        int resultSize = number == ClassificationRow.ALL_GROUPS ? count : Math.min(number, count);
+        int[] result = new int[resultSize];
+        for (int i = 0; i < resultSize; i++) result[i] = order[i];
+        return result;
+    }
+
+    /**
+     * @param maskId id of mask
+     * @param groupId id of group
+     * @return position (from 1) of the group in the row sorted by decreasing values, -1 if the group is not defined
+     */
+    public int getGroupPosition(int maskId, int groupId) {
+        if (!defined[maskId][groupId]) return -1;
+        double value = values[maskId][groupId];
+        int position = 1;
+        for (int otherGroupId = 0; otherGroupId < groupNames.length; otherGroupId++) {
+            if (!defined[maskId][otherGroupId]) continue;
+            double otherValue = values[maskId][otherGroupId];
+            if (otherValue > value || (otherValue == value && otherGroupId < groupId)) position++;
+        }
+        return position;
+    }
+
+    /**
+     * Normalize the row so that its values sum to one
+     * @param maskId id of mask
+     */
+    public void normalize(int maskId) {
+        double sum = 0d;
+        for (double value : values[maskId]) sum += value;
+        if (sum == 0d) return;
+        for (int groupId = 0; groupId < groupNames.length; groupId++) values[maskId][groupId] /= sum;
+    }
+
+    /**
+     * @param priorProbability prior probability of groups indexed by group ids (see toGroupVector)
+     * @param normalize normalize rows after the probability is applied
+     */
+    public void applyPriorProbability(double[] priorProbability, boolean normalize) {
+        checkGroupVector(priorProbability);
+        for (int maskId = 0; maskId < masks.length; maskId++) {
+            for (int groupId = 0; groupId < groupNames.length; groupId++) {
+                values[maskId][groupId] *= priorProbability[groupId];
+            }
+            if (normalize) normalize(maskId);
+        }
+    }
+
+    /**
+     * Expected frequencies of masks, when the groups are distributed according to the prior probability
+     * (the same as ClassificationTable.simulateStatistics)
+     * @param priorProbability prior probability of groups indexed by group ids
+     * @return frequencies indexed by mask ids
+     */
+    public double[] simulateStatistics(double[] priorProbability) {
+        checkGroupVector(priorProbability);
+        double[] frequencies = new double[masks.length];
+        for (int maskId = 0; maskId < masks.length; maskId++) {
+            double sum = 0d;
+            for (int groupId = 0; groupId < groupNames.length; groupId++) {
+                sum += values[maskId][groupId] * priorProbability[groupId];
+            }
+            frequencies[maskId] = sum;
+        }
+        return frequencies;
+    }
+
+    /**
+     * @return copy of the matrix [maskId][groupId] with columns (groups) normalized to sum to one
+     */
+    public double[][] getColumnNormalizedMatrix() {
+        double[][] matrix = new double[masks.length][];
+        for (int maskId = 0; maskId < masks.length; maskId++) matrix[maskId] = values[maskId].clone();
+        for (int groupId = 0; groupId < groupNames.length; groupId++) {
+            double sum = 0d;
+            for (int maskId = 0; maskId < masks.length; maskId++) sum += matrix[maskId][groupId];
+            for (int maskId = 0; maskId < masks.length; maskId++) matrix[maskId][groupId] /= sum;
+        }
+        return matrix;
+    }
+
+    /**
+     * @param priorProbability prior probability with group names
+     * @return the probability indexed by group ids, missing groups are zero
+     */
+    public double[] toGroupVector(PriorProbability priorProbability) {
+        double[] vector = new double[groupNames.length];
+        for (int groupId = 0; groupId < groupNames.length; groupId++) {
+            BigDecimal probability = priorProbability.get(groupNames[groupId]);
+            if (probability != null) vector[groupId] = probability.doubleValue();
+        }
+        return vector;
+    }
+
+    /**
+     * @param vector probability indexed by group ids
+     * @return prior probability with group names
+     */
+    public PriorProbability toPriorProbability(double[] vector) {
+        checkGroupVector(vector);
+        PriorProbability priorProbability = new PriorProbability();
+        for (int groupId = 0; groupId < groupNames.length; groupId++) {
+            priorProbability.put(groupNames[groupId], BigDecimal.valueOf(vector[groupId]));
+        }
+        return priorProbability;
+    }
+
+    /**
+     * @param maskId id of mask
+     * @return row of the mask as ClassificationRow, without the groups which are not defined
+     */
+    public ClassificationRow toClassificationRow(int maskId) {
+        Map<String, BigDecimal> row = new TreeMap<>();
+        for (int groupId = 0; groupId < groupNames.length; groupId++) {
+            if (defined[maskId][groupId]) row.put(groupNames[groupId], BigDecimal.valueOf(values[maskId][groupId]));
+        }
+        return new ClassificationRow(row);
+    }
+
+    public CompiledClassificationTable makeCopy() {
+        CompiledClassificationTable copy = new CompiledClassificationTable();
+        copy.groupNames = groupNames;
+        copy.groupIds = groupIds;
+        copy.masks = masks;
+        copy.maskIds = maskIds;
+        copy.defined = defined;
+        copy.values = new double[masks.length][];
+        for (int maskId = 0; maskId < masks.length; maskId++) copy.values[maskId] = values[maskId].clone();
+        return copy;
+    }
+
+    private void checkGroupVector(double[] vector) {
+        if (vector.length != groupNames.length) {
+            throw new IllegalArgumentException("Vector has " + vector.length + " values, table has "
+                    + groupNames.length + " groups");
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.table;
+
+import java.util.Arrays;
+
+/**
+ * Maps mask codes (see IdentificationGenerator.generateCode) to mask ids.
+ * Short codes index a dense array, longer codes an open addressing hash table with linear probing.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class MaskCodeIndex {
+
+    /**
+     * Codes of at most this number of bits are indexed by a dense array
+     */
+    public static final int MAX_DENSE_BITS = 20;
+
+    private int[] denseIds;
+
+    private long[] hashedCodes;
+
+    private int[] hashedIds;
+
+    private int hashMask;
+
+    /**
+     * @param codes codes of masks, mask id is the index in the array, codes must be non-negative and distinct
+     * @param codeBits number of bits of the codes
+     */
+    public MaskCodeIndex(long[] codes, int codeBits) {
+        if (codeBits <= MAX_DENSE_BITS) {
+            denseIds = new int[1 << codeBits];
+            Arrays.fill(denseIds, -1);
+            for (int id = 0; id < codes.length; id++) denseIds[(int) codes[id]] = id;
+            return;
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(2, codes.length * 2 - 1)) << 1;
+        hashedCodes = new long[capacity];
+        hashedIds = new int[capacity];
+        Arrays.fill(hashedIds, -1);
+        hashMask = capacity - 1;
+        for (int id = 0; id < codes.length; id++) {
+            int slot = slot(codes[id]);
+            while (hashedIds[slot] >= 0) slot = (slot + 1) & hashMask;
+            hashedCodes[slot] = codes[id];
+            hashedIds[slot] = id;
+        }
+    }
+
+    /**
+     * @param code mask code
+     * @return id of the mask with the code, -1 if there is no such mask
+     */
+    public int get(long code) {
+        if (denseIds != null) {
+            return code >= 0 && code < denseIds.length ? denseIds[(int) code] : -1;
+        }
+        int slot = slot(code);
+        while (hashedIds[slot] >= 0) {
+            if (hashedCodes[slot] == code) return hashedIds[slot];
+            slot = (slot + 1) & hashMask;
+        }
+        return -1;
+    }
+
+    private int slot(long code) {
+        long hash = code * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & hashMask;
+    }
+}
@@ -3,7 +3,13 @@ package cz.crcs.sekan.rsakeysanalysis.classification.table.identification;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.transformation.Transformation;
 import cz.crcs.sekan.rsakeysanalysis.common.RSAKey;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -18,12 +24,35 @@ public class IdentificationGenerator {
      */
     private List<Transformation> transformations;
 
+    /**
+     * Number of bits of mask codes, -1 if some transformation does not support codes or the codes are too long
+     */
+    private int codeBits;
+
+    /**
+     * True if codes can be generated from hexadecimal digits of the modulus
+     */
+    private boolean modulusHexCodes;
+
     /**
      * Create generator
      * @param transformations list of used transformations
      */
     public IdentificationGenerator(List<Transformation> transformations) {
         this.transformations = transformations;
+        this.codeBits = 0;
+        for (Transformation transformation : transformations) {
+            int bits = transformation.getCodeBits();
+            if (bits < 0 || codeBits + bits > 62) {
+                codeBits = -1;
+                break;
+            }
+            codeBits += bits;
+        }
+        modulusHexCodes = codeBits >= 0;
+        for (Transformation transformation : transformations) {
+            modulusHexCodes &= transformation.supportsModulusHexCode();
+        }
     }
 
     /**
@@ -37,4 +66,111 @@ public class IdentificationGenerator {
                 .collect(Collectors.toList());
         return String.join(TRANSFORMATION_SEPARATOR, identifications);
     }
+
+    /**
+     * @return true if identifications can be generated as mask codes
+     */
+    public boolean hasCodes() {
+        return codeBits >= 0;
+    }
+
+    public int getCodeBits() {
+        return codeBits;
+    }
+
+    /**
+     * Generate identification as mask code, the codes of identification parts are packed
+     * into bit fields (the first transformation in the most significant bits)
+     * @param key rsa key
+     * @return mask code
+     */
+    public long generateCode(RSAKey key) {
+        long code = 0;
+        for (Transformation transformation : transformations) {
+            code = (code << transformation.getCodeBits()) | transformation.transformToCode(key);
+        }
+        return code;
+    }
+
+    /**
+     * @return true if mask codes can be generated from hexadecimal digits of the modulus
+     */
+    public boolean hasModulusHexCodes() {
+        return modulusHexCodes;
+    }
+
+    /**
+     * Generate mask code from hexadecimal digits of the modulus, the same as generateCode
+     * @param modulusHex hexadecimal digits of the modulus
+     * @return mask code
+     */
+    public long generateCodeFromModulusHex(CharSequence modulusHex) {
+        long code = 0;
+        for (Transformation transformation : transformations) {
+            code = (code << transformation.getCodeBits()) | transformation.modulusHexToCode(modulusHex);
+        }
+        return code;
+    }
+
+    /**
+     * @param code mask code
+     * @return identification with the code, the same as generated by generationIdentification
+     */
+    public String codeToIdentification(long code) {
+        String[] identifications = new String[transformations.size()];
+        for (int i = transformations.size() - 1; i >= 0; i--) {
+            Transformation transformation = transformations.get(i);
+            int bits = transformation.getCodeBits();
+            identifications[i] = transformation.codeToString(code & ((1L << bits) - 1));
+            code >>>= bits;
+        }
+        return String.join(TRANSFORMATION_SEPARATOR, identifications);
+    }
+
+    /**
+     * @param identification identification
+     * @return mask code of the identification, -1 if the identification cannot be generated
+     */
+    public long identificationToCode(String identification) {
+        String[] identifications = identification.split(Pattern.quote(TRANSFORMATION_SEPARATOR), -1);
+        if (identifications.length != transformations.size()) return -1;
+        long code = 0;
+        for (int i = 0; i < identifications.length; i++) {
+            Transformation transformation = transformations.get(i);
+            long partCode = transformation.stringToCode(identifications[i]);
+            if (partCode < 0) return -1;
+            code = (code << transformation.getCodeBits()) | partCode;
+        }
+        return code;
+    }
+
+    /**
+     * @return parts of rsa key which are transformed to identifications
+     */
+    public Set<RSAKey.PART> getTransformedParts() {
+        Set<RSAKey.PART> parts = EnumSet.noneOf(RSAKey.PART.class);
+        for (Transformation transformation : transformations) {
+            parts.addAll(transformation.getTransformedParts());
+        }
+        return parts;
+    }
+
+    /**
+     * @return hash (hexadecimal) of definitions of the transformations, generators with the same hash
+     * generate the same identifications
+     */
+    public String getDefinitionHash() {
+        String definitions = transformations.stream()
+                .map(Transformation::getDefinition)
+                .collect(Collectors.joining("\n"));
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(definitions.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) hex.append(String.format("%02x", hash[i]));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            System.err.println("SHA-256 not available");
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -8,6 +8,7 @@ import cz.crcs.sekan.rsakeysanalysis.util.Pair;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -71,4 +72,33 @@ public class CombinationTransformation extends Transformation {
         }
         return (operator == OPERATOR.AND ? "1" : "0");
     }
+
+    @Override
+    public Set<RSAKey.PART> getTransformedParts() {
+        Set<RSAKey.PART> parts = EnumSet.noneOf(RSAKey.PART.class);
+        for (Pair<Transformation, String> transformation : transformations) {
+            parts.addAll(transformation.getKey().getTransformedParts());
+        }
+        return parts;
+    }
+
+    @Override
+    public int getCodeBits() {
+        return 1;
+    }
+
+    @Override
+    public long transformToCode(RSAKey key) {
+        return stringToBits(transform(key), 1);
+    }
+
+    @Override
+    public String codeToString(long code) {
+        return bitsToString(code, 1);
+    }
+
+    @Override
+    public long stringToCode(String identificationPart) {
+        return stringToBits(identificationPart, 1);
+    }
 }
@@ -24,6 +24,11 @@ public class ExpectedRemainderTransformation extends Transformation {
      */
     private BigInteger expectedRemainder = null;
 
+    /**
+     * Dividers as ints for the kernels, null if some divider is not a positive int
+     */
+    private int[] intDividers = null;
+
     public ExpectedRemainderTransformation(RSAKey.PART from, JSONObject options) throws WrongOptionsFormatException {
         super(from, options);
         if (!options.containsKey("dividers") ||
@@ -38,10 +43,32 @@ public class ExpectedRemainderTransformation extends Transformation {
             dividers.add(d);
         }
         expectedRemainder = BigInteger.valueOf(((Number)getRequiredOption("expectedRemainder")).longValue());
+
+        intDividers = new int[dividers.size()];
+        int i = 0;
+        for (BigInteger divider : dividers) {
+            if (divider.signum() <= 0 || divider.bitLength() > 31) {
+                intDividers = null;
+                break;
+            }
+            intDividers[i++] = divider.intValue();
+        }
     }
 
     @Override
     public String transform(RSAKey key) {
+        BigInteger part = key.getPart(from);
+        if (intDividers != null && TransformationKernels.isSupported(part)) {
+            // magnitude is shared by all dividers
+            int[] magnitude = TransformationKernels.magnitude(part);
+            long expected = expectedRemainder.longValue();
+            for (int divider : intDividers) {
+                if (TransformationKernels.remainder(magnitude, divider) == expected) {
+                    return "1";
+                }
+            }
+            return "0";
+        }
         for (BigInteger divider : dividers) {
             if (key.getPart(from).mod(divider).compareTo(expectedRemainder) == 0) {
                 return "1";
@@ -49,4 +76,24 @@ public class ExpectedRemainderTransformation extends Transformation {
         }
         return "0";
     }
+
+    @Override
+    public int getCodeBits() {
+        return 1;
+    }
+
+    @Override
+    public long transformToCode(RSAKey key) {
+        return stringToBits(transform(key), 1);
+    }
+
+    @Override
+    public String codeToString(long code) {
+        return bitsToString(code, 1);
+    }
+
+    @Override
+    public long stringToCode(String identificationPart) {
+        return stringToBits(identificationPart, 1);
+    }
 }
@@ -26,4 +26,23 @@ public class GCDTransformation extends Transformation {
         return key.getPart(from).subtract(BigInteger.ONE).gcd(dividend).equals(expectedCommonDivisor) ? "0": "1";
     }
 
+    @Override
+    public int getCodeBits() {
+        return 1;
+    }
+
+    @Override
+    public long transformToCode(RSAKey key) {
+        return stringToBits(transform(key), 1);
+    }
+
+    @Override
+    public String codeToString(long code) {
+        return bitsToString(code, 1);
+    }
+
+    @Override
+    public long stringToCode(String identificationPart) {
+        return stringToBits(identificationPart, 1);
+    }
 }
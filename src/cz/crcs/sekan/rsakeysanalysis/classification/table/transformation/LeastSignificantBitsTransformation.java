@@ -4,6 +4,8 @@ import cz.crcs.sekan.rsakeysanalysis.classification.table.transformation.excepti
 import cz.crcs.sekan.rsakeysanalysis.common.RSAKey;
 import org.json.simple.JSONObject;
 
+import java.math.BigInteger;
+
 /**
  * @author Peter Sekan, peter.sekan@mail.muni.cz
  * @version 18.04.2016
@@ -29,7 +31,45 @@ public class LeastSignificantBitsTransformation extends Transformation {
 
     @Override
     public String transform(RSAKey key) {
-        String partBinary = key.getPart(from).toString(2);
+        BigInteger part = key.getPart(from);
+        if (bits <= TransformationKernels.MAX_EXTRACTED_BITS && TransformationKernels.isSupported(part)) {
+            return bitsToString(TransformationKernels.leastSignificantBits(part, skip, bits), bits);
+        }
+        String partBinary = part.toString(2);
         return partBinary.substring(partBinary.length() - bits - skip, partBinary.length() - skip);
     }
+
+    @Override
+    public int getCodeBits() {
+        return bits <= 62 ? bits : -1;
+    }
+
+    @Override
+    public long transformToCode(RSAKey key) {
+        BigInteger part = key.getPart(from);
+        if (!TransformationKernels.isSupported(part)) {
+            throw new IllegalArgumentException("Negative part of key does not have a code");
+        }
+        return TransformationKernels.leastSignificantBits(part, skip, bits);
+    }
+
+    @Override
+    public boolean supportsModulusHexCode() {
+        return from == RSAKey.PART.N && getCodeBits() >= 0;
+    }
+
+    @Override
+    public long modulusHexToCode(CharSequence modulusHex) {
+        return TransformationKernels.hexLeastSignificantBits(modulusHex, skip, bits);
+    }
+
+    @Override
+    public String codeToString(long code) {
+        return bitsToString(code, bits);
+    }
+
+    @Override
+    public long stringToCode(String identificationPart) {
+        return stringToBits(identificationPart, bits);
+    }
 }
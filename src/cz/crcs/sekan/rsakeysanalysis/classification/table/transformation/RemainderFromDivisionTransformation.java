@@ -23,6 +23,49 @@ public class RemainderFromDivisionTransformation extends Transformation {
 
     @Override
     public String transform(RSAKey key) {
-        return key.getPart(from).mod(BigInteger.valueOf(divisor)).toString(10);
+        BigInteger part = key.getPart(from);
+        if (divisor > 0 && TransformationKernels.isSupported(part)) {
+            return Long.toString(TransformationKernels.remainder(part, divisor));
+        }
+        return part.mod(BigInteger.valueOf(divisor)).toString(10);
+    }
+
+    @Override
+    public int getCodeBits() {
+        return divisor > 0 ? 32 - Integer.numberOfLeadingZeros(divisor - 1) : -1;
+    }
+
+    @Override
+    public long transformToCode(RSAKey key) {
+        BigInteger part = key.getPart(from);
+        if (TransformationKernels.isSupported(part)) {
+            return TransformationKernels.remainder(part, divisor);
+        }
+        return part.mod(BigInteger.valueOf(divisor)).longValue();
+    }
+
+    @Override
+    public boolean supportsModulusHexCode() {
+        return from == RSAKey.PART.N && divisor > 0;
+    }
+
+    @Override
+    public long modulusHexToCode(CharSequence modulusHex) {
+        return TransformationKernels.hexRemainder(modulusHex, divisor);
+    }
+
+    @Override
+    public String codeToString(long code) {
+        return Long.toString(code);
+    }
+
+    @Override
+    public long stringToCode(String identificationPart) {
+        try {
+            long code = Long.parseLong(identificationPart);
+            return code >= 0 && code < divisor && Long.toString(code).equals(identificationPart) ? code : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 }
@@ -5,8 +5,14 @@ import cz.crcs.sekan.rsakeysanalysis.classification.table.transformation.excepti
 import cz.crcs.sekan.rsakeysanalysis.classification.table.transformation.exception.WrongTransformationFormatException;
 import cz.crcs.sekan.rsakeysanalysis.common.RSAKey;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
 
 import java.lang.reflect.Constructor;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * @author Peter Sekan, peter.sekan@mail.muni.cz
@@ -48,6 +54,121 @@ public abstract class Transformation {
      */
     public abstract String transform(RSAKey key);
 
+    /**
+     * @return number of bits of codes of identification parts (see transformToCode),
+     * -1 if the transformation does not support codes
+     */
+    public int getCodeBits() {
+        return -1;
+    }
+
+    /**
+     * Transform part of key to the code of identification part, which is packed to mask codes
+     * @param key rsa key
+     * @return code of identification part, less than 2^getCodeBits()
+     */
+    public long transformToCode(RSAKey key) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support codes");
+    }
+
+    /**
+     * @return true if the code can be computed from hexadecimal digits of the modulus (see modulusHexToCode)
+     */
+    public boolean supportsModulusHexCode() {
+        return false;
+    }
+
+    /**
+     * Transform hexadecimal digits of the modulus to the code of identification part, the same as
+     * returned by transformToCode, without parsing the modulus
+     * @param modulusHex hexadecimal digits of the modulus
+     * @return code of identification part
+     */
+    public long modulusHexToCode(CharSequence modulusHex) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support hexadecimal codes");
+    }
+
+    /**
+     * @param code code of identification part
+     * @return identification part, the same as returned by transform for the key with the code
+     */
+    public String codeToString(long code) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support codes");
+    }
+
+    /**
+     * @param identificationPart identification part
+     * @return code of the identification part, -1 if the transformation cannot produce the identification part
+     */
+    public long stringToCode(String identificationPart) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support codes");
+    }
+
+    /**
+     * @param code code of bits
+     * @param bits number of bits
+     * @return the bits as a binary string, most significant first
+     */
+    protected static String bitsToString(long code, int bits) {
+        char[] chars = new char[bits];
+        for (int i = 0; i < bits; i++) {
+            chars[bits - 1 - i] = ((code >>> i) & 1) != 0 ? '1' : '0';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @param identificationPart binary string, most significant bit first
+     * @param bits expected number of bits
+     * @return code of the bits, -1 if the string is not a binary string of the length
+     */
+    protected static long stringToBits(String identificationPart, int bits) {
+        if (identificationPart.length() != bits) return -1;
+        long code = 0;
+        for (int i = 0; i < bits; i++) {
+            char c = identificationPart.charAt(i);
+            if (c != '0' && c != '1') return -1;
+            code = (code << 1) | (c - '0');
+        }
+        return code;
+    }
+
+    /**
+     * @return parts of rsa key which are transformed to identification part
+     */
+    public Set<RSAKey.PART> getTransformedParts() {
+        return EnumSet.of(from);
+    }
+
+    /**
+     * @return canonical description of the transformation (class, part of key and options with sorted keys),
+     * transformations with equal definitions produce the same identification parts
+     */
+    public String getDefinition() {
+        return getClass().getSimpleName() + "(" + from + ")" + canonicalJson(options);
+    }
+
+    private static String canonicalJson(Object value) {
+        if (value instanceof Map) {
+            StringBuilder builder = new StringBuilder("{");
+            for (Map.Entry<?, ?> entry : new TreeMap<>((Map<?, ?>) value).entrySet()) {
+                if (builder.length() > 1) builder.append(',');
+                builder.append(JSONValue.toJSONString(String.valueOf(entry.getKey())))
+                        .append(':').append(canonicalJson(entry.getValue()));
+            }
+            return builder.append('}').toString();
+        }
+        if (value instanceof List) {
+            StringBuilder builder = new StringBuilder("[");
+            for (Object element : (List<?>) value) {
+                if (builder.length() > 1) builder.append(',');
+                builder.append(canonicalJson(element));
+            }
+            return builder.append(']').toString();
+        }
+        return JSONValue.toJSONString(value);
+    }
+
     /**
      * Create transformation object from identification part json object
      * @param identificationPart json object
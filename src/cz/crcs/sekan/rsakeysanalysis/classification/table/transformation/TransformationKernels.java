@@ -0,0 +1,207 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.table.transformation;
+
+import java.math.BigInteger;
+
+/**
+ * Kernels of transformations working on the magnitude of non-negative parts of keys without creating
+ * intermediate BigIntegers or strings. Bits are extracted by testBit and bitLength (constant time for BigInteger),
+ * remainders by small divisors are computed by folding 32-bit words of the magnitude.
+ * Kernels on hexadecimal digits compute the same values directly from the text of a number
+ * (e.g., the modulus in a data set), without parsing it to a BigInteger.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public final class TransformationKernels {
+
+    /**
+     * Maximal number of bits extracted to a long
+     */
+    public static final int MAX_EXTRACTED_BITS = 63;
+
+    private TransformationKernels() {
+    }
+
+    /**
+     * @param value non-negative number
+     * @param lowest position of the lowest extracted bit
+     * @param count number of extracted bits, at most MAX_EXTRACTED_BITS
+     * @return the bits, bit at position lowest is the least significant bit of the result
+     */
+    public static long extractBits(BigInteger value, int lowest, int count) {
+        long bits = 0;
+        for (int i = lowest + count - 1; i >= lowest; i--) {
+            bits = (bits << 1) | (value.testBit(i) ? 1 : 0);
+        }
+        return bits;
+    }
+
+    /**
+     * The same bits as in value.toString(2).substring(skip, skip + count)
+     * @param value non-negative number
+     * @param skip number of skipped most significant bits
+     * @param count number of extracted bits, at most MAX_EXTRACTED_BITS
+     * @return the bits
+     * @throws IndexOutOfBoundsException the number is shorter than skip + count bits
+     */
+    public static long mostSignificantBits(BigInteger value, int skip, int count) {
+        int length = binaryLength(value);
+        if (skip < 0 || length < skip + count) {
+            throw new IndexOutOfBoundsException("Number of " + length + " bits is too short for "
+                    + (skip + count) + " most significant bits");
+        }
+        return extractBits(value, length - skip - count, count);
+    }
+
+    /**
+     * The same bits as in value.toString(2) without the last skip bits, count bits from the end
+     * @param value non-negative number
+     * @param skip number of skipped least significant bits
+     * @param count number of extracted bits, at most MAX_EXTRACTED_BITS
+     * @return the bits
+     * @throws IndexOutOfBoundsException the number is shorter than skip + count bits
+     */
+    public static long leastSignificantBits(BigInteger value, int skip, int count) {
+        int length = binaryLength(value);
+        if (skip < 0 || length < skip + count) {
+            throw new IndexOutOfBoundsException("Number of " + length + " bits is too short for "
+                    + (skip + count) + " least significant bits");
+        }
+        return extractBits(value, skip, count);
+    }
+
+    /**
+     * @param value non-negative number
+     * @return number of digits of value.toString(2)
+     */
+    public static int binaryLength(BigInteger value) {
+        return Math.max(1, value.bitLength());
+    }
+
+    /**
+     * @param value non-negative number
+     * @return magnitude of the number as 32-bit words, the most significant word first
+     */
+    public static int[] magnitude(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        int start = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+        int byteCount = bytes.length - start;
+        int[] words = new int[(byteCount + 3) / 4];
+        // the first word takes the bytes which do not fill a whole word
+        int index = start;
+        for (int word = 0; word < words.length; word++) {
+            int wordBytes = word == 0 && byteCount % 4 != 0 ? byteCount % 4 : 4;
+            int w = 0;
+            for (int i = 0; i < wordBytes; i++) w = (w << 8) | (bytes[index++] & 0xFF);
+            words[word] = w;
+        }
+        return words;
+    }
+
+    /**
+     * @param magnitude magnitude of a non-negative number (see magnitude)
+     * @param divisor positive divisor
+     * @return remainder of the number after division by the divisor
+     */
+    public static long remainder(int[] magnitude, int divisor) {
+        long remainder = 0;
+        for (int word : magnitude) {
+            // remainder < 2^31, so the shifted remainder with the word fits into a long
+            remainder = ((remainder << 32) | (word & 0xFFFFFFFFL)) % divisor;
+        }
+        return remainder;
+    }
+
+    /**
+     * @param value non-negative number
+     * @param divisor positive divisor
+     * @return value.mod(divisor)
+     */
+    public static long remainder(BigInteger value, int divisor) {
+        if ((divisor & (divisor - 1)) == 0) {
+            return extractBits(value, 0, Integer.numberOfTrailingZeros(divisor));
+        }
+        return remainder(magnitude(value), divisor);
+    }
+
+    /**
+     * @param value number
+     * @return true if the kernels can be used for the number
+     */
+    public static boolean isSupported(BigInteger value) {
+        return value.signum() >= 0;
+    }
+
+    /**
+     * @param hex hexadecimal digits of a non-negative number, may have leading zeros
+     * @return number of digits of the number in binary (as value.toString(2))
+     */
+    public static int hexBinaryLength(CharSequence hex) {
+        int first = 0;
+        while (first < hex.length() - 1 && Character.digit(hex.charAt(first), 16) == 0) first++;
+        int firstDigit = Character.digit(hex.charAt(first), 16);
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(firstDigit) + 4 * (hex.length() - first - 1));
+    }
+
+    /**
+     * @param hex hexadecimal digits of a non-negative number
+     * @param lowest position of the lowest extracted bit
+     * @param count number of extracted bits, at most MAX_EXTRACTED_BITS
+     * @return the bits, bit at position lowest is the least significant bit of the result
+     */
+    public static long hexExtractBits(CharSequence hex, int lowest, int count) {
+        long bits = 0;
+        int length = hex.length();
+        for (int i = lowest + count - 1; i >= lowest; i--) {
+            int digitIndex = length - 1 - (i >>> 2);
+            int digit = digitIndex >= 0 ? Character.digit(hex.charAt(digitIndex), 16) : 0;
+            bits = (bits << 1) | ((digit >>> (i & 3)) & 1);
+        }
+        return bits;
+    }
+
+    /**
+     * @see #mostSignificantBits(BigInteger, int, int)
+     */
+    public static long hexMostSignificantBits(CharSequence hex, int skip, int count) {
+        int length = hexBinaryLength(hex);
+        if (skip < 0 || length < skip + count) {
+            throw new IndexOutOfBoundsException("Number of " + length + " bits is too short for "
+                    + (skip + count) + " most significant bits");
+        }
+        return hexExtractBits(hex, length - skip - count, count);
+    }
+
+    /**
+     * @see #leastSignificantBits(BigInteger, int, int)
+     */
+    public static long hexLeastSignificantBits(CharSequence hex, int skip, int count) {
+        int length = hexBinaryLength(hex);
+        if (skip < 0 || length < skip + count) {
+            throw new IndexOutOfBoundsException("Number of " + length + " bits is too short for "
+                    + (skip + count) + " least significant bits");
+        }
+        return hexExtractBits(hex, skip, count);
+    }
+
+    /**
+     * @param hex hexadecimal digits of a non-negative number
+     * @param divisor positive divisor
+     * @return remainder of the number after division by the divisor
+     */
+    public static long hexRemainder(CharSequence hex, int divisor) {
+        if ((divisor & (divisor - 1)) == 0) {
+            return hexExtractBits(hex, 0, Integer.numberOfTrailingZeros(divisor));
+        }
+        long remainder = 0;
+        if (15 % divisor == 0) {
+            // 16 = 1 (mod divisor), the number is congruent to the sum of its digits
+            for (int i = 0; i < hex.length(); i++) remainder += Character.digit(hex.charAt(i), 16);
+            return remainder % divisor;
+        }
+        for (int i = 0; i < hex.length(); i++) {
+            remainder = ((remainder << 4) | Character.digit(hex.charAt(i), 16)) % divisor;
+        }
+        return remainder;
+    }
+}
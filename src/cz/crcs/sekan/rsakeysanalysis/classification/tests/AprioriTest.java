@@ -2,6 +2,9 @@ package cz.crcs.sekan.rsakeysanalysis.classification.tests;
 
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.Classification;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.ClassificationConfiguration;
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.ArrayMaskFrequencyCounter;
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.ConcurrentMaskFrequencyCounter;
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.MaskFrequencyCounter;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.NonNegativeLeastSquaresFitPriorProbabilityEstimator;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.PriorProbability;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.PriorProbabilityEstimator;
@@ -10,11 +13,13 @@ import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset.NoActionDa
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.exception.DataSetException;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.statistics.BatchStatistic;
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.statistics.BatchesStatisticsAggregator;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKeyStub;
 import cz.crcs.sekan.rsakeysanalysis.classification.key.property.SourcePropertyExtractor;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationRow;
 import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
 import cz.crcs.sekan.rsakeysanalysis.classification.tests.util.DataType;
 import cz.crcs.sekan.rsakeysanalysis.classification.tests.util.DistributionsComparator;
+import cz.crcs.sekan.rsakeysanalysis.classification.tests.util.MultinomialHistogramSimulator;
 import cz.crcs.sekan.rsakeysanalysis.classification.tests.util.SimulatedDataSetIterator;
 import cz.crcs.sekan.rsakeysanalysis.common.ExtendedWriter;
 import cz.crcs.sekan.rsakeysanalysis.common.exception.NotImplementedException;
@@ -150,9 +155,10 @@ public class AprioriTest {
                     estimator.setMaskToFrequency(simulatedStatistic);
                     break;
                 case SIMULATION:
-                    SimulatedDataSetIterator iterator = SimulatedDataSetIterator
-                            .fromClassificationTable(tableForSimulation.makeCopy(), randomProbability.makeCopy(), sampleSize, random);
-                    while (iterator.hasNext()) estimator.addMask(iterator.next().getIdentification());
+                    // only the histogram of masks is needed, keys are not simulated (see SimulatedDataSetIterator)
+                    estimator.setMaskToFrequency(MultinomialHistogramSimulator
+                            .fromClassificationTable(tableForSimulation, randomProbability)
+                            .simulate(sampleSize, random));
                     break;
                 case REAL:
                     // TODO
@@ -465,6 +471,54 @@ public class AprioriTest {
         return classificationStatistic;
     }
 
+    /**
+     * This test checks that masks counted by multiple threads in the concurrent counter add up to the masks
+     * counted by a single thread (keyCount keys per thread, masks of the table and masks unknown to the table)
+     */
+    public static void testConcurrentMaskCounter(ClassificationConfiguration configuration)
+            throws NoSuchAlgorithmException, InterruptedException {
+        SecureRandom random = configuration.configureRandom();
+        System.out.println("Experiment seed: " + configuration.rngSeed);
+        ClassificationTable table = configuration.classificationTable;
+        List<String> masks = table.getMasks();
+        int threadCount = Math.max(2, configuration.threads);
+
+        MaskFrequencyCounter expected = new ArrayMaskFrequencyCounter(table);
+        MaskFrequencyCounter concurrent = new ConcurrentMaskFrequencyCounter(table);
+        List<List<ClassificationKeyStub>> stubsOfThreads = new ArrayList<>(threadCount);
+        for (int thread = 0; thread < threadCount; thread++) {
+            List<ClassificationKeyStub> stubs = new ArrayList<>(configuration.keyCount);
+            for (int key = 0; key < configuration.keyCount; key++) {
+                ClassificationKeyStub stub;
+                if (random.nextInt(10) == 0) {
+                    stub = ClassificationKeyStub.fromMask("unknown " + random.nextInt(masks.size()), -1, 1);
+                } else {
+                    String mask = masks.get(random.nextInt(masks.size()));
+                    stub = ClassificationKeyStub.fromMask(mask, table.getMaskId(mask), 1);
+                }
+                stubs.add(stub);
+                expected.add(stub);
+            }
+            stubsOfThreads.add(stubs);
+        }
+
+        List<Thread> threads = new ArrayList<>(threadCount);
+        for (List<ClassificationKeyStub> stubs : stubsOfThreads) {
+            threads.add(new Thread(() -> stubs.forEach(concurrent::add)));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        Map<String, Long> expectedCounts = new TreeMap<>();
+        expected.drain(expectedCounts::put);
+        Map<String, Long> concurrentCounts = new TreeMap<>();
+        concurrent.drain(concurrentCounts::put);
+        long total = concurrentCounts.values().stream().mapToLong(Long::longValue).sum();
+        System.out.println(String.format("Threads: %d, keys: %d, counted: %d, masks: %d, counts %s", threadCount,
+                (long) threadCount * configuration.keyCount, total, concurrentCounts.size(),
+                expectedCounts.equals(concurrentCounts) ? "match" : "DO NOT MATCH"));
+    }
+
     private static ClassificationTable addRandomGroupToTable(ClassificationTable table, Random random) {
         List<String> masks = table.getMasks();
         List<BigDecimal> probabilities = new ArrayList<>(masks.size());
@@ -12,10 +12,14 @@ import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static cz.crcs.sekan.rsakeysanalysis.classification.algorithm.Classification.BatchType.MODULUS_HASH;
 
@@ -42,8 +46,24 @@ public class ClassificationSuccessTest {
         builder.build().classify();
     }
 
+    /**
+     * Result of one simulated classification
+     */
+    private static class Trial {
+        private List<Double> differences;
+        private ClassificationSuccessStatistic statistic;
+        private DecimalFormat formatter;
+    }
+
+    /**
+     * Trials for all noise levels, distributions and repetitions run as independent tasks, each with its own
+     * random generator derived from the seed, noise level, distribution and repetition. The results are merged
+     * in the order of the sequential loops, so they do not depend on the number of threads.
+     */
     public static void overallSuccess(ClassificationConfiguration originalConfiguration) throws NoSuchAlgorithmException, IOException, DataSetException {
-        SecureRandom random = originalConfiguration.configureRandom();
+        // sets the seed, if it was not configured
+        originalConfiguration.configureRandom();
+        long seed = originalConfiguration.rngSeed;
 
         int repetitionCount = 100; // TODO
 
@@ -75,142 +95,101 @@ public class ClassificationSuccessTest {
         }
 
         List<String> groupNames = new ArrayList<>(originalConfiguration.classificationTable.getGroupsNames());
-
-        for (double randomNoise : noiseLevels) {
-
-            for (PriorProbability.Distribution distribution : PriorProbability.Distribution.values()) {
-
-                PriorProbability trialWeigh = new PriorProbability();
-                Map<String, ClassificationSuccessStatistic> statistics = new HashMap<>();
-
-                DecimalFormat formatter = null;
-
-                List<Double> worstDifferences = new ArrayList<>(repetitionCount);
-
-                DescriptiveStatistics allDifferences = new DescriptiveStatistics();
-
-                for (Integer i = 0; i < repetitionCount; i++) {
-                    ClassificationConfiguration configuration = originalConfiguration.deepCopy();
-                    ClassificationTable table = configuration.classificationTable.makeCopy();
-
-                    ClassificationTable tableForSimulation = table.makeCopy();
-
-                    PriorProbability randomProbability;
-
-                    switch (distribution) {
-                        case EVEN:
-                            randomProbability = PriorProbability.uniformProbability(groupNames);
-                            break;
-                        case UNIFORM:
-                            randomProbability = PriorProbability.randomize(random, groupNames);
-                            break;
-                        case GEOMETRIC:
-                            randomProbability = PriorProbability.randomizeGeometric(random, groupNames,
-                                    BigDecimal.valueOf(0.5), BigDecimal.valueOf(0.025));
-                            break;
-                        case CUSTOM:
-                            randomProbability = PriorProbability.randomizeFromPrior(random, tlsProbability,
-                                    BigDecimal.valueOf(0.03));
-                            break;
-                        default:
-                            throw new RuntimeException("Bad distribution type");
+        PriorProbability.Distribution[] distributions = PriorProbability.Distribution.values();
+
+        ForkJoinPool pool = new ForkJoinPool(originalConfiguration.getParallelism());
+        List<List<List<ForkJoinTask<Trial>>>> tasks = new ArrayList<>(noiseLevels.size());
+        try {
+            for (int noiseIndex = 0; noiseIndex < noiseLevels.size(); noiseIndex++) {
+                List<List<ForkJoinTask<Trial>>> noiseTasks = new ArrayList<>(distributions.length);
+                for (PriorProbability.Distribution distribution : distributions) {
+                    List<ForkJoinTask<Trial>> distributionTasks = new ArrayList<>(repetitionCount);
+                    for (int i = 0; i < repetitionCount; i++) {
+                        double randomNoise = noiseLevels.get(noiseIndex);
+                        Random random = trialRandom(seed, noiseIndex, distribution.ordinal(), i);
+                        distributionTasks.add(pool.submit(() -> runTrial(originalConfiguration, groupNames,
+                                tlsProbability, randomNoise, distribution, random)));
                     }
+                    noiseTasks.add(distributionTasks);
+                }
+                tasks.add(noiseTasks);
+            }
 
-                    configuration.batchType = MODULUS_HASH;
+            for (int noiseIndex = 0; noiseIndex < noiseLevels.size(); noiseIndex++) {
+                double randomNoise = noiseLevels.get(noiseIndex);
 
-                    configuration.makeOutputs = false;
+                for (PriorProbability.Distribution distribution : distributions) {
 
-                    Classification.Builder builder = Classification.BuildHelper.prepareBuilder(configuration, null);
+                    PriorProbability trialWeigh = new PriorProbability();
+                    Map<String, ClassificationSuccessStatistic> statistics = new HashMap<>();
 
-                    int sampleSize = configuration.keyCount;
+                    DecimalFormat formatter = null;
 
-                    ClassificationSuccessStatisticsAggregator aggregator = new ClassificationSuccessStatisticsAggregator(
-                            new ArrayList<String>(tableForSimulation.getGroupsNames()),
-                            configuration.outputFolderPath, configuration.rngSeed);
+                    List<Double> worstDifferences = new ArrayList<>(repetitionCount);
 
-                    PriorProbability randomProbabilityWithNoise = randomProbability.makeCopy();
+                    DescriptiveStatistics allDifferences = new DescriptiveStatistics();
 
-                    if (randomNoise > 0d) {
-                        tableForSimulation = addRandomGroupToTable(tableForSimulation, random);
-                        randomProbabilityWithNoise.put(INTERCEPT_GROUP_NAME,
-                                BigDecimal.valueOf(randomNoise / (1 - randomNoise)));
-                        randomProbabilityWithNoise = randomProbabilityWithNoise.normalized();
-                    }
+                    for (Integer i = 0; i < repetitionCount; i++) {
+                        Trial trial = joinTrial(tasks.get(noiseIndex).get(distribution.ordinal()).get(i));
 
-                    builder.setDataSetIterator(SimulatedDataSetIterator.fromClassificationTable(tableForSimulation,
-                            randomProbabilityWithNoise, sampleSize, random));
-                    builder.setStatisticsAggregator(aggregator);
-                    builder.setPriorProbabilityEstimator(new NonNegativeLeastSquaresFitPriorProbabilityEstimator(table.makeCopy()));
-                    //builder.setPriorProbabilityEstimator(new UniformPriorProbabilityEstimator(table.makeCopy()));
-                    //builder.setPriorProbabilityEstimator(new UserDefinedPriorProbabilityEstimator(randomProbability));
-                    PriorProbabilityEstimator priorProbabilityEstimator = builder.build().classify();
+                        if (trial.differences != null) {
+                            trial.differences.forEach(allDifferences::addValue);
+                            double largestDifference = trial.differences.stream().max(Double::compare).orElseGet(() -> 1d);
 
-                    PriorProbability estimatedProbability = priorProbabilityEstimator.computePriorProbability();
+                            worstDifferences.add(largestDifference);
+                        } else {
+                            System.err.println("Failed to compute difference of distributions");
+                        }
 
-                    List<Double> differences = DistributionsComparator.allDifferences(
-                            randomProbability.toDoubleArray(groupNames), estimatedProbability.toDoubleArray(groupNames));
+                        formatter = trial.formatter;
 
-                    if (differences != null) {
-                        differences.forEach(allDifferences::addValue);
-                        double largestDifference = differences.stream().max(Double::compare).orElseGet(() -> 1d);
-
-                        worstDifferences.add(largestDifference);
-                    } else {
-                        System.err.println("Failed to compute difference of distributions");
+                        trialWeigh.put(i.toString(), BigDecimal.ONE);
+                        statistics.put(i.toString(), trial.statistic);
                     }
 
-                    formatter = aggregator.getFormatter();
+                    System.out.println(String.format("Type of distribution: %s; Random noise: %1.4f", distribution, randomNoise));
 
-                    ClassificationSuccessStatistic statistic =
-                            ClassificationSuccessStatistic.weighedAverage(
-                                    aggregator.getGroupNameToStatistic(),
-                                    randomProbabilityWithNoise, // comparing to the probability with noise, the noise should have always worst guess
-                                    groupNames.size() + 1, true);
+                    ClassificationSuccessStatistic finalStatistic =
+                            ClassificationSuccessStatistic.weighedAverage(statistics, trialWeigh, groupNames.size() + 1, true);
+                    System.out.println(ClassificationSuccessStatistic.toRowStatistic(
+                            "Weighed average  ", finalStatistic.toProbability(groupNames.size() + 1, true), formatter, ","));
+                    System.out.println(ClassificationSuccessStatistic.toRowStatistic(
+                            "Cumulated average", finalStatistic.toCumulativeDistribution(groupNames.size() + 1, true), formatter, ","));
 
-                    trialWeigh.put(i.toString(), BigDecimal.ONE);
-                    statistics.put(i.toString(), statistic);
-                }
+                    successStatistics.get(distribution).put(randomNoise, finalStatistic);
 
-                System.out.println(String.format("Type of distribution: %s; Random noise: %1.4f", distribution, randomNoise));
 
-                ClassificationSuccessStatistic finalStatistic =
-                        ClassificationSuccessStatistic.weighedAverage(statistics, trialWeigh, groupNames.size() + 1, true);
-                System.out.println(ClassificationSuccessStatistic.toRowStatistic(
-                        "Weighed average  ", finalStatistic.toProbability(groupNames.size() + 1, true), formatter, ","));
-                System.out.println(ClassificationSuccessStatistic.toRowStatistic(
-                        "Cumulated average", finalStatistic.toCumulativeDistribution(groupNames.size() + 1, true), formatter, ","));
-
-                successStatistics.get(distribution).put(randomNoise, finalStatistic);
+                    double worstDifference = worstDifferences.stream().max(Double::compare).orElseGet(() -> 1d);
 
+                    DescriptiveStatistics diffStatistics = new DescriptiveStatistics();
+                    worstDifferences.forEach(diffStatistics::addValue);
+                    System.out.println("Worst differences for each run:");
+                    System.out.print(String.format("mean=%1.3f;", diffStatistics.getMean()));
+                    StringBuilder builder = new StringBuilder();
+                    int percentileStep = 5;
+                    for (int percentile = percentileStep; percentile <= 100; percentile += percentileStep) {
+                        builder.append(String.format("%1.3f;", diffStatistics.getPercentile(percentile)));
+                    }
+                    System.out.println(builder.toString());
 
-                double worstDifference = worstDifferences.stream().max(Double::compare).orElseGet(() -> 1d);
+                    expectedWorstDifferences.get(distribution).put(randomNoise, diffStatistics.getMean());
 
-                DescriptiveStatistics diffStatistics = new DescriptiveStatistics();
-                worstDifferences.forEach(diffStatistics::addValue);
-                System.out.println("Worst differences for each run:");
-                System.out.print(String.format("mean=%1.3f;", diffStatistics.getMean()));
-                StringBuilder builder = new StringBuilder();
-                int percentileStep = 5;
-                for (int percentile = percentileStep; percentile <= 100; percentile += percentileStep) {
-                    builder.append(String.format("%1.3f;", diffStatistics.getPercentile(percentile)));
-                }
-                System.out.println(builder.toString());
 
-                expectedWorstDifferences.get(distribution).put(randomNoise, diffStatistics.getMean());
+                    System.out.println("All differences across all runs:");
+                    System.out.print(String.format("mean=%1.3f;", allDifferences.getMean()));
+                    builder = new StringBuilder();
+                    for (int percentile = percentileStep; percentile <= 100; percentile += percentileStep) {
+                        builder.append(String.format("%1.3f;", allDifferences.getPercentile(percentile)));
+                    }
+                    System.out.println(builder.toString());
 
+                    expectedDifferences.get(distribution).put(randomNoise, allDifferences.getMean());
 
-                System.out.println("All differences across all runs:");
-                System.out.print(String.format("mean=%1.3f;", allDifferences.getMean()));
-                builder = new StringBuilder();
-                for (int percentile = percentileStep; percentile <= 100; percentile += percentileStep) {
-                    builder.append(String.format("%1.3f;", allDifferences.getPercentile(percentile)));
+                    System.out.println(String.format("worst case: %1.3f", allDifferences.getMax()));
                 }
-                System.out.println(builder.toString());
-
-                expectedDifferences.get(distribution).put(randomNoise, allDifferences.getMean());
-
-                System.out.println(String.format("worst case: %1.3f", allDifferences.getMax()));
             }
+        } finally {
+            pool.shutdownNow();
         }
 
         System.out.println();
@@ -263,6 +242,107 @@ public class ClassificationSuccessTest {
         }
     }
 
+    private static Trial runTrial(ClassificationConfiguration originalConfiguration, List<String> groupNames,
+                                  PriorProbability tlsProbability, double randomNoise,
+                                  PriorProbability.Distribution distribution, Random random)
+            throws IOException, DataSetException {
+        ClassificationConfiguration configuration = originalConfiguration.deepCopy();
+        ClassificationTable table = configuration.classificationTable.makeCopy();
+
+        ClassificationTable tableForSimulation = table.makeCopy();
+
+        PriorProbability randomProbability;
+
+        switch (distribution) {
+            case EVEN:
+                randomProbability = PriorProbability.uniformProbability(groupNames);
+                break;
+            case UNIFORM:
+                randomProbability = PriorProbability.randomize(random, groupNames);
+                break;
+            case GEOMETRIC:
+                randomProbability = PriorProbability.randomizeGeometric(random, groupNames,
+                        BigDecimal.valueOf(0.5), BigDecimal.valueOf(0.025));
+                break;
+            case CUSTOM:
+                randomProbability = PriorProbability.randomizeFromPrior(random, tlsProbability,
+                        BigDecimal.valueOf(0.03));
+                break;
+            default:
+                throw new RuntimeException("Bad distribution type");
+        }
+
+        configuration.batchType = MODULUS_HASH;
+
+        configuration.makeOutputs = false;
+
+        Classification.Builder builder = Classification.BuildHelper.prepareBuilder(configuration, null);
+
+        int sampleSize = configuration.keyCount;
+
+        // trials run in parallel, their results are not saved
+        ClassificationSuccessStatisticsAggregator aggregator = new ClassificationSuccessStatisticsAggregator(
+                new ArrayList<String>(tableForSimulation.getGroupsNames()),
+                null, configuration.rngSeed);
+
+        PriorProbability randomProbabilityWithNoise = randomProbability.makeCopy();
+
+        if (randomNoise > 0d) {
+            tableForSimulation = addRandomGroupToTable(tableForSimulation, random);
+            randomProbabilityWithNoise.put(INTERCEPT_GROUP_NAME,
+                    BigDecimal.valueOf(randomNoise / (1 - randomNoise)));
+            randomProbabilityWithNoise = randomProbabilityWithNoise.normalized();
+        }
+
+        builder.setDataSetIterator(SimulatedDataSetIterator.fromClassificationTable(tableForSimulation,
+                randomProbabilityWithNoise, sampleSize, random));
+        builder.setStatisticsAggregator(aggregator);
+        // the trials already run in parallel
+        builder.setParallelism(1);
+        builder.setPriorProbabilityEstimator(new NonNegativeLeastSquaresFitPriorProbabilityEstimator(table.makeCopy()));
+        //builder.setPriorProbabilityEstimator(new UniformPriorProbabilityEstimator(table.makeCopy()));
+        //builder.setPriorProbabilityEstimator(new UserDefinedPriorProbabilityEstimator(randomProbability));
+        PriorProbabilityEstimator priorProbabilityEstimator = builder.build().classify();
+
+        PriorProbability estimatedProbability = priorProbabilityEstimator.computePriorProbability();
+
+        Trial trial = new Trial();
+        trial.differences = DistributionsComparator.allDifferences(
+                randomProbability.toDoubleArray(groupNames), estimatedProbability.toDoubleArray(groupNames));
+
+        trial.formatter = aggregator.getFormatter();
+
+        trial.statistic = ClassificationSuccessStatistic.weighedAverage(
+                aggregator.getGroupNameToStatistic(),
+                randomProbabilityWithNoise, // comparing to the probability with noise, the noise should have always worst guess
+                groupNames.size() + 1, true);
+        return trial;
+    }
+
+    /**
+     * @return random generator of one trial, the same for the same seed and indices
+     */
+    private static Random trialRandom(long seed, int noiseIndex, int distributionIndex, int repetition)
+            throws NoSuchAlgorithmException {
+        SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+        random.setSeed(ByteBuffer.allocate(Long.BYTES + 3 * Integer.BYTES)
+                .putLong(seed).putInt(noiseIndex).putInt(distributionIndex).putInt(repetition).array());
+        return random;
+    }
+
+    private static Trial joinTrial(ForkJoinTask<Trial> task) throws IOException, DataSetException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataSetException("Simulation was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof DataSetException) throw (DataSetException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     public static void groupSuccess(ClassificationConfiguration originalConfiguration) throws NoSuchAlgorithmException, IOException, DataSetException {
         SecureRandom random = originalConfiguration.configureRandom();
 
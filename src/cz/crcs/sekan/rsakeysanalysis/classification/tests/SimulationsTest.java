@@ -0,0 +1,116 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.tests;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.ClassificationConfiguration;
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.PriorProbability;
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+import cz.crcs.sekan.rsakeysanalysis.classification.tests.util.AliasSampleGenerator;
+import cz.crcs.sekan.rsakeysanalysis.classification.tests.util.DistributionsComparator;
+import cz.crcs.sekan.rsakeysanalysis.classification.tests.util.SampleGenerator;
+import org.apache.commons.math3.stat.inference.ChiSquareTest;
+
+import java.math.BigDecimal;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.*;
+
+/**
+ * Checks that the alias sampler used by the simulators draws from the same distributions as the reference
+ * SampleGenerator: masks of each group of the table and groups of a random prior probability are sampled by both,
+ * the counts are compared to each other and to the expected distribution by chi-square tests.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class SimulationsTest {
+
+    private static final int DEFAULT_SAMPLE_SIZE = 1000000;
+
+    private static final double CONFIDENCE = 0.99;
+
+    public static void testSimulators(ClassificationConfiguration configuration) throws NoSuchAlgorithmException {
+        SecureRandom random = configuration.configureRandom();
+        System.out.println("Experiment seed: " + configuration.rngSeed);
+        SplittableRandom splittableRandom = new SplittableRandom(random.nextLong());
+
+        int sampleSize = configuration.keyCount > 0 ? configuration.keyCount : DEFAULT_SAMPLE_SIZE;
+        ClassificationTable table = configuration.classificationTable;
+        List<String> masks = table.getMasks();
+        List<String> groupNames = new ArrayList<>(table.getGroupsNames());
+
+        System.out.println("Distribution;Samples;ReferenceMs;AliasMs;ReferenceVsAlias;ReferenceVsExpected;AliasVsExpected;Conclusion");
+
+        for (String groupName : groupNames) {
+            List<BigDecimal> probabilities = new ArrayList<>(masks.size());
+            for (String mask : masks) {
+                probabilities.add(table.classifyIdentification(mask).getValues().getOrDefault(groupName, BigDecimal.ZERO));
+            }
+            compareSamplers(groupName, probabilities, sampleSize, random, splittableRandom);
+        }
+
+        PriorProbability priorProbability = PriorProbability.randomize(random, groupNames);
+        List<BigDecimal> groupProbabilities = new ArrayList<>(groupNames.size());
+        for (String groupName : groupNames) {
+            groupProbabilities.add(priorProbability.getGroupProbability(groupName));
+        }
+        compareSamplers("Random prior", groupProbabilities, sampleSize, random, splittableRandom);
+    }
+
+    private static void compareSamplers(String name, List<BigDecimal> probabilities, int sampleSize,
+                                        Random random, SplittableRandom splittableRandom) {
+        List<Integer> indices = new ArrayList<>(probabilities.size());
+        for (int i = 0; i < probabilities.size(); i++) indices.add(i);
+
+        SampleGenerator<Integer> reference = new SampleGenerator<>(indices, probabilities);
+        AliasSampleGenerator<Integer> alias = new AliasSampleGenerator<>(indices, probabilities);
+
+        long[] referenceCounts = new long[indices.size()];
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < sampleSize; i++) {
+            referenceCounts[reference.getRandomSample(BigDecimal.valueOf(random.nextDouble()))]++;
+        }
+        long referenceTime = System.currentTimeMillis() - time;
+
+        long[] aliasCounts = new long[indices.size()];
+        time = System.currentTimeMillis();
+        for (int i = 0; i < sampleSize; i++) {
+            aliasCounts[alias.getRandomIndex(splittableRandom)]++;
+        }
+        long aliasTime = System.currentTimeMillis() - time;
+
+        double[] expected = new double[probabilities.size()];
+        for (int i = 0; i < expected.length; i++) expected[i] = probabilities.get(i).doubleValue();
+
+        double referenceVsAlias = compareCounts(referenceCounts, aliasCounts);
+        double referenceVsExpected = DistributionsComparator.compareDistributions(expected, referenceCounts);
+        double aliasVsExpected = DistributionsComparator.compareDistributions(expected, aliasCounts);
+
+        boolean equivalent = DistributionsComparator.uniformityTest(referenceVsAlias, CONFIDENCE)
+                && DistributionsComparator.uniformityTest(aliasVsExpected, CONFIDENCE);
+        System.out.println(String.format("%s;%d;%d;%d;%1.5f;%1.5f;%1.5f;%s", name, sampleSize,
+                referenceTime, aliasTime, referenceVsAlias, referenceVsExpected, aliasVsExpected,
+                equivalent ? "same" : "DIFFERENT"));
+    }
+
+    /**
+     * @return p-value of the chi-square test that both counts come from the same distribution
+     */
+    private static double compareCounts(long[] counts, long[] otherCounts) {
+        // the test cannot handle categories without any observations
+        int nonZero = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] + otherCounts[i] > 0) nonZero++;
+        }
+        if (nonZero < 2) return 1d;
+        long[] countsNoZeroes = new long[nonZero];
+        long[] otherCountsNoZeroes = new long[nonZero];
+        int newIndex = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] + otherCounts[i] > 0) {
+                countsNoZeroes[newIndex] = counts[i];
+                otherCountsNoZeroes[newIndex] = otherCounts[i];
+                newIndex++;
+            }
+        }
+        return new ChiSquareTest().chiSquareTestDataSetsComparison(countsNoZeroes, otherCountsNoZeroes);
+    }
+}
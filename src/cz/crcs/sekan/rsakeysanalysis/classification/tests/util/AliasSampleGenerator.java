@@ -0,0 +1,103 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.tests.util;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Samples from a discrete distribution in constant time by the alias method (Vose).
+ * The distribution is the same as of SampleGenerator, which is kept as the reference implementation
+ * (see SimulationsTest.testSimulators).
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class AliasSampleGenerator<SampleType> {
+    private List<SampleType> samples;
+
+    /**
+     * Probability of keeping the sample of the column, otherwise the alias is returned
+     */
+    private double[] probability;
+
+    private int[] alias;
+
+    public AliasSampleGenerator(List<SampleType> samples, List<BigDecimal> probabilities) {
+        this(samples, toDoubles(probabilities));
+    }
+
+    public AliasSampleGenerator(List<SampleType> samples, double[] probabilities) {
+        if (samples.size() == 0) {
+            throw new IllegalArgumentException("Must have at least one sample");
+        }
+        if (samples.size() != probabilities.length) {
+            throw new IllegalArgumentException("The number of samples and probabilities does not match");
+        }
+        double sum = 0d;
+        for (double p : probabilities) {
+            if (p < 0d) throw new IllegalArgumentException("Probabilities must not be negative");
+            sum += p;
+        }
+        if (sum == 0d) {
+            throw new IllegalArgumentException("The probabilities sum up to zero");
+        }
+        this.samples = samples;
+
+        int n = probabilities.length;
+        probability = new double[n];
+        alias = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = probabilities[i] * n / sum;
+            if (scaled[i] < 1d) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1d;
+            if (scaled[more] < 1d) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // what remains has probability one up to rounding
+        while (largeCount > 0) {
+            int more = large[--largeCount];
+            probability[more] = 1d;
+            alias[more] = more;
+        }
+        while (smallCount > 0) {
+            int less = small[--smallCount];
+            probability[less] = 1d;
+            alias[less] = less;
+        }
+    }
+
+    private static double[] toDoubles(List<BigDecimal> probabilities) {
+        double[] values = new double[probabilities.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = probabilities.get(i).doubleValue();
+        }
+        return values;
+    }
+
+    public int getRandomIndex(SplittableRandom random) {
+        int column = random.nextInt(probability.length);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+
+    public SampleType getRandomSample(SplittableRandom random) {
+        return samples.get(getRandomIndex(random));
+    }
+}
@@ -7,6 +7,7 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 /**
  * @author xnemec1
@@ -14,10 +15,12 @@ import java.util.Map;
  */
 public class ClassificationGroupSimulator {
     private SampleGenerator<String> maskGenerator;
+    private AliasSampleGenerator<String> aliasMaskGenerator;
     private String groupName;
 
     private ClassificationGroupSimulator(List<String> masks, List<BigDecimal> probabilities, String groupName) {
         maskGenerator = new SampleGenerator<>(masks, probabilities);
+        aliasMaskGenerator = new AliasSampleGenerator<>(masks, probabilities);
         // System.out.println(groupName + " probabilities: " + probabilities);
         this.groupName = groupName;
     }
@@ -37,10 +40,20 @@ public class ClassificationGroupSimulator {
         return new ClassificationGroupSimulator(masks, probabilities, groupName);
     }
 
+    /**
+     * Sample a mask by the cumulative probabilities (see SampleGenerator), the reference for getMask
+     */
     public String getMaskFromRandom(BigDecimal random) {
         return maskGenerator.getRandomSample(random);
     }
 
+    /**
+     * Sample a mask by the alias table (see AliasSampleGenerator)
+     */
+    public String getMask(SplittableRandom random) {
+        return aliasMaskGenerator.getRandomSample(random);
+    }
+
     public String getGroupName() {
         return groupName;
     }
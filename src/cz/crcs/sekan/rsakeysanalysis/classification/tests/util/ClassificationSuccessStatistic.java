@@ -28,6 +28,21 @@ public class ClassificationSuccessStatistic {
         return guessOrderToCount.compute(guessOrder, (key, oldValue) -> oldValue == null ? BigDecimal.ONE : oldValue.add(BigDecimal.ONE));
     }
 
+    public BigDecimal addGuessWithOrder(Integer guessOrder, long count) {
+        BigDecimal added = BigDecimal.valueOf(count);
+        return guessOrderToCount.compute(guessOrder, (key, oldValue) -> oldValue == null ? added : oldValue.add(added));
+    }
+
+    /**
+     * Add the guesses of the other statistic
+     * @param other statistic of other guesses
+     */
+    public void merge(ClassificationSuccessStatistic other) {
+        for (Map.Entry<Integer, BigDecimal> entry : other.guessOrderToCount.entrySet()) {
+            guessOrderToCount.merge(entry.getKey(), entry.getValue(), BigDecimal::add);
+        }
+    }
+
     public List<BigDecimal> toProbability(Integer maxGuesses, boolean neverGuessedIsMax) {
         if (!neverGuessedIsMax) {
             maxGuesses++;
@@ -47,6 +47,11 @@ public class ClassificationSuccessStatisticsAggregator implements StatisticsAggr
 
     @Override
     public void addStatistics(ClassificationContainer container, ClassificationKeyStub... keyStubs) {
+        addStatistics(container, 1L, keyStubs);
+    }
+
+    @Override
+    public void addStatistics(ClassificationContainer container, long multiplicity, ClassificationKeyStub... keyStubs) {
         List<String> mostProbableGroups = container.getRow().getTopGroups(ClassificationRow.ALL_GROUPS);
         String groupName = null;
         for (ClassificationKeyStub stub : keyStubs) {
@@ -61,17 +66,40 @@ public class ClassificationSuccessStatisticsAggregator implements StatisticsAggr
         }
         int index = mostProbableGroups.indexOf(groupName);
         ClassificationSuccessStatistic statistic = groupNameToStatistic.getOrDefault(groupName, new ClassificationSuccessStatistic());
-        statistic.addGuessWithOrder(index);
+        statistic.addGuessWithOrder(index, multiplicity);
         groupNameToStatistic.put(groupName, statistic);
     }
 
+    @Override
+    public StatisticsAggregator emptyCopy() {
+        return new ClassificationSuccessStatisticsAggregator(groupNames, pathToFolderWithResults, randomGeneratorSeed);
+    }
+
+    @Override
+    public void merge(StatisticsAggregator other) {
+        if (!(other instanceof ClassificationSuccessStatisticsAggregator)) {
+            throw new IllegalArgumentException("Cannot merge statistics of " + other.getClass().getSimpleName());
+        }
+        for (Map.Entry<String, ClassificationSuccessStatistic> entry :
+                ((ClassificationSuccessStatisticsAggregator) other).groupNameToStatistic.entrySet()) {
+            ClassificationSuccessStatistic statistic = groupNameToStatistic.get(entry.getKey());
+            if (statistic == null) {
+                groupNameToStatistic.put(entry.getKey(), entry.getValue());
+            } else {
+                statistic.merge(entry.getValue());
+            }
+        }
+    }
+
     @Override
     public void saveStatistics() {
+        if (pathToFolderWithResults == null) return;
         saveStatisticsToFiles(groupNames, groupNameToStatistic, pathToFolderWithResults, randomGeneratorSeed, formatter);
     }
 
     @Override
     public void savePriorProbabilitySummary(PriorProbabilityEstimator estimator) {
+        if (pathToFolderWithResults == null) return;
         ExtendedWriter writer = null;
         try {
             writer = new ExtendedWriter(new File(pathToFolderWithResults, "prior_probability.json"));
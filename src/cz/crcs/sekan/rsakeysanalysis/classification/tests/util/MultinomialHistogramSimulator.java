@@ -0,0 +1,126 @@
+package cz.crcs.sekan.rsakeysanalysis.classification.tests.util;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.apriori.PriorProbability;
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationRow;
+import cz.crcs.sekan.rsakeysanalysis.classification.table.ClassificationTable;
+import org.apache.commons.math3.distribution.BinomialDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.RandomGeneratorFactory;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Simulates the histogram of masks of a data set without simulating the keys. The number of keys of each group
+ * is drawn from the multinomial distribution given by the prior probability, the masks of the keys of a group
+ * from the multinomial distribution of the column of the group. Multinomials are drawn as a sequence of binomials,
+ * so the cost does not depend on the number of keys. The masks have the same distribution as the masks of keys
+ * of SimulatedDataSetIterator, use it if keys are needed (e.g., for batching).
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class MultinomialHistogramSimulator {
+    private String[] masks;
+    private double[] groupProbabilities;
+
+    /**
+     * maskProbabilities[group][mask], rows sum to one
+     */
+    private double[][] maskProbabilities;
+
+    private MultinomialHistogramSimulator() {
+    }
+
+    /**
+     * @param table table with the distributions of masks of groups (columns are normalized)
+     * @param priorProbability probability of groups (normalized)
+     */
+    public static MultinomialHistogramSimulator fromClassificationTable(ClassificationTable table,
+                                                                        PriorProbability priorProbability) {
+        List<String> groupNames = new ArrayList<>(table.getGroupsNames());
+        Map<String, ClassificationRow> rawTable = table.getTable();
+
+        MultinomialHistogramSimulator simulator = new MultinomialHistogramSimulator();
+        simulator.masks = rawTable.keySet().toArray(new String[0]);
+        simulator.groupProbabilities = new double[groupNames.size()];
+        simulator.maskProbabilities = new double[groupNames.size()][simulator.masks.length];
+
+        for (int group = 0; group < groupNames.size(); group++) {
+            String groupName = groupNames.get(group);
+            BigDecimal groupProbability = priorProbability.getGroupProbability(groupName);
+            simulator.groupProbabilities[group] = groupProbability == null ? 0d : groupProbability.doubleValue();
+            for (int mask = 0; mask < simulator.masks.length; mask++) {
+                BigDecimal probability = rawTable.get(simulator.masks[mask]).getValues().get(groupName);
+                simulator.maskProbabilities[group][mask] = probability == null ? 0d : probability.doubleValue();
+            }
+            if (simulator.groupProbabilities[group] > 0d && normalize(simulator.maskProbabilities[group]) == 0d) {
+                throw new IllegalArgumentException("Group " + groupName + " does not have any mask");
+            }
+        }
+        if (normalize(simulator.groupProbabilities) == 0d) {
+            throw new IllegalArgumentException("Prior probability of all groups is zero");
+        }
+        return simulator;
+    }
+
+    /**
+     * @param sampleSize number of simulated keys
+     * @param random random generator
+     * @return frequencies of masks of the simulated keys (only masks with non-zero frequency),
+     * for PriorProbabilityEstimator.setMaskToFrequency
+     */
+    public Map<String, BigDecimal> simulate(int sampleSize, Random random) {
+        RandomGenerator generator = RandomGeneratorFactory.createRandomGenerator(random);
+        long[] maskCounts = new long[masks.length];
+        int[] groupCounts = multinomial(sampleSize, groupProbabilities, generator);
+        for (int group = 0; group < groupCounts.length; group++) {
+            if (groupCounts[group] == 0) continue;
+            int[] counts = multinomial(groupCounts[group], maskProbabilities[group], generator);
+            for (int mask = 0; mask < masks.length; mask++) maskCounts[mask] += counts[mask];
+        }
+
+        Map<String, BigDecimal> maskToFrequency = new TreeMap<>();
+        for (int mask = 0; mask < masks.length; mask++) {
+            if (maskCounts[mask] > 0) maskToFrequency.put(masks[mask], BigDecimal.valueOf(maskCounts[mask]));
+        }
+        return maskToFrequency;
+    }
+
+    /**
+     * Multinomial by binomial splitting: the count of each category is drawn from the binomial distribution
+     * of the remaining trials and the probability of the category conditioned on the remaining categories
+     */
+    private static int[] multinomial(int trials, double[] probabilities, RandomGenerator generator) {
+        int[] counts = new int[probabilities.length];
+        // the remaining probabilities are summed from the end, not subtracted from one, so they do not round
+        // to zero while some category is left and the last category with non-zero probability takes the rest
+        double[] remainingProbabilities = new double[probabilities.length + 1];
+        for (int i = probabilities.length - 1; i >= 0; i--) {
+            remainingProbabilities[i] = remainingProbabilities[i + 1] + Math.max(0d, probabilities[i]);
+        }
+        int remainingTrials = trials;
+        for (int i = 0; i < probabilities.length && remainingTrials > 0; i++) {
+            if (probabilities[i] <= 0d) continue;
+            double probability = probabilities[i] / remainingProbabilities[i];
+            if (!(probability < 1d)) {
+                counts[i] = remainingTrials;
+            } else {
+                counts[i] = new BinomialDistribution(generator, remainingTrials, probability).sample();
+            }
+            remainingTrials -= counts[i];
+        }
+        return counts;
+    }
+
+    /**
+     * @return the original sum
+     */
+    private static double normalize(double[] values) {
+        double sum = 0d;
+        for (double value : values) sum += value;
+        if (sum == 0d) return sum;
+        for (int i = 0; i < values.length; i++) values[i] /= sum;
+        return sum;
+    }
+}
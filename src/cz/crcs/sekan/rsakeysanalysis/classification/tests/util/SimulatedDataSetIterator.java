@@ -12,9 +12,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.SplittableRandom;
 
 /**
- * Dataset simulator. Generates random keys on the fly.
+ * Dataset simulator. Generates random keys on the fly, groups and masks are sampled by alias tables.
  *
  * @author xnemec1
  * @version 2/27/17.
@@ -22,8 +23,8 @@ import java.util.Set;
 public class SimulatedDataSetIterator implements DataSetIterator {
     private long simulatedKeyCount;
     private long lastKeyId;
-    private Random random;
-    private SampleGenerator<ClassificationGroupSimulator> priorProbabilityGenerator;
+    private SplittableRandom random;
+    private AliasSampleGenerator<ClassificationGroupSimulator> priorProbabilityGenerator;
 
     public static SimulatedDataSetIterator fromClassificationTable(ClassificationTable table, PriorProbability priorProbability,
                                                                    long maxKeyCount, Random random) {
@@ -39,8 +40,9 @@ public class SimulatedDataSetIterator implements DataSetIterator {
         SimulatedDataSetIterator simulator = new SimulatedDataSetIterator();
         simulator.lastKeyId = 0;
         simulator.simulatedKeyCount = maxKeyCount;
-        simulator.random = random;
-        simulator.priorProbabilityGenerator = new SampleGenerator<>(groups, groupProbabilities);
+        // the generator is seeded by the given one, the keys are the same for the same state of the given generator
+        simulator.random = new SplittableRandom(random.nextLong());
+        simulator.priorProbabilityGenerator = new AliasSampleGenerator<>(groups, groupProbabilities);
         return simulator;
     }
 
@@ -67,20 +69,11 @@ public class SimulatedDataSetIterator implements DataSetIterator {
 
         Set<String> source = null; // TODO in case that batching is tested
         int count = 1; // TODO in case that duplicity count is tested
-        ClassificationGroupSimulator randomGroup = randomGroup();
-        String mask = randomGroup.getMaskFromRandom(uniformRandom(random));
+        ClassificationGroupSimulator randomGroup = priorProbabilityGenerator.getRandomSample(random);
+        String mask = randomGroup.getMask(random);
 
         lastKeyId++;
 
         return new ClassificationKey(rsaKey, source, count, mask, randomGroup.getGroupName());
     }
-
-    private static BigDecimal uniformRandom(Random random) {
-        Double rand = random.nextDouble();
-        return BigDecimal.valueOf(rand);
-    }
-
-    private ClassificationGroupSimulator randomGroup() {
-        return priorProbabilityGenerator.getRandomSample(uniformRandom(random));
-    }
 }
@@ -0,0 +1,93 @@
+package cz.crcs.sekan.rsakeysanalysis.common;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * View of a part of a byte buffer (e.g., a line of a memory mapped file) as a sequence of characters.
+ * Each byte is one character, so ASCII text can be scanned without decoding,
+ * toString() decodes the bytes as UTF-8. The slice does not copy the bytes.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class ByteSlice implements CharSequence {
+
+    private ByteBuffer buffer;
+
+    private int offset;
+
+    private int length;
+
+    public ByteSlice(ByteBuffer buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+            throw new IndexOutOfBoundsException("Slice is out of the buffer");
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static ByteSlice wrap(byte[] bytes, int offset, int length) {
+        return new ByteSlice(ByteBuffer.wrap(bytes), offset, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException("Index " + index + " out of slice");
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public ByteSlice subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException("Subsequence out of slice");
+        return new ByteSlice(buffer, offset + start, end - start);
+    }
+
+    /**
+     * @param text ASCII text to search for
+     * @return index of the first occurrence of the text or -1
+     */
+    public int indexOf(String text) {
+        return indexOf(this, text);
+    }
+
+    /**
+     * @param sequence sequence to search in
+     * @param text ASCII text to search for
+     * @return index of the first occurrence of the text in the sequence or -1
+     */
+    public static int indexOf(CharSequence sequence, String text) {
+        if (sequence instanceof String) return ((String) sequence).indexOf(text);
+        int last = sequence.length() - text.length();
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < text.length() && sequence.charAt(i + j) == text.charAt(j)) j++;
+            if (j == text.length()) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        // cast keeps the code compatible with Java 8 runtime (no covariant Buffer.position)
+        ((Buffer) view).position(offset);
+        view.get(bytes);
+        boolean ascii = true;
+        for (byte b : bytes) {
+            if (b < 0) {
+                ascii = false;
+                break;
+            }
+        }
+        return new String(bytes, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+}
@@ -1,17 +1,19 @@
 package cz.crcs.sekan.rsakeysanalysis.common;
 
 import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.exception.DataSetException;
-import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
-import cz.crcs.sekan.rsakeysanalysis.common.exception.WrongKeyException;
-import org.json.simple.parser.ParseException;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.Iterator;
 
 /**
+ * Iterates over non-empty lines of a file. Regular files are memory mapped and lines are available
+ * as byte slices (see nextSlice()), the reader is used when the file cannot be mapped.
+ * Gzip files (recognized by the magic bytes) are decompressed on the fly.
+ *
  * @author xnemec1
  * @version 3/1/17.
  */
@@ -19,19 +21,45 @@ public class FileIterator implements Iterator<String> {
 
     private BufferedReader reader;
 
-    private String nextLine;
+    private MappedLineReader mappedReader;
+
+    private CharSequence nextLine;
 
     private File inputFile;
 
+    private boolean useMapping;
+
     public FileIterator(File inputFile) throws DataSetException {
-        this.inputFile = inputFile;
-        rewind();
+        this(inputFile, true);
     }
 
     public FileIterator(String pathToFile) throws DataSetException {
         this(new File(pathToFile));
     }
 
+    /**
+     * @param inputFile file to iterate over
+     * @param useMapping whether to try memory mapping the file, otherwise the file is read by a reader
+     * @throws DataSetException the file cannot be opened
+     */
+    public FileIterator(File inputFile, boolean useMapping) throws DataSetException {
+        this.inputFile = inputFile;
+        this.useMapping = useMapping;
+        rewind();
+    }
+
+    /**
+     * @param file input file
+     * @return name of the file without .gz extension, if the file is compressed
+     */
+    public static String getUncompressedName(File file) {
+        String name = file.getName();
+        if (name.endsWith(".gz") && ParallelGzipInputStream.isGzipFile(file)) {
+            return name.substring(0, name.length() - ".gz".length());
+        }
+        return name;
+    }
+
     @Override
     public boolean hasNext() {
         return nextLine != null;
@@ -39,8 +67,18 @@ public class FileIterator implements Iterator<String> {
 
     @Override
     public String next() {
-        if (reader == null) throw new IllegalStateException("Cannot iterate over closed file");
-        String lastLine = nextLine;
+        CharSequence line = nextSlice();
+        return line == null ? null : line.toString();
+    }
+
+    /**
+     * The next line without decoding. For a mapped file it is a ByteSlice view of the file,
+     * otherwise the line read as String.
+     * @return the next line or null at the end of the file
+     */
+    public CharSequence nextSlice() {
+        if (reader == null && mappedReader == null) throw new IllegalStateException("Cannot iterate over closed file");
+        CharSequence lastLine = nextLine;
         try {
             prepareNextLine();
         } catch (IOException e) {
@@ -56,15 +94,35 @@ public class FileIterator implements Iterator<String> {
         } catch (IOException e) {
             System.err.printf("Could not close dataset reader " + e.getMessage());
         }
+        if (mappedReader != null) try {
+            mappedReader.close();
+            mappedReader = null;
+        } catch (IOException e) {
+            System.err.printf("Could not close dataset reader " + e.getMessage());
+        }
     }
 
     public void rewind() throws DataSetException {
-        if (reader != null) {
+        if (reader != null || mappedReader != null) {
             close();
         }
 
         try {
-            reader = new BufferedReader(new FileReader(inputFile));
+            if (ParallelGzipInputStream.isGzipFile(inputFile)) {
+                reader = new BufferedReader(new InputStreamReader(new ParallelGzipInputStream(inputFile)));
+            } else {
+                if (useMapping) {
+                    try {
+                        mappedReader = new MappedLineReader(inputFile);
+                    } catch (IOException | UnsupportedOperationException e) {
+                        // fall back to reader, e.g., for pipes
+                        mappedReader = null;
+                    }
+                }
+                if (mappedReader == null) {
+                    reader = new BufferedReader(new FileReader(inputFile));
+                }
+            }
             prepareNextLine();
         } catch (IOException e) {
             throw new DataSetException(e);
@@ -75,14 +133,14 @@ public class FileIterator implements Iterator<String> {
         nextLine = null;
 
         while (nextLine == null) {
-            String line = reader.readLine();
+            CharSequence line = mappedReader != null ? mappedReader.readLine() : reader.readLine();
 
             if (line == null) {
                 nextLine = null;
                 return false; // end of dataset
             }
 
-            if (line.isEmpty()) continue;
+            if (line.length() == 0) continue;
 
             nextLine = line;
         }
@@ -0,0 +1,347 @@
+package cz.crcs.sekan.rsakeysanalysis.common;
+
+import org.json.simple.parser.ParseException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single pass scanner of a JSON object, which only records where the values of the requested fields are.
+ * Values of other fields are skipped without creating any objects, requested values are converted on demand.
+ * The scanner keeps the state of the last scan, use one instance per thread.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class JSONFieldScanner {
+
+    private String[] fields;
+
+    private boolean caseSensitive;
+
+    private int[] valueStarts;
+
+    private int[] valueEnds;
+
+    private CharSequence json;
+
+    private boolean searchNested;
+
+    private int foundField;
+
+    /**
+     * @param caseSensitive whether the field names are compared case sensitively
+     * @param fields names of requested fields
+     */
+    public JSONFieldScanner(boolean caseSensitive, String... fields) {
+        this.caseSensitive = caseSensitive;
+        this.fields = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            this.fields[i] = caseSensitive ? fields[i] : fields[i].toLowerCase();
+        }
+        this.valueStarts = new int[fields.length];
+        this.valueEnds = new int[fields.length];
+    }
+
+    public JSONFieldScanner(String... fields) {
+        this(true, fields);
+    }
+
+    /**
+     * Scan the whole JSON object and record values of the requested fields of the top level object.
+     * The first occurrence of a field is recorded.
+     * @param json line with JSON object
+     * @throws ParseException the line is not a well-formed JSON object
+     */
+    public void scan(CharSequence json) throws ParseException {
+        this.json = json;
+        this.searchNested = false;
+        Arrays.fill(valueStarts, -1);
+        int position = skipWhitespace(0);
+        if (position >= json.length() || json.charAt(position) != '{') {
+            throw unexpected(position);
+        }
+        position = skipWhitespace(skipObject(position, true));
+        if (position < json.length()) throw unexpected(position);
+    }
+
+    /**
+     * Find the first string value of any of the requested fields in any nested object.
+     * Scanning stops at the found value, the rest of the line is not checked.
+     * @param json line with JSON
+     * @return unescaped string value or null, if none of the fields with a string value was found
+     */
+    public String findString(CharSequence json) {
+        this.json = json;
+        this.searchNested = true;
+        this.foundField = -1;
+        Arrays.fill(valueStarts, -1);
+        try {
+            skipValue(skipWhitespace(0), false);
+        } catch (ParseException | StopScanning e) {
+            // either found or malformed
+        }
+        if (foundField < 0) return null;
+        return unescape(valueStarts[foundField] + 1, valueEnds[foundField] - 1);
+    }
+
+    /**
+     * @param field index of the field in the constructor
+     * @return true if the field was present in the last scanned object
+     */
+    public boolean has(int field) {
+        return valueStarts[field] >= 0;
+    }
+
+    /**
+     * @param field index of the field in the constructor
+     * @return raw text of the value or null, if the field was not present
+     */
+    public CharSequence getRawValue(int field) {
+        if (!has(field)) return null;
+        return json.subSequence(valueStarts[field], valueEnds[field]);
+    }
+
+    /**
+     * @param field index of the field in the constructor
+     * @return the string value, or the first string in the (nested) array value; null otherwise
+     */
+    public String getString(int field) {
+        if (!has(field)) return null;
+        int position = valueStarts[field];
+        while (json.charAt(position) == '[') {
+            position = skipWhitespace(position + 1);
+        }
+        if (json.charAt(position) != '"') return null;
+        return unescape(position + 1, skipStringUnchecked(position) - 1);
+    }
+
+    /**
+     * @param field index of the field in the constructor
+     * @return strings of the array value (non-string elements as their JSON text, nulls are omitted),
+     *         null if the value is not an array
+     */
+    public List<String> getStrings(int field) {
+        if (!has(field) || json.charAt(valueStarts[field]) != '[') return null;
+        List<String> strings = new ArrayList<>();
+        int position = skipWhitespace(valueStarts[field] + 1);
+        try {
+            while (json.charAt(position) != ']') {
+                int end = skipValue(position, false);
+                if (json.charAt(position) == '"') {
+                    strings.add(unescape(position + 1, end - 1));
+                } else if (!isNull(position, end)) {
+                    strings.add(json.subSequence(position, end).toString());
+                }
+                position = skipWhitespace(end);
+                if (json.charAt(position) == ',') position = skipWhitespace(position + 1);
+            }
+        } catch (ParseException e) {
+            throw new IllegalStateException("Value was already scanned", e);
+        }
+        return strings;
+    }
+
+    /**
+     * @param field index of the field in the constructor
+     * @return Long or Double for numeric values, null otherwise
+     */
+    public Number getNumber(int field) {
+        if (!has(field)) return null;
+        String text = getRawValue(field).toString();
+        try {
+            if (text.indexOf('.') >= 0 || text.indexOf('e') >= 0 || text.indexOf('E') >= 0) {
+                return Double.valueOf(text);
+            }
+            return Long.valueOf(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param field index of the field in the constructor
+     * @return Boolean for true or false values, null otherwise
+     */
+    public Boolean getBoolean(int field) {
+        if (!has(field)) return null;
+        String text = getRawValue(field).toString();
+        if (text.equals("true")) return Boolean.TRUE;
+        if (text.equals("false")) return Boolean.FALSE;
+        return null;
+    }
+
+    private int skipObject(int position, boolean recordFields) throws ParseException {
+        position = skipWhitespace(position + 1);
+        if (charAt(position) == '}') return position + 1;
+        while (true) {
+            if (charAt(position) != '"') throw unexpected(position);
+            int keyStart = position + 1;
+            position = skipString(position);
+            int keyEnd = position - 1;
+            position = skipWhitespace(position);
+            if (charAt(position) != ':') throw unexpected(position);
+            int valueStart = skipWhitespace(position + 1);
+            int field = (recordFields || searchNested) ? matchField(keyStart, keyEnd) : -1;
+            position = skipValue(valueStart, false);
+            if (field >= 0 && valueStarts[field] < 0) {
+                if (!searchNested) {
+                    valueStarts[field] = valueStart;
+                    valueEnds[field] = position;
+                } else if (json.charAt(valueStart) == '"') {
+                    valueStarts[field] = valueStart;
+                    valueEnds[field] = position;
+                    foundField = field;
+                    throw StopScanning.INSTANCE;
+                }
+            }
+            position = skipWhitespace(position);
+            char next = charAt(position);
+            if (next == '}') return position + 1;
+            if (next != ',') throw unexpected(position);
+            position = skipWhitespace(position + 1);
+        }
+    }
+
+    private int skipArray(int position) throws ParseException {
+        position = skipWhitespace(position + 1);
+        if (charAt(position) == ']') return position + 1;
+        while (true) {
+            position = skipWhitespace(skipValue(position, false));
+            char next = charAt(position);
+            if (next == ']') return position + 1;
+            if (next != ',') throw unexpected(position);
+            position = skipWhitespace(position + 1);
+        }
+    }
+
+    private int skipValue(int position, boolean recordFields) throws ParseException {
+        char c = charAt(position);
+        if (c == '"') return skipString(position);
+        if (c == '{') return skipObject(position, recordFields);
+        if (c == '[') return skipArray(position);
+        if (c == '-' || (c >= '0' && c <= '9') || c == 't' || c == 'f' || c == 'n') {
+            int end = position;
+            while (end < json.length() && isLiteralChar(json.charAt(end))) end++;
+            return end;
+        }
+        throw unexpected(position);
+    }
+
+    private int skipString(int position) throws ParseException {
+        int end = skipStringUnchecked(position);
+        if (end < 0) throw new ParseException(json.length(), ParseException.ERROR_UNEXPECTED_TOKEN, "END OF FILE");
+        return end;
+    }
+
+    /**
+     * @param position position of the opening quote
+     * @return position after the closing quote or -1 if the string is not terminated
+     */
+    private int skipStringUnchecked(int position) {
+        int length = json.length();
+        for (int i = position + 1; i < length; i++) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private int matchField(int keyStart, int keyEnd) {
+        int length = keyEnd - keyStart;
+        for (int field = 0; field < fields.length; field++) {
+            String name = fields[field];
+            if (name.length() != length) continue;
+            int i = 0;
+            while (i < length) {
+                char c = json.charAt(keyStart + i);
+                if (!caseSensitive) c = Character.toLowerCase(c);
+                if (c != name.charAt(i)) break;
+                i++;
+            }
+            if (i == length) return field;
+        }
+        return -1;
+    }
+
+    private String unescape(int start, int end) {
+        StringBuilder builder = null;
+        for (int i = start; i < end; i++) {
+            char c = json.charAt(i);
+            if (c != '\\') {
+                if (builder != null) builder.append(c);
+                continue;
+            }
+            if (builder == null) {
+                builder = new StringBuilder(end - start);
+                builder.append(json, start, i);
+            }
+            char escaped = json.charAt(++i);
+            switch (escaped) {
+                case 'b': builder.append('\b'); break;
+                case 'f': builder.append('\f'); break;
+                case 'n': builder.append('\n'); break;
+                case 'r': builder.append('\r'); break;
+                case 't': builder.append('\t'); break;
+                case 'u':
+                    builder.append((char) Integer.parseInt(json.subSequence(i + 1, i + 5).toString(), 16));
+                    i += 4;
+                    break;
+                default: builder.append(escaped);
+            }
+        }
+        return builder == null ? json.subSequence(start, end).toString() : builder.toString();
+    }
+
+    private boolean isNull(int start, int end) {
+        return end - start == 4 && json.charAt(start) == 'n' && json.charAt(start + 1) == 'u'
+                && json.charAt(start + 2) == 'l' && json.charAt(start + 3) == 'l';
+    }
+
+    private static boolean isLiteralChar(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || c == '-' || c == '+' || c == '.';
+    }
+
+    private int skipWhitespace(int position) {
+        int length = json.length();
+        while (position < length) {
+            char c = json.charAt(position);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') break;
+            position++;
+        }
+        return position;
+    }
+
+    private char charAt(int position) throws ParseException {
+        if (position >= json.length()) {
+            throw new ParseException(position, ParseException.ERROR_UNEXPECTED_TOKEN, "END OF FILE");
+        }
+        return json.charAt(position);
+    }
+
+    private ParseException unexpected(int position) {
+        if (position >= json.length()) {
+            return new ParseException(position, ParseException.ERROR_UNEXPECTED_TOKEN, "END OF FILE");
+        }
+        return new ParseException(position, ParseException.ERROR_UNEXPECTED_CHAR, json.charAt(position));
+    }
+
+    /**
+     * Used to leave the recursion when the searched value was found.
+     */
+    private static class StopScanning extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private static final StopScanning INSTANCE = new StopScanning();
+
+        private StopScanning() {
+            super(null, null, false, false);
+        }
+    }
+}
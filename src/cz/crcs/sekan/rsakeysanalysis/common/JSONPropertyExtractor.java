@@ -1,10 +1,5 @@
 package cz.crcs.sekan.rsakeysanalysis.common;
 
-import cz.crcs.sekan.rsakeysanalysis.tools.DuplicityRemover;
-
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -15,20 +10,33 @@ import java.util.regex.Pattern;
 public class JSONPropertyExtractor {
     private boolean caseSensitive;
     private Pattern pattern;
+    private ThreadLocal<JSONFieldScanner> scanner;
 
     public static final Pattern MODULUS_PATTERN = Pattern.compile("\"(n|modulus)\" *: *\"(0x|0X)?([a-zA-Z0-9]+)\"");
     public static final Pattern FINGERPRINT_PATTERN = Pattern.compile("\"fprint\" *: *\"(0x|0X)?([a-zA-Z0-9]+)\"");
 
     public static final JSONPropertyExtractor MODULUS_CASE_INSENSITIVE_EXTRACTOR =
-            new JSONPropertyExtractor(false, MODULUS_PATTERN);
+            new JSONPropertyExtractor(false, "n", "modulus");
     public static final JSONPropertyExtractor FINGERPRINT_CASE_INSENSITIVE_EXTRACTOR =
-            new JSONPropertyExtractor(false, FINGERPRINT_PATTERN);
+            new JSONPropertyExtractor(false, "fprint");
 
     public JSONPropertyExtractor(boolean caseSensitive, Pattern pattern) {
         this.caseSensitive = caseSensitive;
         this.pattern = pattern;
     }
 
+    /**
+     * Extractor of the first alphanumeric string value (optionally prefixed by 0x) of any of the fields,
+     * the fields are searched for in nested objects as well
+     *
+     * @param caseSensitive if false, field names are matched case insensitively and the value is lowercased
+     * @param fieldNames names of the fields
+     */
+    public JSONPropertyExtractor(boolean caseSensitive, String... fieldNames) {
+        this.caseSensitive = caseSensitive;
+        this.scanner = ThreadLocal.withInitial(() -> new JSONFieldScanner(caseSensitive, fieldNames));
+    }
+
     /**
      * Returns the first match of the set pattern
      *
@@ -36,6 +44,7 @@ public class JSONPropertyExtractor {
      * @return first match of the pattern or null
      */
     public String extractProperty(String json) {
+        if (scanner != null) return extractField(json);
         if (!caseSensitive) json = json.toLowerCase();
         Matcher m = pattern.matcher(json);
         if (m.find()) {
@@ -53,15 +62,32 @@ public class JSONPropertyExtractor {
         return null;
     }
 
-    public BigInteger extractHashOfProperty(String json) {
-        String property = extractProperty(json);
-        if (property == null) return null;
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte hash[] = digest.digest(property.getBytes());
-            return new BigInteger(hash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+    private String extractField(String json) {
+        String value = scanner.get().findString(json);
+        if (value == null) return null;
+        if (!caseSensitive) value = value.toLowerCase();
+        if (value.startsWith("0x") || value.startsWith("0X")) value = value.substring(2);
+        if (!isAlphanumeric(value)) {
+            System.err.println("No match in json or malformed pattern");
+            return null;
         }
+        return value;
+    }
+
+    /**
+     * @param value string to check
+     * @return true if the string is non-empty and contains only ASCII letters and digits
+     */
+    public static boolean isAlphanumeric(String value) {
+        if (value.isEmpty()) return false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) return false;
+        }
+        return true;
+    }
+
+    public KeyFingerprint extractHashOfProperty(String json) {
+        return KeyFingerprint.of(extractProperty(json));
     }
 }
@@ -0,0 +1,215 @@
+package cz.crcs.sekan.rsakeysanalysis.common;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 128-bit fingerprint of a modulus (or another value identifying a key), used instead of hashes as BigIntegers
+ * in sets and maps of keys. The fingerprint is the first 128 bits of SHA-256, or Murmur3 (x64, 128 bits) which
+ * is much faster but not cryptographic, see setHashFunction.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public final class KeyFingerprint implements Comparable<KeyFingerprint> {
+
+    public enum HashFunction {
+        SHA_256("sha256"),
+        MURMUR3("murmur3");
+
+        private final String name;
+
+        HashFunction(String name) {
+            this.name = name;
+        }
+
+        public static HashFunction fromString(String name) {
+            for (HashFunction function : values()) {
+                if (function.name.equals(name)) return function;
+            }
+            throw new IllegalArgumentException("Unknown hash function " + name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static volatile HashFunction hashFunction = HashFunction.SHA_256;
+
+    private static final ThreadLocal<MessageDigest> sha256Digest = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            System.err.println("SHA-256 not available");
+            throw new RuntimeException(e);
+        }
+    });
+
+    private final long high;
+    private final long low;
+
+    public KeyFingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @param function hash function of fingerprints computed by of, fingerprints of different functions must not
+     *                 be mixed, so it should be set before any fingerprint is computed
+     */
+    public static void setHashFunction(HashFunction function) {
+        hashFunction = function;
+    }
+
+    public static HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * @param number number to fingerprint
+     * @return fingerprint of the two's-complement bytes of the number, null for null
+     */
+    public static KeyFingerprint of(BigInteger number) {
+        if (number == null) return null;
+        return of(number.toByteArray());
+    }
+
+    /**
+     * @param value value to fingerprint
+     * @return fingerprint of the UTF-8 bytes of the value, null for null
+     */
+    public static KeyFingerprint of(String value) {
+        if (value == null) return null;
+        return of(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param bytes bytes to fingerprint
+     * @return fingerprint computed by the hash function set by setHashFunction
+     */
+    public static KeyFingerprint of(byte[] bytes) {
+        return hashFunction == HashFunction.MURMUR3 ? murmur3(bytes) : sha256(bytes);
+    }
+
+    /**
+     * @param bytes bytes to fingerprint
+     * @return first 128 bits of SHA-256 of the bytes (independent of the hash function, e.g., for stored fingerprints)
+     */
+    public static KeyFingerprint sha256(byte[] bytes) {
+        byte[] hash = sha256Digest.get().digest(bytes);
+        return new KeyFingerprint(getLong(hash, 0, false), getLong(hash, 8, false));
+    }
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /**
+     * @param bytes bytes to fingerprint
+     * @return Murmur3 x64 128-bit hash of the bytes with zero seed
+     */
+    public static KeyFingerprint murmur3(byte[] bytes) {
+        long h1 = 0;
+        long h2 = 0;
+        int blocks = bytes.length / 16;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLong(bytes, 16 * i, true);
+            long k2 = getLong(bytes, 16 * i + 8, true);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        int tail = 16 * blocks;
+        int remaining = bytes.length - tail;
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = remaining - 1; i >= 8; i--) k2 ^= (bytes[tail + i] & 0xFFL) << (8 * (i - 8));
+        for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) k1 ^= (bytes[tail + i] & 0xFFL) << (8 * i);
+        if (remaining > 8) h2 ^= mixK2(k2);
+        if (remaining > 0) h1 ^= mixK1(k1);
+
+        h1 ^= bytes.length;
+        h2 ^= bytes.length;
+        h1 += h2;
+        h2 += h1;
+        h1 = finalMix(h1);
+        h2 = finalMix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new KeyFingerprint(h1, h2);
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long finalMix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLong(byte[] bytes, int offset, boolean littleEndian) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            int index = littleEndian ? offset + 7 - i : offset + i;
+            value = (value << 8) | (bytes[index] & 0xFF);
+        }
+        return value;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof KeyFingerprint)) return false;
+        KeyFingerprint that = (KeyFingerprint) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        // the bits are uniformly distributed, any of them are a good hash
+        return (int) low;
+    }
+
+    @Override
+    public int compareTo(KeyFingerprint other) {
+        int comparison = Long.compare(high, other.high);
+        return comparison != 0 ? comparison : Long.compare(low, other.low);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
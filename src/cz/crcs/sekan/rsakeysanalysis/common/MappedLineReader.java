@@ -0,0 +1,124 @@
+package cz.crcs.sekan.rsakeysanalysis.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads lines of a file memory mapped in large windows. Lines are returned as slices of the mapped window,
+ * no bytes are copied or decoded. A line ends with '\n', an optional preceding '\r' is not part of the line.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class MappedLineReader {
+
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private FileChannel channel;
+
+    private long fileLength;
+
+    private int windowSize;
+
+    private MappedByteBuffer window;
+
+    private long windowStart;
+
+    private int windowLength;
+
+    private int position;
+
+    private long lineOffset = -1;
+
+    /**
+     * @param file file to map
+     * @throws IOException the file cannot be opened or mapped (e.g., it is not a regular file)
+     */
+    public MappedLineReader(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedLineReader(File file, int windowSize) throws IOException {
+        if (!file.isFile()) throw new IOException("Cannot map a file which is not a regular file: " + file);
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            this.fileLength = channel.size();
+            this.windowSize = windowSize;
+            mapWindow(0, windowSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the next line (possibly empty) or null at the end of the file
+     * @throws IOException when the file cannot be mapped
+     */
+    public ByteSlice readLine() throws IOException {
+        if (windowStart + position >= fileLength) return null;
+
+        int lineEnd = findNewline(position);
+        while (lineEnd < 0) {
+            if (windowStart + windowLength >= fileLength) {
+                lineEnd = windowLength; // last line without newline
+                break;
+            }
+            // the line continues behind the window, map a new window from the line start
+            int lineLength = windowLength - position;
+            int size = lineLength < windowSize / 2 ? windowSize : (int) Math.min(2L * lineLength, Integer.MAX_VALUE);
+            int searchFrom = lineLength;
+            mapWindow(windowStart + position, size);
+            lineEnd = findNewline(searchFrom);
+        }
+
+        int lineStart = position;
+        lineOffset = windowStart + lineStart;
+        position = lineEnd + 1;
+        if (lineEnd > lineStart && window.get(lineEnd - 1) == '\r') lineEnd--;
+        return new ByteSlice(window, lineStart, lineEnd - lineStart);
+    }
+
+    /**
+     * @return offset of the line returned by the last call of readLine() in the file, -1 before the first line
+     */
+    public long getLineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * Continue reading from the given offset, which should be a start of a line.
+     * @param offset offset in the file
+     * @throws IOException when the file cannot be mapped
+     */
+    public void seek(long offset) throws IOException {
+        if (offset < 0 || offset > fileLength) throw new IOException("Offset " + offset + " is out of the file");
+        if (offset >= windowStart && offset <= windowStart + windowLength) {
+            position = (int) (offset - windowStart);
+        } else {
+            mapWindow(offset, windowSize);
+        }
+    }
+
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private int findNewline(int from) {
+        for (int i = from; i < windowLength; i++) {
+            if (window.get(i) == '\n') return i;
+        }
+        return -1;
+    }
+
+    private void mapWindow(long start, int size) throws IOException {
+        windowStart = start;
+        windowLength = (int) Math.min(size, fileLength - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+        position = 0;
+    }
+}
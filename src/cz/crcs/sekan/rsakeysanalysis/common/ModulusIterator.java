@@ -28,7 +28,7 @@ public class ModulusIterator implements Iterator<BigInteger> {
         if (nextModulus != null) return true;
         if (!fileIterator.hasNext()) return false;
         while (nextModulus == null && fileIterator.hasNext()) {
-            nextModulus = ClassificationKey.getModulusFromJSON(fileIterator.next());
+            nextModulus = ClassificationKey.getModulusFromJSON(fileIterator.nextSlice());
         }
         return nextModulus != null;
     }
@@ -0,0 +1,269 @@
+package cz.crcs.sekan.rsakeysanalysis.common;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a gzip file ahead of the reader on other threads.
+ * Files consisting of BGZF members (gzip members with the block size in the 'BC' extra field, e.g., made by bgzip)
+ * are decompressed member-parallel, since the members can be found without decompression.
+ * Other gzip files (including plain multi-member files) are decompressed by a single background thread.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int FEXTRA = 4;
+    private static final int BGZF_HEADER_LENGTH = 18;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private InputStream compressed;
+
+    private ExecutorService executor;
+
+    private Deque<Future<byte[]>> pendingBlocks;
+
+    private int maxPendingBlocks;
+
+    private boolean compressedExhausted;
+
+    private BlockingQueue<byte[]> decompressedChunks;
+
+    private Future<?> sequentialDecompression;
+
+    private byte[] current = new byte[0];
+
+    private int position = 0;
+
+    private boolean finished = false;
+
+    public ParallelGzipInputStream(File file) throws IOException {
+        this(file, DEFAULT_THREADS);
+    }
+
+    /**
+     * @param file gzip file
+     * @param threads number of decompressing threads for BGZF files
+     * @throws IOException the file cannot be opened or it is not a gzip file
+     */
+    public ParallelGzipInputStream(File file, int threads) throws IOException {
+        if (!isGzipFile(file)) throw new IOException("Not a gzip file: " + file);
+        boolean blocked = isBgzfFile(file);
+        this.executor = Executors.newFixedThreadPool(blocked ? Math.max(1, threads) : 1, runnable -> {
+            Thread thread = new Thread(runnable, "gzip-decompression");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (blocked) {
+            this.compressed = new BufferedInputStream(new FileInputStream(file), CHUNK_SIZE);
+            this.pendingBlocks = new ArrayDeque<>();
+            this.maxPendingBlocks = 4 * Math.max(1, threads);
+            scheduleBlocks();
+        } else {
+            this.compressed = new GZIPInputStream(new FileInputStream(file), CHUNK_SIZE);
+            this.decompressedChunks = new ArrayBlockingQueue<>(8);
+            this.sequentialDecompression = executor.submit(this::decompressSequentially);
+        }
+    }
+
+    /**
+     * @param file file to check
+     * @return true if the file starts with gzip magic bytes
+     */
+    public static boolean isGzipFile(File file) {
+        if (!file.isFile()) return false;
+        try (InputStream stream = new FileInputStream(file)) {
+            return stream.read() == GZIP_MAGIC_1 && stream.read() == GZIP_MAGIC_2;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isBgzfFile(File file) throws IOException {
+        try (InputStream stream = new FileInputStream(file)) {
+            byte[] header = new byte[BGZF_HEADER_LENGTH];
+            return readFully(stream, header) == header.length && bgzfBlockSize(header) > 0;
+        }
+    }
+
+    /**
+     * @param header first 18 bytes of a gzip member
+     * @return size of the whole member from the BGZF extra field, -1 if the member is not a BGZF member
+     */
+    private static int bgzfBlockSize(byte[] header) {
+        if ((header[0] & 0xff) != GZIP_MAGIC_1 || (header[1] & 0xff) != GZIP_MAGIC_2 || header[2] != 8) return -1;
+        if ((header[3] & FEXTRA) == 0) return -1;
+        int extraLength = (header[10] & 0xff) | (header[11] & 0xff) << 8;
+        if (extraLength != 6 || header[12] != 'B' || header[13] != 'C' || header[14] != 2 || header[15] != 0) return -1;
+        return ((header[16] & 0xff) | (header[17] & 0xff) << 8) + 1;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) return -1;
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        if (!ensureData()) return -1;
+        int read = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        executor.shutdownNow();
+        compressed.close();
+    }
+
+    private boolean ensureData() throws IOException {
+        while (position >= current.length) {
+            if (finished) return false;
+            byte[] next = pendingBlocks != null ? nextBlock() : nextChunk();
+            if (next == END_OF_STREAM) {
+                finished = true;
+                return false;
+            }
+            current = next;
+            position = 0;
+        }
+        return true;
+    }
+
+    private byte[] nextBlock() throws IOException {
+        if (pendingBlocks.isEmpty()) return END_OF_STREAM;
+        try {
+            byte[] block = pendingBlocks.poll().get();
+            scheduleBlocks();
+            return block;
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Decompression interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot decompress gzip member: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private byte[] nextChunk() throws IOException {
+        try {
+            byte[] chunk = decompressedChunks.poll();
+            while (chunk == null) {
+                if (sequentialDecompression.isDone()) {
+                    chunk = decompressedChunks.poll();
+                    if (chunk == null) {
+                        sequentialDecompression.get(); // rethrows the decompression error
+                        return END_OF_STREAM;
+                    }
+                } else {
+                    chunk = decompressedChunks.poll(100, TimeUnit.MILLISECONDS);
+                }
+            }
+            return chunk;
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Decompression interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot decompress gzip file: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private Void decompressSequentially() throws IOException, InterruptedException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int filled = 0;
+        int read;
+        while ((read = compressed.read(chunk, filled, chunk.length - filled)) >= 0) {
+            filled += read;
+            if (filled == chunk.length) {
+                decompressedChunks.put(chunk);
+                chunk = new byte[CHUNK_SIZE];
+                filled = 0;
+            }
+        }
+        if (filled > 0) decompressedChunks.put(Arrays.copyOf(chunk, filled));
+        return null;
+    }
+
+    private void scheduleBlocks() throws IOException {
+        while (!compressedExhausted && pendingBlocks.size() < maxPendingBlocks) {
+            byte[] header = new byte[BGZF_HEADER_LENGTH];
+            int read = readFully(compressed, header);
+            if (read == 0) {
+                compressedExhausted = true;
+                break;
+            }
+            int blockSize = read == header.length ? bgzfBlockSize(header) : -1;
+            if (blockSize < BGZF_HEADER_LENGTH + 8) throw new IOException("Gzip member is not a BGZF member");
+            byte[] block = Arrays.copyOf(header, blockSize);
+            if (readFully(compressed, block, BGZF_HEADER_LENGTH) != blockSize - BGZF_HEADER_LENGTH) {
+                throw new EOFException("Truncated gzip member");
+            }
+            pendingBlocks.add(executor.submit(() -> inflateBlock(block)));
+        }
+    }
+
+    private static byte[] inflateBlock(byte[] block) throws IOException {
+        int trailer = block.length - 8;
+        int expectedCrc = readInt(block, trailer);
+        int uncompressedSize = readInt(block, trailer + 4);
+        byte[] output = new byte[uncompressedSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, BGZF_HEADER_LENGTH, trailer - BGZF_HEADER_LENGTH);
+            int inflated = 0;
+            while (inflated < uncompressedSize && !inflater.finished()) {
+                int count = inflater.inflate(output, inflated, uncompressedSize - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                inflated += count;
+            }
+            if (inflated != uncompressedSize) throw new IOException("Wrong size of decompressed gzip member");
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(output, 0, output.length);
+        if ((int) crc.getValue() != expectedCrc) throw new IOException("Wrong CRC of gzip member");
+        return output;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+    private static int readFully(InputStream stream, byte[] buffer) throws IOException {
+        return readFully(stream, buffer, 0);
+    }
+
+    private static int readFully(InputStream stream, byte[] buffer, int offset) throws IOException {
+        int total = 0;
+        while (offset + total < buffer.length) {
+            int read = stream.read(buffer, offset + total, buffer.length - offset - total);
+            if (read < 0) break;
+            total += read;
+        }
+        return total;
+    }
+}
@@ -26,6 +26,10 @@ public class RSAKey {
 
     private BigInteger exponent = null;
     private BigInteger modulus = null;
+    /**
+     * Hexadecimal digits of the modulus, parsed to the modulus when it is needed
+     */
+    private String modulusHex = null;
     private BigInteger p = null;
     private BigInteger q = null;
     private long time = 0;
@@ -51,6 +55,7 @@ public class RSAKey {
 
     public RSAKey createReversedPaQ() {
         RSAKey key = new RSAKey(this.modulus, this.exponent);
+        key.modulusHex = this.modulusHex;
         key.setP(this.getQ());
         key.setQ(this.getP());
         key.setTime(this.getTime());
@@ -68,6 +73,9 @@ public class RSAKey {
     }
 
     public BigInteger getModulus() {
+        if (modulus == null && modulusHex != null) {
+            modulus = new BigInteger(modulusHex, 16);
+        }
         if (modulus == null) {
             if (p != null && q != null) {
                 return p.multiply(q);
@@ -78,6 +86,30 @@ public class RSAKey {
 
     public void setModulus(BigInteger modulus) {
         this.modulus = modulus;
+        this.modulusHex = null;
+    }
+
+    /**
+     * Set modulus from hexadecimal digits without parsing them, the modulus is parsed when it is needed
+     * @param modulusHex hexadecimal digits of the modulus (without sign and prefix)
+     * @throws NumberFormatException the string is not a hexadecimal number
+     */
+    public void setModulusHex(String modulusHex) {
+        if (modulusHex.isEmpty()) throw new NumberFormatException("Zero length hexadecimal modulus");
+        for (int i = 0; i < modulusHex.length(); i++) {
+            if (Character.digit(modulusHex.charAt(i), 16) < 0) {
+                throw new NumberFormatException("Modulus '" + modulusHex + "' is not a hexadecimal number");
+            }
+        }
+        this.modulus = null;
+        this.modulusHex = modulusHex;
+    }
+
+    /**
+     * @return hexadecimal digits of the modulus if the modulus was set by setModulusHex, null otherwise
+     */
+    public String getModulusHex() {
+        return modulusHex;
     }
 
     public BigInteger getP() {
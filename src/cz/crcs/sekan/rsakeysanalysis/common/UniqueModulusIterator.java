@@ -1,7 +1,5 @@
 package cz.crcs.sekan.rsakeysanalysis.common;
 
-import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
-
 import java.math.BigInteger;
 import java.util.Set;
 import java.util.TreeSet;
@@ -14,7 +12,7 @@ import java.util.TreeSet;
  */
 public class UniqueModulusIterator extends ModulusIterator {
 
-    private Set<BigInteger> seenModuli;
+    private Set<KeyFingerprint> seenModuli;
     private BigInteger nextModulus;
 
     public UniqueModulusIterator(FileIterator fileIterator) {
@@ -29,7 +27,7 @@ public class UniqueModulusIterator extends ModulusIterator {
         if (!super.hasNext()) return false;
         while (nextModulus == null && super.hasNext()) {
             BigInteger nextNonUniqueModulus = super.next();
-            if (!seenModuli.add(ClassificationKey.shortenModulus(nextNonUniqueModulus))) continue;
+            if (!seenModuli.add(KeyFingerprint.of(nextNonUniqueModulus))) continue;
             nextModulus = nextNonUniqueModulus;
         }
         return nextModulus != null;
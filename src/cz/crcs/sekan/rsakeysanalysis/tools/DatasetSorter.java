@@ -79,11 +79,12 @@ public class DatasetSorter {
             }
 
             File inputFile = new File(datasetFilePath);
+            String outputName = FileIterator.getUncompressedName(inputFile);
             if (outDir.equals(inputFile.getParentFile())) {
-                inputFile = new File(inputFile.getParentFile(), "presorted_" + inputFile.getName());
+                outputName = "presorted_" + outputName;
             }
 
-            try (ExtendedWriter fullWriter = new ExtendedWriter(new File(outDir, inputFile.getName()))) {
+            try (ExtendedWriter fullWriter = new ExtendedWriter(new File(outDir, outputName))) {
                 for (Integer i : fileIDs) {
                     processed = 0L;
                     File tempFile = new File(randomTempDir, i.toString());
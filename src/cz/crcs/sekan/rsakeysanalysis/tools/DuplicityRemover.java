@@ -8,6 +8,7 @@ import cz.crcs.sekan.rsakeysanalysis.common.ExtendedWriter;
 import cz.crcs.sekan.rsakeysanalysis.common.FileIterator;
 import cz.crcs.sekan.rsakeysanalysis.common.JSONObjectMerger;
 import cz.crcs.sekan.rsakeysanalysis.common.JSONPropertyExtractor;
+import cz.crcs.sekan.rsakeysanalysis.common.KeyFingerprint;
 import cz.crcs.sekan.rsakeysanalysis.common.exception.WrongKeyException;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -15,7 +16,6 @@ import org.json.simple.parser.ParseException;
 
 import java.io.File;
 import java.io.IOException;
-import java.math.BigInteger;
 import java.util.*;
 
 /**
@@ -25,17 +25,17 @@ import java.util.*;
 public class DuplicityRemover {
 
     private static class DuplicityCounter {
-        private Map<BigInteger, Integer> duplicityCounter;
+        private Map<KeyFingerprint, Integer> duplicityCounter;
 
         public DuplicityCounter() {
             this.duplicityCounter = new HashMap<>();
         }
 
-        public Integer add(BigInteger modulus) {
+        public Integer add(KeyFingerprint modulus) {
             return duplicityCounter.compute(modulus, (key, oldValue) -> oldValue == null ? 1 : oldValue + 1);
         }
 
-        public Integer decreaseDuplicityCount(BigInteger modulus) {
+        public Integer decreaseDuplicityCount(KeyFingerprint modulus) {
             Integer newCount = duplicityCounter.computeIfPresent(modulus, (key, count) -> count - 1);
             if (newCount == null) return -1;
             if (newCount <= 0) duplicityCounter.remove(modulus);
@@ -71,7 +71,7 @@ public class DuplicityRemover {
 
         for (String filePath : filePaths) {
             System.out.println(String.format("Removing duplicities from file: %s", filePath));
-            removeDuplicities(filePath, new File(outputDirPath, new File(filePath).getName()).getAbsolutePath(),
+            removeDuplicities(filePath, new File(outputDirPath, FileIterator.getUncompressedName(new File(filePath))).getAbsolutePath(),
                     formatter, JSONPropertyExtractor.MODULUS_CASE_INSENSITIVE_EXTRACTOR);
         }
     }
@@ -93,7 +93,7 @@ public class DuplicityRemover {
         DuplicityCounter counter = new DuplicityCounter();
         while (file.hasNext()) {
             String line = file.next();
-            BigInteger propertyHash = jsonPropertyExtractor.extractHashOfProperty(line);
+            KeyFingerprint propertyHash = jsonPropertyExtractor.extractHashOfProperty(line);
             if (propertyHash == null) {
                 System.err.println("Could not extract property hash from line:");
                 System.err.println(line);
@@ -106,7 +106,7 @@ public class DuplicityRemover {
         System.out.println(String.format("Dataset contains %d items, with %d unique items", allKeys, counter.keyCount()));
 
         // second pass -- directly output unique keys; only hold keys to be merged until all have been seen
-        Map<BigInteger, List<JSONObject>> mergedKeys = new HashMap<>();
+        Map<KeyFingerprint, List<JSONObject>> mergedKeys = new HashMap<>();
 
         FileIterator jsonIterator = new FileIterator(filePath);
 
@@ -126,7 +126,7 @@ public class DuplicityRemover {
                     System.err.println("Failed to parse JSON line " + e.toString());
                     continue;
                 }
-                BigInteger propertyHash = jsonPropertyExtractor.extractHashOfProperty(jsonLine);
+                KeyFingerprint propertyHash = jsonPropertyExtractor.extractHashOfProperty(jsonLine);
                 if (propertyHash == null) {
                     System.err.println("Could not extract property hash from line:");
                     System.err.println(jsonLine);
@@ -192,12 +192,12 @@ public class DuplicityRemover {
         DuplicityCounter counter = new DuplicityCounter();
 
         for (String filePath : filePaths) {
-            File outputFile = new File(outputDirPath, new File(filePath).getName());
+            File outputFile = new File(outputDirPath, FileIterator.getUncompressedName(new File(filePath)));
             try (ExtendedWriter datasetWriter = new ExtendedWriter(outputFile)) {
                 FileIterator file = new FileIterator(filePath);
                 while (file.hasNext()) {
                     String line = file.next();
-                    BigInteger propertyHash = jsonPropertyExtractor.extractHashOfProperty(line);
+                    KeyFingerprint propertyHash = jsonPropertyExtractor.extractHashOfProperty(line);
                     if (propertyHash == null) {
                         System.err.println("Could not extract property hash from line:");
                         System.err.println(line);
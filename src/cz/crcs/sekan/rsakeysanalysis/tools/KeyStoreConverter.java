@@ -0,0 +1,100 @@
+package cz.crcs.sekan.rsakeysanalysis.tools;
+
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.dataset.KeyStore;
+import cz.crcs.sekan.rsakeysanalysis.classification.algorithm.exception.DataSetException;
+import cz.crcs.sekan.rsakeysanalysis.classification.key.ClassificationKey;
+import cz.crcs.sekan.rsakeysanalysis.common.FileIterator;
+import cz.crcs.sekan.rsakeysanalysis.common.MappedLineReader;
+import cz.crcs.sekan.rsakeysanalysis.common.ParallelGzipInputStream;
+import cz.crcs.sekan.rsakeysanalysis.common.exception.WrongKeyException;
+import org.json.simple.parser.ParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Converts JSON data sets to key stores (see KeyStore), which are read without parsing JSON.
+ * Offsets of the original lines are stored for uncompressed data sets, so keys can be exported with all fields.
+ *
+ * @author agent
+ * @version 10/17/26.
+ */
+public class KeyStoreConverter {
+
+    public static final String KEY_STORE_SUFFIX = ".keystore";
+
+    public static void run(String outputFolderPath, List<String> datasetFilePaths) throws DataSetException, IOException {
+        File outputDir = new File(outputFolderPath);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create output directory " + outputFolderPath);
+        }
+
+        for (String datasetFilePath : datasetFilePaths) {
+            File dataset = new File(datasetFilePath);
+            String name = FileIterator.getUncompressedName(dataset);
+            File storeDirectory = new File(outputDir, name + KEY_STORE_SUFFIX);
+            System.out.println(String.format("Converting data set %s to key store %s", datasetFilePath, storeDirectory));
+            long time = System.currentTimeMillis();
+            long keys = convert(dataset, name, storeDirectory);
+            System.out.println(String.format("Stored %d keys in %.2f seconds", keys,
+                    (System.currentTimeMillis() - time) / 1000.0));
+        }
+    }
+
+    /**
+     * @param dataset JSON data set, can be compressed
+     * @param name name of the data set stored in the key store
+     * @param storeDirectory directory of the key store
+     * @return number of stored keys
+     */
+    public static long convert(File dataset, String name, File storeDirectory) throws DataSetException, IOException {
+        MappedLineReader mappedReader = null;
+        FileIterator fileIterator = null;
+        if (!ParallelGzipInputStream.isGzipFile(dataset)) {
+            try {
+                mappedReader = new MappedLineReader(dataset);
+            } catch (IOException | UnsupportedOperationException e) {
+                System.err.println("Warning: data set cannot be mapped, offsets of keys will not be stored");
+            }
+        }
+        if (mappedReader == null) fileIterator = new FileIterator(dataset);
+
+        KeyStore.Writer writer = KeyStore.create(storeDirectory, name, dataset.getAbsolutePath(), mappedReader != null);
+        try {
+            while (true) {
+                CharSequence line;
+                long offset = -1;
+                if (mappedReader != null) {
+                    line = mappedReader.readLine();
+                    offset = mappedReader.getLineOffset();
+                } else {
+                    line = fileIterator.hasNext() ? fileIterator.nextSlice() : null;
+                }
+                if (line == null) break;
+                if (line.length() == 0) continue;
+
+                ClassificationKey key;
+                try {
+                    key = ClassificationKey.fromJsonClassificationFields(line);
+                } catch (ParseException | WrongKeyException e) {
+                    System.err.println("Warning: cannot parse dataset line: " + e.getMessage());
+                    System.err.println(line);
+                    continue;
+                }
+                if (key.getRsaKey().getModulus() == null) {
+                    System.err.println("Warning: skipping key without modulus");
+                    System.err.println(line);
+                    continue;
+                }
+                writer.write(key, offset);
+            }
+            // the store is complete only after the writer is closed, failed conversion leaves no header
+            writer.close();
+        } finally {
+            if (mappedReader != null) mappedReader.close();
+            if (fileIterator != null) fileIterator.close();
+        }
+        return writer.getKeyCount();
+    }
+}